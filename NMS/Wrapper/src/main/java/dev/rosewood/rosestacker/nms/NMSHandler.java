@@ -1,5 +1,9 @@
 package dev.rosewood.rosestacker.nms;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import org.bukkit.Location;
 import org.bukkit.entity.Creeper;
 import org.bukkit.entity.Entity;
@@ -10,7 +14,17 @@ import org.bukkit.entity.Player;
 public interface NMSHandler {
 
     /**
-     * Serializes a LivingEntity to a base64 string
+     * NBT tags that are different for every entity and are not kept when serializing an entity.
+     * Leaving these out allows identical entities to serialize to identical data, which lets stacks share it.
+     */
+    List<String> UNIQUE_ENTITY_NBT_KEYS = Collections.unmodifiableList(Arrays.asList(
+            "UUID", "UUIDMost", "UUIDLeast", "WorldUUIDMost", "WorldUUIDLeast",
+            "Pos", "Motion", "Rotation", "FallDistance", "Fire", "OnGround", "PortalCooldown",
+            "HurtTime", "HurtByTimestamp", "DeathTime", "Spigot.ticksLived", "Bukkit.updateLevel"
+    ));
+
+    /**
+     * Serializes a LivingEntity to a base64 string, without any of the {@link #UNIQUE_ENTITY_NBT_KEYS}
      *
      * @param livingEntity to serialize
      * @param includeAttributes true to include the entitiy attribute tags, otherwise false
@@ -65,6 +79,14 @@ public interface NMSHandler {
      */
     void updateEntityNameTagVisibilityForPlayer(Player player, Entity entity, boolean customNameVisible);
 
+    /**
+     * Sends many nametag updates to a Player at once through the player's connection, in order
+     *
+     * @param player The Player to send the packets to
+     * @param nametagUpdates The nametag updates to send, in order
+     */
+    void updateEntityNameTagsForPlayer(Player player, Collection<NametagUpdate> nametagUpdates);
+
     /**
      * Unignites a creeper
      *
@@ -0,0 +1,58 @@
+package dev.rosewood.rosestacker.nms;
+
+import org.bukkit.entity.Entity;
+
+/**
+ * A change to the nametag of an entity to send to a player, either the name and its visibility or only its visibility
+ */
+public final class NametagUpdate {
+
+    private final Entity entity;
+    private final String customName;
+    private final boolean customNameVisible;
+    private final boolean visibilityOnly;
+
+    /**
+     * @param entity The Entity to update
+     * @param customName The name to display for the entity, nullable
+     * @param customNameVisible true to make the nametag visible, otherwise false
+     */
+    public NametagUpdate(Entity entity, String customName, boolean customNameVisible) {
+        this(entity, customName, customNameVisible, false);
+    }
+
+    /**
+     * @param entity The Entity to update
+     * @param customNameVisible true to make the nametag visible, otherwise false
+     */
+    public NametagUpdate(Entity entity, boolean customNameVisible) {
+        this(entity, null, customNameVisible, true);
+    }
+
+    private NametagUpdate(Entity entity, String customName, boolean customNameVisible, boolean visibilityOnly) {
+        this.entity = entity;
+        this.customName = customName;
+        this.customNameVisible = customNameVisible;
+        this.visibilityOnly = visibilityOnly;
+    }
+
+    public Entity getEntity() {
+        return this.entity;
+    }
+
+    public String getCustomName() {
+        return this.customName;
+    }
+
+    public boolean isCustomNameVisible() {
+        return this.customNameVisible;
+    }
+
+    /**
+     * @return true if only the visibility of the nametag should be updated, leaving the name as it is
+     */
+    public boolean isVisibilityOnly() {
+        return this.visibilityOnly;
+    }
+
+}
@@ -2,6 +2,7 @@ package dev.rosewood.rosestacker.nms.v1_14_R1;
 
 import com.google.common.collect.Lists;
 import dev.rosewood.rosestacker.nms.NMSHandler;
+import dev.rosewood.rosestacker.nms.NametagUpdate;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
@@ -10,7 +11,11 @@ import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import net.minecraft.server.v1_14_R1.BlockPosition;
@@ -35,6 +40,7 @@ import net.minecraft.server.v1_14_R1.NBTTagCompound;
 import net.minecraft.server.v1_14_R1.NBTTagDouble;
 import net.minecraft.server.v1_14_R1.NBTTagList;
 import net.minecraft.server.v1_14_R1.PacketPlayOutEntityMetadata;
+import net.minecraft.server.v1_14_R1.PlayerConnection;
 import net.minecraft.server.v1_14_R1.WorldServer;
 import org.bukkit.Location;
 import org.bukkit.craftbukkit.v1_14_R1.CraftWorld;
@@ -59,6 +65,14 @@ public class NMSHandlerImpl implements NMSHandler {
     private static DataWatcherObject<Boolean> value_EntityCreeper_d; // DataWatcherObject that determines if a creeper is ignited, normally private
     private static Field field_EntityCreeper_fuseTicks; // Field to set the remianing fuse ticks of a creeper, normally private
 
+    private static final int NAME_COMPONENT_CACHE_SIZE = 512;
+    private static final Map<String, Optional<IChatBaseComponent>> nameComponentCache = Collections.synchronizedMap(new LinkedHashMap<String, Optional<IChatBaseComponent>>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Optional<IChatBaseComponent>> eldest) {
+            return this.size() > NAME_COMPONENT_CACHE_SIZE;
+        }
+    });
+
     static {
         try {
             method_EntityLiving_a = EntityLiving.class.getDeclaredMethod("a", DamageSource.class, boolean.class);
@@ -97,6 +111,10 @@ public class NMSHandlerImpl implements NMSHandler {
             if (!includeAttributes)
                 nbt.remove("Attributes");
 
+            // Remove the data that is unique to each entity so identical entities serialize to identical data
+            for (String key : UNIQUE_ENTITY_NBT_KEYS)
+                nbt.remove(key);
+
             // Write entity type
             String entityType = IRegistry.ENTITY_TYPE.getKey(craftEntity.getEntityType()).toString();
             dataOutput.writeUTF(entityType);
@@ -123,11 +141,7 @@ public class NMSHandlerImpl implements NMSHandler {
             // Read NBT
             NBTTagCompound nbt = NBTCompressedStreamTools.a(dataInput);
 
-            NBTTagList positionTagList = nbt.getList("Pos", 6);
-            positionTagList.set(0, new NBTTagDouble(location.getX()));
-            positionTagList.set(1, new NBTTagDouble(location.getY()));
-            positionTagList.set(2, new NBTTagDouble(location.getZ()));
-            nbt.set("Pos", positionTagList);
+            nbt.set("Pos", this.createPositionTagList(location));
             nbt.a("UUID", UUID.randomUUID()); // Reset the UUID to resolve possible duplicates
 
             Optional<EntityTypes<?>> optionalEntity = EntityTypes.a(entityType);
@@ -183,6 +197,10 @@ public class NMSHandlerImpl implements NMSHandler {
             // Read NBT
             NBTTagCompound nbt = NBTCompressedStreamTools.a(dataInput);
 
+            // Entities are serialized without a position, use the location they would be spawned at
+            if (!nbt.hasKey("Pos"))
+                nbt.set("Pos", this.createPositionTagList(location));
+
             // Set NBT
             entity.f(nbt);
 
@@ -207,16 +225,7 @@ public class NMSHandlerImpl implements NMSHandler {
     @Override
     public void updateEntityNameTagForPlayer(Player player, org.bukkit.entity.Entity entity, String customName, boolean customNameVisible) {
         try {
-            List<Item<?>> dataWatchers = new ArrayList<>();
-            Optional<IChatBaseComponent> nameComponent = Optional.ofNullable(CraftChatMessage.fromStringOrNull(customName));
-            dataWatchers.add(new DataWatcher.Item<>(DataWatcherRegistry.f.a(2), nameComponent));
-            dataWatchers.add(new DataWatcher.Item<>(DataWatcherRegistry.i.a(3), customNameVisible));
-
-            PacketPlayOutEntityMetadata packetPlayOutEntityMetadata = new PacketPlayOutEntityMetadata();
-            field_PacketPlayOutEntityMetadata_a.set(packetPlayOutEntityMetadata, entity.getEntityId());
-            field_PacketPlayOutEntityMetadata_b.set(packetPlayOutEntityMetadata, dataWatchers);
-
-            ((CraftPlayer) player).getHandle().playerConnection.sendPacket(packetPlayOutEntityMetadata);
+            ((CraftPlayer) player).getHandle().playerConnection.sendPacket(this.createNameTagPacket(entity.getEntityId(), customName, customNameVisible));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -225,11 +234,34 @@ public class NMSHandlerImpl implements NMSHandler {
     @Override
     public void updateEntityNameTagVisibilityForPlayer(Player player, org.bukkit.entity.Entity entity, boolean customNameVisible) {
         try {
-            PacketPlayOutEntityMetadata packetPlayOutEntityMetadata = new PacketPlayOutEntityMetadata();
-            field_PacketPlayOutEntityMetadata_a.set(packetPlayOutEntityMetadata, entity.getEntityId());
-            field_PacketPlayOutEntityMetadata_b.set(packetPlayOutEntityMetadata, Lists.newArrayList(new DataWatcher.Item<>(DataWatcherRegistry.i.a(3), customNameVisible)));
+            ((CraftPlayer) player).getHandle().playerConnection.sendPacket(this.createNameTagVisibilityPacket(entity.getEntityId(), customNameVisible));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-            ((CraftPlayer) player).getHandle().playerConnection.sendPacket(packetPlayOutEntityMetadata);
+    @Override
+    public void updateEntityNameTagsForPlayer(Player player, Collection<NametagUpdate> nametagUpdates) {
+        if (nametagUpdates.isEmpty())
+            return;
+
+        try {
+            List<PacketPlayOutEntityMetadata> packets = new ArrayList<>(nametagUpdates.size());
+            for (NametagUpdate nametagUpdate : nametagUpdates) {
+                int entityId = nametagUpdate.getEntity().getEntityId();
+                if (nametagUpdate.isVisibilityOnly()) {
+                    packets.add(this.createNameTagVisibilityPacket(entityId, nametagUpdate.isCustomNameVisible()));
+                } else {
+                    packets.add(this.createNameTagPacket(entityId, nametagUpdate.getCustomName(), nametagUpdate.isCustomNameVisible()));
+                }
+            }
+
+            PlayerConnection playerConnection = ((CraftPlayer) player).getHandle().playerConnection;
+            if (playerConnection == null)
+                return;
+
+            for (PacketPlayOutEntityMetadata packet : packets)
+                playerConnection.sendPacket(packet);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -247,4 +279,43 @@ public class NMSHandlerImpl implements NMSHandler {
         }
     }
 
+    private PacketPlayOutEntityMetadata createNameTagPacket(int entityId, String customName, boolean customNameVisible) throws IllegalAccessException {
+        List<Item<?>> dataWatchers = new ArrayList<>();
+        dataWatchers.add(new DataWatcher.Item<>(DataWatcherRegistry.f.a(2), this.getNameComponent(customName)));
+        dataWatchers.add(new DataWatcher.Item<>(DataWatcherRegistry.i.a(3), customNameVisible));
+
+        PacketPlayOutEntityMetadata packetPlayOutEntityMetadata = new PacketPlayOutEntityMetadata();
+        field_PacketPlayOutEntityMetadata_a.set(packetPlayOutEntityMetadata, entityId);
+        field_PacketPlayOutEntityMetadata_b.set(packetPlayOutEntityMetadata, dataWatchers);
+        return packetPlayOutEntityMetadata;
+    }
+
+    private PacketPlayOutEntityMetadata createNameTagVisibilityPacket(int entityId, boolean customNameVisible) throws IllegalAccessException {
+        PacketPlayOutEntityMetadata packetPlayOutEntityMetadata = new PacketPlayOutEntityMetadata();
+        field_PacketPlayOutEntityMetadata_a.set(packetPlayOutEntityMetadata, entityId);
+        field_PacketPlayOutEntityMetadata_b.set(packetPlayOutEntityMetadata, Lists.newArrayList(new DataWatcher.Item<>(DataWatcherRegistry.i.a(3), customNameVisible)));
+        return packetPlayOutEntityMetadata;
+    }
+
+    /**
+     * Gets the chat component for a custom name, the same few stack names are sent over and over so they are cached.
+     * The components are only ever serialized into packets so they can be shared between them.
+     *
+     * @param customName The custom name, nullable
+     * @return the chat component of the name, or an empty Optional if there is no name
+     */
+    private Optional<IChatBaseComponent> getNameComponent(String customName) {
+        if (customName == null)
+            return Optional.empty();
+        return nameComponentCache.computeIfAbsent(customName, x -> Optional.ofNullable(CraftChatMessage.fromStringOrNull(x)));
+    }
+
+    private NBTTagList createPositionTagList(Location location) {
+        NBTTagList positionTagList = new NBTTagList();
+        positionTagList.add(new NBTTagDouble(location.getX()));
+        positionTagList.add(new NBTTagDouble(location.getY()));
+        positionTagList.add(new NBTTagDouble(location.getZ()));
+        return positionTagList;
+    }
+
 }
@@ -0,0 +1,216 @@
+package dev.rosewood.rosestacker.utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+import org.bukkit.util.Vector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the old fixed step line of sight sampler against the voxel traversal in
+ * {@link StackerUtils#hasLineOfSight(Entity, Entity, boolean, BlockOcclusionCache)}.
+ * <p>
+ * Runs without a server, the world is a fixed grid of randomly placed stone and glass blocks generated from a constant
+ * seed, and each operation checks the same set of entity pairs inside it, like a single stacking pass would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineOfSightBenchmark {
+
+    private static final long SEED = 0x5EEDL;
+    private static final int GRID_SIZE = 48;
+    private static final int PAIRS = 256;
+
+    /**
+     * The accuracy the old sampler was recommended to be used with
+     */
+    private static final double SAMPLER_ACCURACY = 0.75;
+
+    @Param({ "0.02", "0.1" })
+    public double solidDensity;
+
+    @Param({ "false", "true" })
+    public boolean requireOccluding;
+
+    private Entity[] firstEntities;
+    private Entity[] secondEntities;
+    private BlockOcclusionCache occlusionCache;
+    private int pass;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(SEED);
+
+        Material[] grid = new Material[GRID_SIZE * GRID_SIZE * GRID_SIZE];
+        for (int i = 0; i < grid.length; i++) {
+            if (random.nextDouble() >= this.solidDensity) {
+                grid[i] = Material.AIR;
+            } else {
+                grid[i] = random.nextInt(4) == 0 ? Material.GLASS : Material.STONE;
+            }
+        }
+
+        World world = createWorld(grid);
+        this.firstEntities = new Entity[PAIRS];
+        this.secondEntities = new Entity[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            this.firstEntities[i] = createEntity(randomLocation(world, random));
+            this.secondEntities[i] = createEntity(randomLocation(world, random));
+        }
+
+        this.occlusionCache = new BlockOcclusionCache();
+        this.pass = 0;
+    }
+
+    @Benchmark
+    public void sampler(Blackhole blackhole) {
+        for (int i = 0; i < PAIRS; i++)
+            blackhole.consume(sampleLineOfSight(this.firstEntities[i], this.secondEntities[i], SAMPLER_ACCURACY, this.requireOccluding));
+    }
+
+    @Benchmark
+    public void traversal(Blackhole blackhole) {
+        for (int i = 0; i < PAIRS; i++)
+            blackhole.consume(StackerUtils.hasLineOfSight(this.firstEntities[i], this.secondEntities[i], this.requireOccluding, new BlockOcclusionCache()));
+    }
+
+    @Benchmark
+    public void cachedTraversal(Blackhole blackhole) {
+        this.occlusionCache.startPass(++this.pass);
+        for (int i = 0; i < PAIRS; i++)
+            blackhole.consume(StackerUtils.hasLineOfSight(this.firstEntities[i], this.secondEntities[i], this.requireOccluding, this.occlusionCache));
+    }
+
+    /**
+     * The line of sight check as it was before it was replaced with the voxel traversal, kept here to compare against
+     *
+     * @param entity1 The first entity
+     * @param entity2 The second entity
+     * @param accuracy How often should we check for obstructions? Smaller numbers = more checks
+     * @param requireOccluding Should occluding blocks be required to count as a solid block?
+     * @return true if the entities can see each other, otherwise false
+     */
+    private static boolean sampleLineOfSight(Entity entity1, Entity entity2, double accuracy, boolean requireOccluding) {
+        Location location1 = entity1.getLocation().clone();
+        Location location2 = entity2.getLocation().clone();
+
+        Vector vector1 = location1.toVector();
+        Vector vector2 = location2.toVector();
+        Vector direction = vector2.clone().subtract(vector1).normalize();
+        double distance = vector1.distance(vector2);
+        double numSteps = distance / accuracy;
+        double stepSize = distance / numSteps;
+        for (double i = 0; i < distance; i += stepSize) {
+            Location location = location1.clone().add(direction.clone().multiply(i));
+            Block block = location.getBlock();
+            Material type = block.getType();
+            if (type.isSolid() && (!requireOccluding || type.isOccluding()))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static Location randomLocation(World world, Random random) {
+        return new Location(world, random.nextDouble() * GRID_SIZE, random.nextDouble() * GRID_SIZE, random.nextDouble() * GRID_SIZE);
+    }
+
+    /**
+     * Creates a world backed by the given grid, anything outside of it is air
+     *
+     * @param grid The block types, indexed by x, then y, then z
+     * @return A world containing only the grid
+     */
+    private static World createWorld(Material[] grid) {
+        Block air = createBlock(Material.AIR);
+        Block stone = createBlock(Material.STONE);
+        Block glass = createBlock(Material.GLASS);
+
+        return createProxy(World.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getMaxHeight":
+                    return 256;
+                case "isChunkLoaded":
+                    return true;
+                case "getBlockAt":
+                    int x, y, z;
+                    if (args.length == 1) {
+                        Location location = (Location) args[0];
+                        x = location.getBlockX();
+                        y = location.getBlockY();
+                        z = location.getBlockZ();
+                    } else {
+                        x = (int) args[0];
+                        y = (int) args[1];
+                        z = (int) args[2];
+                    }
+
+                    if (x < 0 || y < 0 || z < 0 || x >= GRID_SIZE || y >= GRID_SIZE || z >= GRID_SIZE)
+                        return air;
+
+                    Material type = grid[(x * GRID_SIZE + y) * GRID_SIZE + z];
+                    if (type == Material.STONE)
+                        return stone;
+                    return type == Material.GLASS ? glass : air;
+                default:
+                    return handleObjectMethod(proxy, method.getName(), args);
+            }
+        });
+    }
+
+    private static Block createBlock(Material type) {
+        return createProxy(Block.class, (proxy, method, args) -> {
+            if (method.getName().equals("getType"))
+                return type;
+            return handleObjectMethod(proxy, method.getName(), args);
+        });
+    }
+
+    private static Entity createEntity(Location location) {
+        return createProxy(Entity.class, (proxy, method, args) -> {
+            if (method.getName().equals("getLocation") && args == null)
+                return location.clone();
+            return handleObjectMethod(proxy, method.getName(), args);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T createProxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(LineOfSightBenchmark.class.getClassLoader(), new Class[] { type }, handler);
+    }
+
+    private static Object handleObjectMethod(Object proxy, String name, Object[] args) {
+        switch (name) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return proxy.getClass().getSimpleName();
+            default:
+                throw new UnsupportedOperationException(name + " is not available in the benchmark world");
+        }
+    }
+
+}
@@ -8,6 +8,11 @@ import dev.rosewood.rosegarden.utils.NMSUtil;
 import dev.rosewood.rosestacker.database.migrations._1_Create_Tables_Stacks;
 import dev.rosewood.rosestacker.database.migrations._2_Create_Tables_Convert_Stacks;
 import dev.rosewood.rosestacker.database.migrations._3_Create_Tables_Translation_Locales;
+import dev.rosewood.rosestacker.database.migrations._4_Compact_Entity_Stack_Data;
+import dev.rosewood.rosestacker.database.migrations._5_Add_Chunk_Key;
+import dev.rosewood.rosestacker.database.migrations._6_Create_Table_Worlds;
+import dev.rosewood.rosestacker.database.migrations._7_Create_Tables_Convert_Progress;
+import dev.rosewood.rosestacker.database.migrations._8_Add_Convert_Entity_UUID_Index;
 import dev.rosewood.rosestacker.hook.RoseStackerPlaceholderExpansion;
 import dev.rosewood.rosestacker.hook.ShopGuiPlusHook;
 import dev.rosewood.rosestacker.hook.ViaVersionHook;
@@ -127,7 +132,12 @@ public class RoseStacker extends RosePlugin {
         return Arrays.asList(
                 _1_Create_Tables_Stacks.class,
                 _2_Create_Tables_Convert_Stacks.class,
-                _3_Create_Tables_Translation_Locales.class
+                _3_Create_Tables_Translation_Locales.class,
+                _4_Compact_Entity_Stack_Data.class,
+                _5_Add_Chunk_Key.class,
+                _6_Create_Table_Worlds.class,
+                _7_Create_Tables_Convert_Progress.class,
+                _8_Add_Convert_Entity_UUID_Index.class
         );
     }
 
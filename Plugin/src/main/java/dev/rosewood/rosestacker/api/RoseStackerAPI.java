@@ -467,10 +467,7 @@ public final class RoseStackerAPI {
         if (!unloadedChunks.isEmpty()) {
             CompletableFuture<Set<StackedEntity>> future = new CompletableFuture<>();
             Bukkit.getScheduler().runTaskAsynchronously(this.roseStacker, () ->
-                    this.dataManager.getStackedEntities(unloadedChunks, results -> {
-                        stacks.addAll(results);
-                        future.complete(stacks);
-                    }));
+                    this.dataManager.getStackedEntities(unloadedChunks, stacks::addAll, () -> future.complete(stacks)));
             return future;
         }
 
@@ -505,10 +502,7 @@ public final class RoseStackerAPI {
         if (!unloadedChunks.isEmpty()) {
             CompletableFuture<Set<StackedItem>> future = new CompletableFuture<>();
             Bukkit.getScheduler().runTaskAsynchronously(this.roseStacker, () ->
-                    this.dataManager.getStackedItems(unloadedChunks, results -> {
-                        stacks.addAll(results);
-                        future.complete(stacks);
-                    }));
+                    this.dataManager.getStackedItems(unloadedChunks, stacks::addAll, () -> future.complete(stacks)));
             return future;
         }
 
@@ -543,10 +537,7 @@ public final class RoseStackerAPI {
         if (!unloadedChunks.isEmpty()) {
             CompletableFuture<Set<StackedBlock>> future = new CompletableFuture<>();
             Bukkit.getScheduler().runTaskAsynchronously(this.roseStacker, () ->
-                    this.dataManager.getStackedBlocks(unloadedChunks, results -> {
-                        stacks.addAll(results);
-                        future.complete(stacks);
-                    }));
+                    this.dataManager.getStackedBlocks(unloadedChunks, stacks::addAll, () -> future.complete(stacks)));
             return future;
         }
 
@@ -581,10 +572,7 @@ public final class RoseStackerAPI {
         if (!unloadedChunks.isEmpty()) {
             CompletableFuture<Set<StackedSpawner>> future = new CompletableFuture<>();
             Bukkit.getScheduler().runTaskAsynchronously(this.roseStacker, () ->
-                    this.dataManager.getStackedSpawners(unloadedChunks, results -> {
-                        stacks.addAll(results);
-                        future.complete(stacks);
-                    }));
+                    this.dataManager.getStackedSpawners(unloadedChunks, stacks::addAll, () -> future.complete(stacks)));
             return future;
         }
 
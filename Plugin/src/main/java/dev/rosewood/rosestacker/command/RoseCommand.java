@@ -23,6 +23,7 @@ import dev.rosewood.rosestacker.manager.LocaleManager.TranslationResponse.Result
 import dev.rosewood.rosestacker.manager.StackManager;
 import dev.rosewood.rosestacker.manager.StackSettingManager;
 import dev.rosewood.rosestacker.stack.Stack;
+import dev.rosewood.rosestacker.stack.StackingThread;
 import dev.rosewood.rosestacker.stack.settings.BlockStackSettings;
 import dev.rosewood.rosestacker.stack.settings.EntityStackSettings;
 import dev.rosewood.rosestacker.stack.settings.SpawnerStackSettings;
@@ -114,17 +115,31 @@ public class RoseCommand extends BaseCommand {
         ConversionManager conversionManager = this.rosePlugin.getManager(ConversionManager.class);
         LocaleManager localeManager = this.rosePlugin.getManager(LocaleManager.class);
 
-        if (conversionManager.convert(stackPlugin)) {
-            localeManager.sendMessage(sender, "command-convert-converted", StringPlaceholders.single("plugin", stackPlugin.name()));
-        } else {
+        if (!conversionManager.getEnabledConverters().contains(stackPlugin)) {
             localeManager.sendMessage(sender, "command-convert-failed", StringPlaceholders.single("plugin", stackPlugin.name()));
+            return;
+        }
+
+        if (conversionManager.isConverting()) {
+            localeManager.sendMessage(sender, "command-convert-in-progress");
+            return;
         }
+
+        localeManager.sendMessage(sender, "command-convert-started", StringPlaceholders.single("plugin", stackPlugin.name()));
+        conversionManager.convert(stackPlugin, success -> {
+            if (success) {
+                localeManager.sendMessage(sender, "command-convert-converted", StringPlaceholders.single("plugin", stackPlugin.name()));
+            } else {
+                localeManager.sendMessage(sender, "command-convert-failed", StringPlaceholders.single("plugin", stackPlugin.name()));
+            }
+        });
     }
 
     @Subcommand("stats")
     @CommandPermission("rosestacker.stats")
     public void onStats(CommandSender sender) {
         StackManager stackManager = this.rosePlugin.getManager(StackManager.class);
+        DataManager dataManager = this.rosePlugin.getManager(DataManager.class);
         LocaleManager localeManager = this.rosePlugin.getManager(LocaleManager.class);
 
         int threadAmount = stackManager.getStackingThreads().size();
@@ -145,6 +160,8 @@ public class RoseCommand extends BaseCommand {
         localeManager.sendSimpleMessage(sender, "command-stats-stacked-items", StringPlaceholders.builder("stackAmount", itemStackAmount).addPlaceholder("total", itemAmount).build());
         localeManager.sendSimpleMessage(sender, "command-stats-stacked-blocks", StringPlaceholders.builder("stackAmount", blockStackAmount).addPlaceholder("total", blockAmount).build());
         localeManager.sendSimpleMessage(sender, "command-stats-stacked-spawners", StringPlaceholders.builder("stackAmount", spawnerStackAmount).addPlaceholder("total", spawnerAmount).build());
+        localeManager.sendSimpleMessage(sender, "command-stats-pending-writes", StringPlaceholders.builder("updates", dataManager.getPendingUpdateCount()).addPlaceholder("deletes", dataManager.getPendingDeleteCount()).build());
+        localeManager.sendSimpleMessage(sender, "command-stats-pending-loads", StringPlaceholders.builder("chunks", stackManager.getPendingChunkCount()).addPlaceholder("stacks", dataManager.getPendingStackAttachmentCount()).build());
     }
 
     @Subcommand("give")
@@ -287,6 +304,12 @@ public class RoseCommand extends BaseCommand {
         DataManager dataManager = this.rosePlugin.getManager(DataManager.class);
         LocaleManager localeManager = this.rosePlugin.getManager(LocaleManager.class);
         int totalDeleted = dataManager.purgeData(world);
+
+        // Make sure purged stacks can't come back from chunks that were unloaded recently
+        for (StackingThread stackingThread : this.rosePlugin.getManager(StackManager.class).getStackingThreads().values())
+            if (stackingThread.getTargetWorld().getName().equals(world))
+                stackingThread.clearChunkCache();
+
         if (totalDeleted == 0) {
             localeManager.sendMessage(sender, "command-purgedata-none");
         } else {
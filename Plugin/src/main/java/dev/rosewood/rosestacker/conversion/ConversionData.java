@@ -1,6 +1,7 @@
 package dev.rosewood.rosestacker.conversion;
 
 import java.util.UUID;
+import org.bukkit.Location;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Item;
 import org.bukkit.entity.LivingEntity;
@@ -11,22 +12,28 @@ public class ConversionData {
     private Item item;
     private int stackSize;
     private UUID uuid;
+    private Location location;
 
-    private ConversionData(LivingEntity entity, Item item, int stackSize, UUID uuid) {
+    private ConversionData(LivingEntity entity, Item item, int stackSize, UUID uuid, Location location) {
         this.entity = entity;
         this.item = item;
         this.stackSize = stackSize;
         this.uuid = uuid;
+        this.location = location;
     }
 
     public ConversionData(UUID uuid, int stackSize) {
-        this(null, null, stackSize, uuid);
+        this(null, null, stackSize, uuid, null);
+    }
+
+    public ConversionData(Location location, int stackSize) {
+        this(null, null, stackSize, null, location);
     }
 
     public ConversionData(Entity entity, int stackSize) {
         this(entity instanceof LivingEntity ? (LivingEntity) entity : null,
                 entity instanceof Item ? (Item) entity : null,
-                stackSize, null);
+                stackSize, null, null);
     }
 
     public ConversionData(Entity entity) {
@@ -48,4 +55,8 @@ public class ConversionData {
     public UUID getUniqueId() {
         return this.uuid;
     }
+
+    public Location getLocation() {
+        return this.location;
+    }
 }
@@ -8,6 +8,7 @@ import dev.rosewood.rosestacker.conversion.handler.ItemConversionHandler;
 import dev.rosewood.rosestacker.conversion.handler.StackMobConversionHandler;
 import dev.rosewood.rosestacker.conversion.handler.UltimateStackerEntityConversionHandler;
 import dev.rosewood.rosestacker.conversion.handler.UltimateStackerItemConversionHandler;
+import dev.rosewood.rosestacker.conversion.handler.WildStackerBlockConversionHandler;
 
 public enum ConverterType {
 
@@ -15,7 +16,8 @@ public enum ConverterType {
     ITEM(ItemConversionHandler.class),
     ULTIMATESTACKER_ENTITY(UltimateStackerEntityConversionHandler.class),
     ULTIMATESTACKER_ITEM(UltimateStackerItemConversionHandler.class),
-    STACKMOB(StackMobConversionHandler.class);
+    STACKMOB(StackMobConversionHandler.class),
+    WILDSTACKER_BLOCK(WildStackerBlockConversionHandler.class);
 
     private final Class<? extends ConversionHandler> conversionHandler;
 
@@ -50,6 +50,12 @@ public class EpicSpawnersPluginConverter extends StackPluginConverter {
                     Location location = new Location(world, x, y, z);
 
                     stackedSpawners.add(new StackedSpawner(amount, location));
+
+                    // Write in pages so large databases don't need to be held in memory
+                    if (stackedSpawners.size() >= PAGE_SIZE) {
+                        dataManager.createOrUpdateStackedBlocksOrSpawners(stackedSpawners);
+                        stackedSpawners.clear();
+                    }
                 }
             }
 
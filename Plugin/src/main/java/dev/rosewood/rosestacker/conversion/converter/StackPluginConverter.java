@@ -5,9 +5,16 @@ import dev.rosewood.rosegarden.config.CommentedConfigurationSection;
 import dev.rosewood.rosegarden.config.CommentedFileConfiguration;
 import dev.rosewood.rosestacker.conversion.ConverterType;
 import dev.rosewood.rosestacker.conversion.StackPlugin;
+import dev.rosewood.rosestacker.manager.DataManager;
 import dev.rosewood.rosestacker.stack.StackType;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 import org.bukkit.Bukkit;
@@ -20,6 +27,11 @@ import org.bukkit.plugin.Plugin;
  */
 public abstract class StackPluginConverter {
 
+    /**
+     * The number of source rows to read and write at a time
+     */
+    protected static final int PAGE_SIZE = 1000;
+
     protected RosePlugin rosePlugin;
     protected Plugin plugin;
     private StackPlugin stackPlugin;
@@ -44,6 +56,18 @@ public abstract class StackPluginConverter {
         return this.converterTypes;
     }
 
+    /**
+     * Saves any data the converted plugin still only has in memory, so it can be read from its database.
+     * Called on the main thread right before {@link #convert()}.
+     */
+    public void saveData() {
+        // Nothing to save by default
+    }
+
+    /**
+     * Reads the data of the converted plugin into RoseStacker.
+     * Called off of the main thread.
+     */
     public abstract void convert();
 
     public void configureLockFile(CommentedFileConfiguration config) {
@@ -61,6 +85,62 @@ public abstract class StackPluginConverter {
         return config.getConfigurationSection(this.plugin.getName()).getBoolean("lock-" + stackType.name().toLowerCase() + "-stacking");
     }
 
+    /**
+     * Converts an SQLite table of the converted plugin one page at a time, in order of rowid.
+     * A checkpoint is saved with every page so the conversion can resume where it left off if it is interrupted.
+     *
+     * @param connection The connection to the database of the converted plugin
+     * @param tableName The name of the table to convert
+     * @param columns The columns to select
+     * @param rowReader Reads a row into a value, may return null to skip the row
+     * @param pageWriter Writes a page of values along with the checkpoint
+     * @param <T> The type of value read from each row
+     * @throws SQLException if reading the table fails
+     */
+    protected <T> void convertPages(Connection connection, String tableName, String columns, RowReader<T> rowReader, PageWriter<T> pageWriter) throws SQLException {
+        String checkpointName = this.plugin.getName() + ":" + tableName;
+        long checkpoint = this.rosePlugin.getManager(DataManager.class).getConversionCheckpoint(checkpointName);
+
+        int total;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM " + tableName + " WHERE rowid > ?")) {
+            statement.setLong(1, checkpoint);
+            ResultSet result = statement.executeQuery();
+            total = result.next() ? result.getInt(1) : 0;
+        }
+
+        if (total == 0)
+            return;
+
+        int converted = 0;
+        String query = "SELECT rowid, " + columns + " FROM " + tableName + " WHERE rowid > ? ORDER BY rowid LIMIT " + PAGE_SIZE;
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            while (true) {
+                List<T> page = new ArrayList<>();
+                int rows = 0;
+
+                statement.setLong(1, checkpoint);
+                try (ResultSet result = statement.executeQuery()) {
+                    while (result.next()) {
+                        checkpoint = result.getLong("rowid");
+                        rows++;
+
+                        T value = rowReader.read(result);
+                        if (value != null)
+                            page.add(value);
+                    }
+                }
+
+                if (rows == 0)
+                    break;
+
+                pageWriter.write(page, checkpointName, checkpoint);
+
+                converted += rows;
+                this.rosePlugin.getLogger().info(String.format("Converted %d/%d rows from the %s %s table.", converted, Math.max(converted, total), this.plugin.getName(), tableName));
+            }
+        }
+    }
+
     protected Location parseLocation(String locationString, char separator) {
         String[] pieces = locationString.split(Pattern.quote(String.valueOf(separator)));
         if (pieces.length != 4)
@@ -77,4 +157,14 @@ public abstract class StackPluginConverter {
         return new Location(world, x, y, z);
     }
 
+    @FunctionalInterface
+    protected interface RowReader<T> {
+        T read(ResultSet result) throws SQLException;
+    }
+
+    @FunctionalInterface
+    protected interface PageWriter<T> {
+        void write(List<T> page, String checkpointName, long checkpoint);
+    }
+
 }
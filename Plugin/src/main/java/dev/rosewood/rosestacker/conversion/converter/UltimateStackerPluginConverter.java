@@ -26,15 +26,22 @@ public class UltimateStackerPluginConverter extends StackPluginConverter {
     }
 
     @Override
-    public void convert() {
+    public void saveData() {
         // If EpicSpawners is installed, spawner stacking functionality is handled by that plugin instead
         if (Bukkit.getPluginManager().isPluginEnabled("EpicSpawners"))
             return;
 
-        DataManager dataManager = this.rosePlugin.getManager(DataManager.class);
-
         // Force save loaded data
         this.ultimateStacker.getDataManager().bulkUpdateSpawners(this.ultimateStacker.getSpawnerStackManager().getStacks());
+    }
+
+    @Override
+    public void convert() {
+        // If EpicSpawners is installed, spawner stacking functionality is handled by that plugin instead
+        if (Bukkit.getPluginManager().isPluginEnabled("EpicSpawners"))
+            return;
+
+        DataManager dataManager = this.rosePlugin.getManager(DataManager.class);
 
         // Go through the database to be able to load all spawner information
         DatabaseConnector connector = this.ultimateStacker.getDatabaseConnector();
@@ -56,6 +63,12 @@ public class UltimateStackerPluginConverter extends StackPluginConverter {
                     Location location = new Location(world, x, y, z);
                     int amount = result.getInt("amount");
                     stackedSpawners.add(new StackedSpawner(amount, location));
+
+                    // Write in pages so large databases don't need to be held in memory
+                    if (stackedSpawners.size() >= PAGE_SIZE) {
+                        dataManager.createOrUpdateStackedBlocksOrSpawners(stackedSpawners);
+                        stackedSpawners.clear();
+                    }
                 }
 
                 dataManager.createOrUpdateStackedBlocksOrSpawners(stackedSpawners);
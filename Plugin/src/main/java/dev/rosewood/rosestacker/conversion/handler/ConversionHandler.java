@@ -8,12 +8,13 @@ import dev.rosewood.rosestacker.nms.NMSAdapter;
 import dev.rosewood.rosestacker.nms.NMSHandler;
 import dev.rosewood.rosestacker.stack.Stack;
 import dev.rosewood.rosestacker.stack.StackType;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import dev.rosewood.rosestacker.stack.StackedEntityDataStorage;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.bukkit.Location;
 import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
 
 /**
  * Handles converting data that we weren't able to without having specific locations
@@ -25,6 +26,7 @@ public abstract class ConversionHandler {
 
     private StackType requiredDataStackType;
     private boolean useChunkEntities;
+    private Map<EntityType, byte[]> entityTemplates;
 
     public ConversionHandler(RosePlugin rosePlugin, StackType requiredDataStackType) {
         this(rosePlugin, requiredDataStackType, false);
@@ -35,6 +37,7 @@ public abstract class ConversionHandler {
         this.stackManager = this.rosePlugin.getManager(StackManager.class);
         this.requiredDataStackType = requiredDataStackType;
         this.useChunkEntities = useChunkEntities;
+        this.entityTemplates = new ConcurrentHashMap<>();
     }
 
     public abstract Set<Stack<?>> handleConversion(Set<ConversionData> conversionData);
@@ -48,21 +51,29 @@ public abstract class ConversionHandler {
     }
 
     /**
-     * Used to fill in the missing entity stack nbt data
+     * Used to fill in the missing entity stack nbt data.
+     * The other entities were never tracked by the converted plugin, so they are all stored as a single run of one
+     * default entity of the given type, which is only generated once per entity type.
      *
      * @param entityType The type of entity
-     * @param amount The amount of nbt entries to create
+     * @param amount The size of the stack, including the main entity
      * @param location The location of the main entity
-     * @return A list of nbt data
+     * @return The nbt data storage for the stack
      */
-    protected List<byte[]> createEntityStackNBT(EntityType entityType, int amount, Location location) {
-        List<byte[]> entityNBT = new LinkedList<>();
+    protected StackedEntityDataStorage createEntityStackData(EntityType entityType, int amount, Location location) {
+        StackedEntityDataStorage stackedEntityDataStorage = new StackedEntityDataStorage();
+        if (amount <= 1)
+            return stackedEntityDataStorage;
 
-        NMSHandler nmsHandler = NMSAdapter.getHandler();
-        for (int i = 0; i < amount - 1; i++)
-            entityNBT.add(nmsHandler.getEntityAsNBT(nmsHandler.createEntityUnspawned(entityType, location), Setting.ENTITY_SAVE_ATTRIBUTES.getBoolean()));
+        byte[] template = this.entityTemplates.computeIfAbsent(entityType, x -> {
+            NMSHandler nmsHandler = NMSAdapter.getHandler();
+            LivingEntity entity = nmsHandler.createEntityUnspawned(entityType, location);
+            return entity == null ? null : nmsHandler.getEntityAsNBT(entity, Setting.ENTITY_SAVE_ATTRIBUTES.getBoolean());
+        });
 
-        return Collections.synchronizedList(entityNBT);
+        if (template != null)
+            stackedEntityDataStorage.addLast(template, amount - 1);
+        return stackedEntityDataStorage;
     }
 
 }
@@ -5,8 +5,8 @@ import dev.rosewood.rosestacker.conversion.ConversionData;
 import dev.rosewood.rosestacker.stack.Stack;
 import dev.rosewood.rosestacker.stack.StackType;
 import dev.rosewood.rosestacker.stack.StackedEntity;
+import dev.rosewood.rosestacker.stack.StackedEntityDataStorage;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import org.bukkit.entity.LivingEntity;
 
@@ -22,8 +22,8 @@ public class EntityConversionHandler extends ConversionHandler {
 
         for (ConversionData data : conversionData) {
             LivingEntity entity = data.getEntity();
-            List<byte[]> entityStackData = this.createEntityStackNBT(entity.getType(), data.getStackSize(), entity.getLocation());
-            StackedEntity stackedEntity = new StackedEntity(data.getEntity(), entityStackData);
+            StackedEntityDataStorage entityStackData = this.createEntityStackData(entity.getType(), data.getStackSize(), entity.getLocation());
+            StackedEntity stackedEntity = new StackedEntity(-1, data.getEntity(), entityStackData);
             this.stackManager.addEntityStack(stackedEntity);
             stacks.add(stackedEntity);
         }
@@ -38,7 +38,7 @@ public class StackMobConversionHandler extends ConversionHandler {
             if (stackSize == -1)
                 continue;
 
-            StackedEntity stackedEntity = new StackedEntity(entity, this.createEntityStackNBT(entity.getType(), stackSize, entity.getLocation()));
+            StackedEntity stackedEntity = new StackedEntity(-1, entity, this.createEntityStackData(entity.getType(), stackSize, entity.getLocation()));
             this.stackManager.addEntityStack(stackedEntity);
             stacks.add(stackedEntity);
         }
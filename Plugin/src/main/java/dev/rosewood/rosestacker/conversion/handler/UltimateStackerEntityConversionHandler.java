@@ -5,8 +5,8 @@ import dev.rosewood.rosestacker.conversion.ConversionData;
 import dev.rosewood.rosestacker.stack.Stack;
 import dev.rosewood.rosestacker.stack.StackType;
 import dev.rosewood.rosestacker.stack.StackedEntity;
+import dev.rosewood.rosestacker.stack.StackedEntityDataStorage;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import org.bukkit.entity.LivingEntity;
 
@@ -29,8 +29,8 @@ public class UltimateStackerEntityConversionHandler extends UltimateStackerConve
             if (stackSize == -1)
                 continue;
 
-            List<byte[]> entityStackData = this.createEntityStackNBT(entity.getType(), stackSize, entity.getLocation());
-            StackedEntity stackedEntity = new StackedEntity(data.getEntity(), entityStackData);
+            StackedEntityDataStorage entityStackData = this.createEntityStackData(entity.getType(), stackSize, entity.getLocation());
+            StackedEntity stackedEntity = new StackedEntity(-1, data.getEntity(), entityStackData);
             this.stackManager.addEntityStack(stackedEntity);
             stacks.add(stackedEntity);
         }
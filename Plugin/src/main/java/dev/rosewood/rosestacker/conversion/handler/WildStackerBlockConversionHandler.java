@@ -0,0 +1,85 @@
+package dev.rosewood.rosestacker.conversion.handler;
+
+import dev.rosewood.rosegarden.RosePlugin;
+import dev.rosewood.rosestacker.conversion.ConversionData;
+import dev.rosewood.rosestacker.stack.Stack;
+import dev.rosewood.rosestacker.stack.StackType;
+import dev.rosewood.rosestacker.stack.StackedBlock;
+import java.util.Collections;
+import java.util.Set;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.entity.ArmorStand;
+import org.bukkit.entity.Entity;
+import org.bukkit.inventory.EntityEquipment;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Converts WildStacker barrels once their chunk is loaded.
+ * WildStacker displays a barrel as a cauldron with an armor stand wearing the stacked block,
+ * so the armor stand is removed and the block is put back.
+ */
+public class WildStackerBlockConversionHandler extends ConversionHandler {
+
+    public WildStackerBlockConversionHandler(RosePlugin rosePlugin) {
+        super(rosePlugin, StackType.BLOCK);
+    }
+
+    @Override
+    public Set<Stack<?>> handleConversion(Set<ConversionData> conversionData) {
+        // Blocks can only be changed on the main thread, so the stacks are created and displayed there
+        Bukkit.getScheduler().runTask(this.rosePlugin, () -> {
+            for (ConversionData data : conversionData) {
+                Block block = data.getLocation().getBlock();
+                if (block.getType() != Material.CAULDRON)
+                    continue;
+
+                Material type = this.removeDisplayBlock(block);
+                if (type == null)
+                    continue;
+
+                block.setType(type);
+
+                // Stacks of 1 aren't really stacks
+                if (data.getStackSize() <= 1)
+                    continue;
+
+                StackedBlock stackedBlock = this.stackManager.createBlockStack(block, data.getStackSize());
+                if (stackedBlock != null)
+                    stackedBlock.updateDisplay();
+            }
+        });
+
+        return Collections.emptySet();
+    }
+
+    /**
+     * Removes the armor stand that displays the block of a barrel
+     *
+     * @param block The barrel block
+     * @return the type of the stacked block, or null if there was no display armor stand
+     */
+    private Material removeDisplayBlock(Block block) {
+        Location center = block.getLocation().add(0.5, 0.5, 0.5);
+        for (Entity entity : block.getWorld().getNearbyEntities(center, 0.5, 1, 0.5)) {
+            if (!(entity instanceof ArmorStand))
+                continue;
+
+            EntityEquipment equipment = ((ArmorStand) entity).getEquipment();
+            if (equipment == null)
+                continue;
+
+            ItemStack helmet = equipment.getHelmet();
+            if (helmet == null || !helmet.getType().isBlock())
+                continue;
+
+            entity.remove();
+            return helmet.getType();
+        }
+
+        return null;
+    }
+
+}
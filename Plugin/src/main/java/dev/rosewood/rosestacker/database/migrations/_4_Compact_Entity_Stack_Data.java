@@ -0,0 +1,65 @@
+package dev.rosewood.rosestacker.database.migrations;
+
+import dev.rosewood.rosegarden.database.DataMigration;
+import dev.rosewood.rosegarden.database.DatabaseConnector;
+import dev.rosewood.rosestacker.utils.EntitySerializer;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+public class _4_Compact_Entity_Stack_Data extends DataMigration {
+
+    private static final int BATCH_SIZE = 500;
+
+    public _4_Compact_Entity_Stack_Data() {
+        super(4);
+    }
+
+    @Override
+    public void migrate(DatabaseConnector connector, Connection connection, String tablePrefix) throws SQLException {
+        // Rewrite all entity stacks that are still in the legacy format, a page at a time so large tables don't have to fit in memory
+        String select = "SELECT id, stack_entities FROM " + tablePrefix + "stacked_entity WHERE id > ? ORDER BY id LIMIT " + BATCH_SIZE;
+        String update = "UPDATE " + tablePrefix + "stacked_entity SET stack_entities = ? WHERE id = ?";
+
+        int lastId = -1;
+        try (PreparedStatement selectStatement = connection.prepareStatement(select);
+             PreparedStatement updateStatement = connection.prepareStatement(update)) {
+            while (true) {
+                Map<Integer, byte[]> page = new LinkedHashMap<>();
+                selectStatement.setInt(1, lastId);
+                try (ResultSet result = selectStatement.executeQuery()) {
+                    while (result.next())
+                        page.put(result.getInt("id"), result.getBytes("stack_entities"));
+                }
+
+                if (page.isEmpty())
+                    break;
+
+                for (Entry<Integer, byte[]> entry : page.entrySet()) {
+                    lastId = entry.getKey();
+
+                    byte[] data = entry.getValue();
+                    if (data == null || !EntitySerializer.isLegacyFormat(data))
+                        continue;
+
+                    try {
+                        updateStatement.setBytes(1, EntitySerializer.toBlob(EntitySerializer.readNBTList(data)));
+                        updateStatement.setInt(2, entry.getKey());
+                        updateStatement.addBatch();
+                    } catch (IOException e) {
+                        // Leave unreadable data alone, it will be cleaned up when the stack fails to load
+                        e.printStackTrace();
+                    }
+                }
+
+                updateStatement.executeBatch();
+            }
+        }
+    }
+
+}
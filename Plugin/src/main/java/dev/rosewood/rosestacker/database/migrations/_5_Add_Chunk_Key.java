@@ -0,0 +1,35 @@
+package dev.rosewood.rosestacker.database.migrations;
+
+import dev.rosewood.rosegarden.database.DataMigration;
+import dev.rosewood.rosegarden.database.DatabaseConnector;
+import dev.rosewood.rosegarden.database.MySQLConnector;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class _5_Add_Chunk_Key extends DataMigration {
+
+    public _5_Add_Chunk_Key() {
+        super(5);
+    }
+
+    @Override
+    public void migrate(DatabaseConnector connector, Connection connection, String tablePrefix) throws SQLException {
+        // Pack chunk_x and chunk_z into a single value the same way StackerUtils#getChunkKey does
+        // MySQL bit operations are unsigned, so the result needs to be cast back to a signed value
+        String chunkKey = "(chunk_x << 32) | (chunk_z & 4294967295)";
+        if (connector instanceof MySQLConnector)
+            chunkKey = "CAST(" + chunkKey + " AS SIGNED)";
+
+        String[] tableNames = { "stacked_entity", "stacked_item", "stacked_block", "stacked_spawner" };
+        for (String tableName : tableNames) {
+            try (Statement statement = connection.createStatement()) {
+                statement.addBatch("ALTER TABLE " + tablePrefix + tableName + " ADD COLUMN chunk_key BIGINT NOT NULL DEFAULT 0");
+                statement.addBatch("UPDATE " + tablePrefix + tableName + " SET chunk_key = " + chunkKey);
+                statement.addBatch("CREATE INDEX " + tablePrefix + tableName + "_chunk_key_index ON " + tablePrefix + tableName + " (world, chunk_key)");
+                statement.executeBatch();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package dev.rosewood.rosestacker.database.migrations;
+
+import dev.rosewood.rosegarden.database.DataMigration;
+import dev.rosewood.rosegarden.database.DatabaseConnector;
+import dev.rosewood.rosegarden.database.MySQLConnector;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class _6_Create_Table_Worlds extends DataMigration {
+
+    public _6_Create_Table_Worlds() {
+        super(6);
+    }
+
+    @Override
+    public void migrate(DatabaseConnector connector, Connection connection, String tablePrefix) throws SQLException {
+        String autoIncrement = connector instanceof MySQLConnector ? " AUTO_INCREMENT" : "";
+        String blob = connector instanceof MySQLConnector ? "LONGBLOB" : "BLOB";
+
+        // Create StackedWorld table and fill it with every world that currently has stacks
+        try (Statement statement = connection.createStatement()) {
+            statement.addBatch("CREATE TABLE " + tablePrefix + "stacked_world (" +
+                    "id INTEGER PRIMARY KEY" + autoIncrement + ", " +
+                    "name VARCHAR(255) NOT NULL, " +
+                    "UNIQUE (name)" +
+                    ")");
+            statement.addBatch("INSERT INTO " + tablePrefix + "stacked_world (name) " +
+                    "SELECT world FROM " + tablePrefix + "stacked_entity UNION " +
+                    "SELECT world FROM " + tablePrefix + "stacked_item UNION " +
+                    "SELECT world FROM " + tablePrefix + "stacked_block UNION " +
+                    "SELECT world FROM " + tablePrefix + "stacked_spawner");
+            statement.executeBatch();
+        }
+
+        // Rebuild the stack tables to reference the world by id instead of by name
+        this.rebuildTable(connection, tablePrefix, "stacked_entity",
+                "id INTEGER PRIMARY KEY" + autoIncrement + ", " +
+                "entity_uuid VARCHAR(36) NOT NULL, " +
+                "stack_entities " + blob + " NOT NULL, " +
+                "world_id INTEGER NOT NULL, " +
+                "chunk_x INTEGER NOT NULL, " +
+                "chunk_z INTEGER NOT NULL, " +
+                "chunk_key BIGINT NOT NULL, " +
+                "UNIQUE (entity_uuid)",
+                "id, entity_uuid, stack_entities");
+
+        this.rebuildTable(connection, tablePrefix, "stacked_item",
+                "id INTEGER PRIMARY KEY" + autoIncrement + ", " +
+                "entity_uuid VARCHAR(36) NOT NULL, " +
+                "stack_size INTEGER NOT NULL, " +
+                "world_id INTEGER NOT NULL, " +
+                "chunk_x INTEGER NOT NULL, " +
+                "chunk_z INTEGER NOT NULL, " +
+                "chunk_key BIGINT NOT NULL, " +
+                "UNIQUE (entity_uuid)",
+                "id, entity_uuid, stack_size");
+
+        for (String tableName : new String[] { "stacked_block", "stacked_spawner" }) {
+            this.rebuildTable(connection, tablePrefix, tableName,
+                    "id INTEGER PRIMARY KEY" + autoIncrement + ", " +
+                    "stack_size INTEGER NOT NULL, " +
+                    "world_id INTEGER NOT NULL, " +
+                    "chunk_x INTEGER NOT NULL, " +
+                    "chunk_z INTEGER NOT NULL, " +
+                    "chunk_key BIGINT NOT NULL, " +
+                    "block_x INTEGER NOT NULL, " +
+                    "block_y INTEGER NOT NULL, " +
+                    "block_z INTEGER NOT NULL, " +
+                    "UNIQUE (world_id, chunk_x, chunk_z, block_x, block_y, block_z)",
+                    "id, stack_size, block_x, block_y, block_z");
+        }
+    }
+
+    /**
+     * Copies a stack table into a new table with the given columns, replacing the world name with its id
+     *
+     * @param connection The connection to the database
+     * @param tablePrefix The table prefix
+     * @param tableName The name of the table to rebuild
+     * @param columns The column definitions of the new table, must include world_id, chunk_x, chunk_z, and chunk_key
+     * @param copiedColumns The other columns to copy as they are
+     * @throws SQLException if the table could not be rebuilt
+     */
+    private void rebuildTable(Connection connection, String tablePrefix, String tableName, String columns, String copiedColumns) throws SQLException {
+        String table = tablePrefix + tableName;
+        String newTable = table + "_new";
+        String copiedSelect = "t." + copiedColumns.replace(", ", ", t.");
+
+        try (Statement statement = connection.createStatement()) {
+            statement.addBatch("CREATE TABLE " + newTable + " (" + columns + ")");
+            statement.addBatch("INSERT INTO " + newTable + " (" + copiedColumns + ", world_id, chunk_x, chunk_z, chunk_key) " +
+                    "SELECT " + copiedSelect + ", w.id, t.chunk_x, t.chunk_z, t.chunk_key FROM " + table + " t " +
+                    "JOIN " + tablePrefix + "stacked_world w ON w.name = t.world");
+            statement.addBatch("DROP TABLE " + table);
+            statement.addBatch("ALTER TABLE " + newTable + " RENAME TO " + table);
+            statement.addBatch("CREATE INDEX " + table + "_chunk_key_index ON " + table + " (world_id, chunk_key)");
+            statement.executeBatch();
+        }
+    }
+
+}
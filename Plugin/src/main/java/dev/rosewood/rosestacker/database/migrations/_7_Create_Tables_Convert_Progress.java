@@ -0,0 +1,47 @@
+package dev.rosewood.rosestacker.database.migrations;
+
+import dev.rosewood.rosegarden.database.DataMigration;
+import dev.rosewood.rosegarden.database.DatabaseConnector;
+import dev.rosewood.rosegarden.database.MySQLConnector;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class _7_Create_Tables_Convert_Progress extends DataMigration {
+
+    public _7_Create_Tables_Convert_Progress() {
+        super(7);
+    }
+
+    @Override
+    public void migrate(DatabaseConnector connector, Connection connection, String tablePrefix) throws SQLException {
+        String autoIncrement = connector instanceof MySQLConnector ? " AUTO_INCREMENT" : "";
+
+        // Create conversion checkpoint table
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + tablePrefix + "convert_checkpoint (" +
+                    "name VARCHAR(100) NOT NULL, " +
+                    "last_row BIGINT NOT NULL, " +
+                    "PRIMARY KEY (name)" +
+                    ")");
+        }
+
+        // Create StackedBlock table for blocks that can only be converted once their chunk is loaded
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + tablePrefix + "convert_stacked_block (" +
+                    "id INTEGER PRIMARY KEY" + autoIncrement + ", " +
+                    "stack_size INTEGER NOT NULL, " +
+                    "world_id INTEGER NOT NULL, " +
+                    "chunk_key BIGINT NOT NULL, " +
+                    "block_x INTEGER NOT NULL, " +
+                    "block_y INTEGER NOT NULL, " +
+                    "block_z INTEGER NOT NULL" +
+                    ")");
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE INDEX " + tablePrefix + "convert_stacked_block_chunk_key_index ON " + tablePrefix + "convert_stacked_block (world_id, chunk_key)");
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package dev.rosewood.rosestacker.database.migrations;
+
+import dev.rosewood.rosegarden.database.DataMigration;
+import dev.rosewood.rosegarden.database.DatabaseConnector;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class _8_Add_Convert_Entity_UUID_Index extends DataMigration {
+
+    public _8_Add_Convert_Entity_UUID_Index() {
+        super(8);
+    }
+
+    @Override
+    public void migrate(DatabaseConnector connector, Connection connection, String tablePrefix) throws SQLException {
+        // Index the conversion tables by entity_uuid, they are looked up by it every time a chunk loads
+        try (Statement statement = connection.createStatement()) {
+            statement.addBatch("CREATE INDEX " + tablePrefix + "convert_stacked_entity_uuid_index ON " + tablePrefix + "convert_stacked_entity (entity_uuid)");
+            statement.addBatch("CREATE INDEX " + tablePrefix + "convert_stacked_item_uuid_index ON " + tablePrefix + "convert_stacked_item (entity_uuid)");
+            statement.executeBatch();
+        }
+    }
+
+}
@@ -131,7 +131,7 @@ public class StackedSpawnerGui {
                 .setNameSupplier(() -> GuiFactory.createString(RoseStacker.getInstance().getManager(LocaleManager.class).getLocaleMessage("spawner-stack-display", StringPlaceholders.builder("amount", this.stackedSpawner.getStackSize())
                         .addPlaceholder("name", stackSettings.getDisplayName()).build())))
                 .setLoreSupplier(() -> {
-                    return Collections.singletonList(this.getString("time-until-next-spawn", StringPlaceholders.single("time", this.stackedSpawner.getLastDelay() - SpawnerSpawnManager.DELAY_THRESHOLD + 1)));
+                    return Collections.singletonList(this.getString("time-until-next-spawn", StringPlaceholders.single("time", this.stackedSpawner.getDelay() - SpawnerSpawnManager.DELAY_THRESHOLD + 1)));
                 }
             ));
         mainScreen.addButtonAt(15, GuiFactory.createButton()
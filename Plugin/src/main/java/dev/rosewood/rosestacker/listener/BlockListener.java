@@ -9,6 +9,7 @@ import dev.rosewood.rosestacker.event.SpawnerUnstackEvent;
 import dev.rosewood.rosestacker.hook.CoreProtectHook;
 import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
 import dev.rosewood.rosestacker.manager.LocaleManager;
+import dev.rosewood.rosestacker.manager.SpawnerSpawnManager;
 import dev.rosewood.rosestacker.manager.StackManager;
 import dev.rosewood.rosestacker.manager.StackSettingManager;
 import dev.rosewood.rosestacker.stack.StackedBlock;
@@ -407,6 +408,21 @@ public class BlockListener implements Listener {
             event.setCancelled(true);
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onSpawnerPhysics(BlockPhysicsEvent event) {
+        if (!Setting.SPAWNER_DEACTIVATE_WHEN_POWERED.getBoolean())
+            return;
+
+        StackManager stackManager = this.rosePlugin.getManager(StackManager.class);
+        if (!stackManager.isSpawnerStackingEnabled())
+            return;
+
+        // A neighbor changed, so the redstone power of the spawner may have too
+        StackedSpawner stackedSpawner = stackManager.getStackedSpawner(event.getBlock());
+        if (stackedSpawner != null)
+            this.rosePlugin.getManager(SpawnerSpawnManager.class).scheduleSpawner(stackedSpawner);
+    }
+
     @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
     public void onPistonExtend(BlockPistonExtendEvent event) {
         StackManager stackManager = this.rosePlugin.getManager(StackManager.class);
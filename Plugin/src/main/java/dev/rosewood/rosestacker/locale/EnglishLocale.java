@@ -70,11 +70,15 @@ public class EnglishLocale implements Locale {
             this.put("command-stats-stacked-items", "&b%stackAmount% &eloaded item stacks, totaling &b%total% &eitems.");
             this.put("command-stats-stacked-blocks", "&b%stackAmount% &eloaded block stacks, totaling &b%total% &eblocks.");
             this.put("command-stats-stacked-spawners", "&b%stackAmount% &eloaded spawner stacks, totaling &b%total% &espawners.");
+            this.put("command-stats-pending-writes", "&b%updates% &estack updates and &b%deletes% &estack deletions waiting to be saved.");
+            this.put("command-stats-pending-loads", "&b%chunks% &echunks and &b%stacks% &estacks waiting to be loaded.");
 
             this.put("#8", "Convert Command");
             this.put("command-convert-description", "&8 - &d/rs convert &7- Converts data from another stacking plugin");
+            this.put("command-convert-started", "&eConverting data from &b%plugin% &eto RoseStacker, this may take a while. Progress will be shown in the console.");
             this.put("command-convert-converted", "&eConverted data from &b%plugin% &eto RoseStacker. The converted plugin has been disabled. Make sure to remove the converted plugin from your plugins folder.");
             this.put("command-convert-failed", "&cFailed to convert &b%plugin%&c, plugin is not enabled.");
+            this.put("command-convert-in-progress", "&cA conversion is already running, wait for it to finish before starting another.");
             this.put("command-convert-aborted", "&cAborted attempting to convert &b%plugin%&c. You have already converted from another stacking plugin.");
 
             this.put("#9", "Purge Data Command");
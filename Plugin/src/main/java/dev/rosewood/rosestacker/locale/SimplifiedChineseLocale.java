@@ -70,11 +70,15 @@ public class SimplifiedChineseLocale implements Locale {
             this.put("command-stats-stacked-items", "&b%stackAmount% &e份已加载的堆叠物品, 共计 &b%total% &e个单体物品。");
             this.put("command-stats-stacked-blocks", "&b%stackAmount% &e份已加载的堆叠方块, 共计 &b%total% &e个单体方块。");
             this.put("command-stats-stacked-spawners", "&b%stackAmount% &e个已加载的堆叠刷怪笼, 共计 &b%total% &e个单体刷怪笼。");
+            this.put("command-stats-pending-writes", "&b%updates% &e个堆叠更新和 &b%deletes% &e个堆叠删除正在等待保存。");
+            this.put("command-stats-pending-loads", "&b%chunks% &e个区块和 &b%stacks% &e个堆叠正在等待加载。");
 
             this.put("#8", "转化命令");
             this.put("command-convert-description", "&8 - &d/rs convert &7- 从另一个堆叠类型的插件转化数据");
+            this.put("command-convert-started", "&e正在转化插件 &b%plugin% &e的数据至 RoseStacker, 这可能需要一段时间。进度将显示在控制台中。");
             this.put("command-convert-converted", "&e已转化插件 &b%plugin% &e的数据至 RoseStacker。拥有数据源的插件已被关闭，请确保在下次重启前将其移出插件文件夹。");
             this.put("command-convert-failed", "&c无法转化插件 &b%plugin% &c的数据, 该插件未处于运行状态。");
+            this.put("command-convert-in-progress", "&c已有数据转化正在进行，请等待其完成后再开始新的转化。");
             this.put("command-convert-aborted", "&c已中止对插件 &b%plugin% &c进行数据转化的尝试， 您已经从另一个堆叠插件转化过数据了。");
 
             this.put("#9", "清除数据命令");
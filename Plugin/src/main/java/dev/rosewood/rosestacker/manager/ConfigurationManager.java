@@ -14,6 +14,8 @@ public class ConfigurationManager extends AbstractConfigurationManager {
     public enum Setting implements RoseSetting {
         DISABLED_WORLDS("disabled-worlds", Collections.singletonList("disabled_world_name"), "A list of worlds that the plugin is disabled in"),
         STACK_FREQUENCY("stack-frequency", 20, "How often should we try to stack nearby entities?", "Higher values mean longer times between checks, but also less lag", "If you are having issues with TPS, increase this value", "Values are in ticks, do not set lower than 1"),
+        STACK_PARALLEL_ENABLED("stack-parallel-enabled", false, "Should the stacks in each world be stacked in parallel on multiple threads?", "Stacks are split into regions, and regions far enough apart from each other are stacked at the same time", "This can help servers with a lot of stacks in a single world and many CPU cores"),
+        STACK_PARALLEL_THREADS("stack-parallel-threads", -1, "How many threads should be used to stack in parallel?", "Set to -1 to use one thread per CPU core"),
         NAMETAG_UPDATE_FREQUENCY("nametag-update-frequency", 10, "How often should we update stacked entity nametags?"),
 
         GLOBAL_ENTITY_SETTINGS("global-entity-settings", null, "Global entity settings", "Changed values in entity_settings.yml will override these values"),
@@ -31,6 +33,7 @@ public class ConfigurationManager extends AbstractConfigurationManager {
         ENTITY_KILL_TRANSFER_VELOCITY("global-entity-settings.kill-transfer-velocity", true, "Should knockback be transferred to the next entity in the stack?"),
         ENTITY_DROP_ACCURATE_ITEMS("global-entity-settings.drop-accurate-items", true, "Should items be dropped for all entities when an entire stack is killed at once?"),
         ENTITY_DROP_ACCURATE_EXP("global-entity-settings.drop-accurate-exp", true, "Should exp be dropped for all entities when an entire stack is killed at once?"),
+        ENTITY_LOOT_APPROXIMATION_AMOUNT("global-entity-settings.loot-approximation-amount", 256, "How many times at most should the loot table be rolled for each kind of entity when an entire stack is killed at once?", "The loot for any entities past this amount will be estimated from the rolls that were made", "This has no effect if trigger-death-event-for-entire-stack-kill is enabled", "Set to -1 to always roll the loot table for every entity"),
         ENTITY_SAVE_ATTRIBUTES("global-entity-settings.save-attributes", false, "Should entity attributes (custom max health, custom damage, etc.) be saved in the stack data?", "Disabled by default, as it increases the database size to have this enabled"),
         ENTITY_STACK_TO_BOTTOM("global-entity-settings.stack-to-bottom", false, "Should newly stacked entities be put on the bottom of the stack?"),
         ENTITY_REQUIRE_LINE_OF_SIGHT("global-entity-settings.require-line-of-sight", true, "Do entities need to be able to see each other to be able to stack?", "Setting this to true will prevent entities from stacking through walls"),
@@ -137,6 +140,17 @@ public class ConfigurationManager extends AbstractConfigurationManager {
                 "&7- &cRed &emeans the mob can not stack."
         ), "The lore to display on the stacking tool"),
 
+        DATA_SETTINGS("data-settings", null, "Settings that control how stack data is saved to the database"),
+        DATA_WRITE_INTERVAL("data-settings.write-interval", 100, "How often should queued stack changes be written to the database?", "Changes are grouped together and written in a single transaction", "Values are in ticks"),
+        DATA_WRITE_BATCH_SIZE("data-settings.write-batch-size", 1000, "How many stack changes can be queued before they are written early?"),
+        DATA_COMPRESS_ENTITY_STACKS("data-settings.compress-entity-stacks", true, "Should the data of each entity stack be compressed before it is saved?", "Large stacks of similar mobs compress very well, at the cost of a little extra processing"),
+        DATA_LOAD_BUDGET("data-settings.load-budget", 2.0, "How much time can be spent each tick putting loaded stacks back into the world?", "Stacks that don't fit in the budget are loaded over the next ticks", "Values are in milliseconds"),
+        DATA_LOAD_ROW_LIMIT("data-settings.load-row-limit", 250, "How many loaded stack rows can be put back into the world each tick at most?", "This applies to entity, item, block and spawner stacks together"),
+        DATA_CHUNK_LOAD_LIMIT("data-settings.chunk-load-limit", 16, "How many chunks can have their stacks loaded each tick per world?", "Chunks closest to players are loaded first, the rest wait for the next tick"),
+        DATA_CHUNK_CACHE_SIZE("data-settings.chunk-cache-size", 256, "How many recently unloaded chunks should have their stacks kept in memory per world?", "Chunks that are loaded again soon after unloading will not need to be read from the database", "Stacks are still saved to the database when their chunk unloads", "Set to 0 to disable"),
+        DATA_CHUNK_CACHE_MAX_AGE("data-settings.chunk-cache-max-age", 60, "How long should the stacks of an unloaded chunk be kept in memory?", "Values are in seconds"),
+        DATA_CHUNK_CACHE_MAX_MEMORY("data-settings.chunk-cache-max-memory", 32, "Roughly how much memory can the cached chunk stacks use per world?", "Values are in megabytes"),
+
         MISC_SETTINGS("misc-settings", null, "Miscellaneous other settings for the plugin"),
         MISC_COREPROTECT_LOGGING("misc-settings.coreprotect-logging-enabled", true, "If CoreProtect is installed, should we log stacked block/spawner break/placing?"),
         MISC_CLEARLAG_CLEAR_ENTITIES("misc-settings.clearlag-clear-entities", true, "If Clearlag is installed, should we clear stacked entities?"),
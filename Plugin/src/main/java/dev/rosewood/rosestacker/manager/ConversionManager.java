@@ -19,6 +19,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
@@ -36,6 +37,7 @@ public class ConversionManager extends Manager implements Listener {
     private Map<StackPlugin, StackPluginConverter> converters;
     private Set<ConversionHandler> conversionHandlers;
     private CommentedFileConfiguration convertLockConfig;
+    private boolean converting;
 
     private DataManager dataManager;
 
@@ -104,26 +106,58 @@ public class ConversionManager extends Manager implements Listener {
         this.convertLockConfig.save();
     }
 
-    public boolean convert(StackPlugin stackPlugin) {
+    /**
+     * Converts the data of another stacking plugin in the background, then disables it and reloads this plugin.
+     * The converted plugin is told to save its loaded data on the main thread first.
+     *
+     * Only one conversion can run at a time, must be called on the main thread.
+     *
+     * @param stackPlugin The plugin to convert from
+     * @param callback Called on the main thread with true if the conversion succeeded, otherwise false
+     */
+    public void convert(StackPlugin stackPlugin, Consumer<Boolean> callback) {
         StackPluginConverter converter = this.converters.get(stackPlugin);
-        if (!converter.canConvert())
-            return false;
+        if (this.converting || !converter.canConvert()) {
+            callback.accept(false);
+            return;
+        }
 
+        // The converted plugin's loaded data is changed on the main thread, so it has to be saved from here
         try {
-            // Convert, then disable the converted plugin
-            converter.convert();
-            converter.disablePlugin();
-
-            // Make sure we set the conversion handlers
-            this.dataManager.setConversionHandlers(converter.getConverterTypes());
-
-            // Reload plugin to convert and update data
-            Bukkit.getScheduler().runTask(this.rosePlugin, this.rosePlugin::reload);
+            converter.saveData();
         } catch (Exception ex) {
-            return false;
+            ex.printStackTrace();
+            callback.accept(false);
+            return;
         }
 
-        return true;
+        this.converting = true;
+
+        // The source data can be very large, so read it off of the main thread
+        Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> {
+            try {
+                converter.convert();
+
+                // Make sure we set the conversion handlers
+                this.dataManager.setConversionHandlers(converter.getConverterTypes());
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                Bukkit.getScheduler().runTask(this.rosePlugin, () -> {
+                    this.converting = false;
+                    callback.accept(false);
+                });
+                return;
+            }
+
+            Bukkit.getScheduler().runTask(this.rosePlugin, () -> {
+                this.converting = false;
+
+                // Disable the converted plugin, then reload plugin to convert and update data
+                converter.disablePlugin();
+                callback.accept(true);
+                this.rosePlugin.reload();
+            });
+        });
     }
 
     public void convertChunks(Set<Chunk> chunks) {
@@ -138,7 +172,7 @@ public class ConversionManager extends Manager implements Listener {
         for (Chunk chunk : chunks)
             entities.addAll(Arrays.asList(chunk.getEntities()));
 
-        Map<StackType, Set<ConversionData>> conversionData = this.dataManager.getConversionData(entities, requiredStackTypes);
+        Map<StackType, Set<ConversionData>> conversionData = this.dataManager.getConversionData(chunks, entities, requiredStackTypes);
 
         Set<Stack<?>> convertedStacks = new HashSet<>();
         for (ConversionHandler conversionHandler : this.conversionHandlers) {
@@ -174,6 +208,13 @@ public class ConversionManager extends Manager implements Listener {
             Bukkit.getScheduler().runTask(this.rosePlugin, () -> convertedStacks.forEach(Stack::updateDisplay));
     }
 
+    /**
+     * @return true if a conversion is currently running, otherwise false
+     */
+    public boolean isConverting() {
+        return this.converting;
+    }
+
     public Set<StackPlugin> getEnabledConverters() {
         return this.converters.entrySet().stream()
                 .filter(x -> x.getValue().canConvert())
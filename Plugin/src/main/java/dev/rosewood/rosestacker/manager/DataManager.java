@@ -1,17 +1,24 @@
 package dev.rosewood.rosestacker.manager;
 
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
 import dev.rosewood.rosegarden.RosePlugin;
 import dev.rosewood.rosegarden.database.SQLiteConnector;
 import dev.rosewood.rosegarden.manager.AbstractDataManager;
 import dev.rosewood.rosestacker.conversion.ConversionData;
 import dev.rosewood.rosestacker.conversion.ConverterType;
+import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
 import dev.rosewood.rosestacker.stack.Stack;
 import dev.rosewood.rosestacker.stack.StackType;
 import dev.rosewood.rosestacker.stack.StackedBlock;
 import dev.rosewood.rosestacker.stack.StackedEntity;
+import dev.rosewood.rosestacker.stack.StackedEntityDataStorage;
 import dev.rosewood.rosestacker.stack.StackedItem;
 import dev.rosewood.rosestacker.stack.StackedSpawner;
 import dev.rosewood.rosestacker.utils.EntitySerializer;
+import dev.rosewood.rosestacker.utils.LongHashSet;
+import dev.rosewood.rosestacker.utils.StackerUtils;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -23,18 +30,27 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
+import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
@@ -42,312 +58,407 @@ import org.bukkit.block.CreatureSpawner;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Item;
 import org.bukkit.entity.LivingEntity;
+import org.bukkit.scheduler.BukkitTask;
 
 public class DataManager extends AbstractDataManager {
 
+    /**
+     * The number of chunk keys bound to each chunk load query, in ascending order
+     */
+    private static final int[] CHUNK_QUERY_BUCKET_SIZES = { 1, 4, 16, 64, 256 };
+
+    /**
+     * The number of entity uuids bound to each conversion data query
+     */
+    private static final int CONVERSION_QUERY_BATCH_SIZE = 128;
+
+    /**
+     * The rate of false positives allowed when checking if an entity may have conversion data
+     */
+    private static final double CONVERSION_FILTER_FALSE_POSITIVE_RATE = 0.01;
+
+    private final Object flushLock;
+    private final Object pendingWriteLock;
+    private final Set<Stack<?>> pendingUpdates;
+    private final Set<Stack<?>> pendingDeletes;
+    private final Set<Stack<?>> inFlightUpdates;
+    private final Map<Stack<?>, PendingChunks> pendingStackChunks;
+    private final Map<UUID, Map<Long, Set<Stack<?>>>> pendingChunkIndex;
+    private final Map<UUID, LongHashSet> inFlightChunkKeys;
+    private final AtomicLong totalFlushedWrites;
+    private final Map<String, Integer> worldIds;
+    private final Queue<PendingStackAttachment<?, ?>> pendingStackAttachments;
+    private final Object conversionFilterLock;
+    private final Map<String, BloomFilter<CharSequence>> conversionFilters;
+    private Map<String, LongHashSet> blockConversionChunkKeys;
+    private ScheduledExecutorService writeExecutor;
+    private BukkitTask stackAttachTask;
+    private boolean flushRequested;
+
     public DataManager(RosePlugin rosePlugin) {
         super(rosePlugin);
+
+        this.flushLock = new Object();
+        this.pendingWriteLock = new Object();
+        this.pendingUpdates = new LinkedHashSet<>();
+        this.pendingDeletes = new LinkedHashSet<>();
+        this.inFlightUpdates = new HashSet<>();
+        this.pendingStackChunks = new HashMap<>();
+        this.pendingChunkIndex = new HashMap<>();
+        this.inFlightChunkKeys = new HashMap<>();
+        this.totalFlushedWrites = new AtomicLong();
+        this.worldIds = new ConcurrentHashMap<>();
+        this.pendingStackAttachments = new ConcurrentLinkedQueue<>();
+        this.conversionFilterLock = new Object();
+        this.conversionFilters = new HashMap<>();
+    }
+
+    @Override
+    public void reload() {
+        super.reload();
+
+        this.worldIds.clear();
+        synchronized (this.conversionFilterLock) {
+            this.conversionFilters.clear();
+            this.blockConversionChunkKeys = null;
+        }
+
+        long writeInterval = Math.max(1, Setting.DATA_WRITE_INTERVAL.getLong()) * 50;
+        this.writeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RoseStacker Data Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writeExecutor.scheduleWithFixedDelay(this::flushPendingWrites, writeInterval, writeInterval, TimeUnit.MILLISECONDS);
+        this.stackAttachTask = Bukkit.getScheduler().runTaskTimer(this.rosePlugin, this::processPendingStackAttachments, 1L, 1L);
+    }
+
+    @Override
+    public void disable() {
+        if (this.stackAttachTask != null) {
+            this.stackAttachTask.cancel();
+            this.stackAttachTask = null;
+        }
+
+        // Anything still waiting to be attached is already saved, it will be loaded again with its chunk
+        this.pendingStackAttachments.clear();
+
+        if (this.writeExecutor != null) {
+            this.writeExecutor.shutdown();
+            try {
+                this.writeExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            this.writeExecutor = null;
+        }
+
+        if (this.isConnected())
+            this.flushPendingWrites();
+
+        super.disable();
     }
 
+    /**
+     * Loads the entity stacks in the given chunks.
+     * The stack data is decoded on the calling thread, then the stacks are attached to their entities on the main thread
+     * a few at a time so that loading large stacks doesn't take up too much of a single tick.
+     * Because of this, the callback may be called multiple times with part of the stacks each time.
+     *
+     * @param chunks The chunks to load the entity stacks of
+     * @param callback The callback to call on the main thread with the loaded stacks
+     */
     public void getStackedEntities(Set<Chunk> chunks, Consumer<Set<StackedEntity>> callback) {
+        this.getStackedEntities(chunks, callback, () -> { });
+    }
+
+    /**
+     * Loads the entity stacks in the given chunks.
+     * The stack data is decoded on the calling thread, then the stacks are attached to their entities on the main thread
+     * a few at a time so that loading large stacks doesn't take up too much of a single tick.
+     * Because of this, the callback may be called multiple times with part of the stacks each time.
+     *
+     * @param chunks The chunks to load the entity stacks of
+     * @param callback The callback to call on the main thread with the loaded stacks
+     * @param doneCallback The callback to call on the main thread once every stack has been attached
+     */
+    public void getStackedEntities(Set<Chunk> chunks, Consumer<Set<StackedEntity>> callback, Runnable doneCallback) {
         if (chunks.isEmpty())
             callback.accept(Collections.emptySet());
 
-        String queryTemplate = "SELECT * FROM " + this.getTablePrefix() + "stacked_entity WHERE world = '%s' AND chunk_x = %d AND chunk_z = %d";
-        List<String> queries = new ArrayList<>();
+        // Make sure we don't read anything in these chunks that is still waiting to be written
+        this.flushPendingWrites(chunks);
 
-        int count = 0;
-        StringBuilder compoundSelect = new StringBuilder();
         Map<UUID, Entity> chunkEntities = new HashMap<>();
-        Iterator<Chunk> chunkIterator = chunks.iterator();
-        while (chunkIterator.hasNext()) {
-            Chunk chunk = chunkIterator.next();
+        for (Chunk chunk : chunks) {
             try {
                 Entity[] entities = chunk.getEntities();
                 for (Entity entity : entities)
                     chunkEntities.put(entity.getUniqueId(), entity);
             } catch (Exception ignored) { }
-
-            if (compoundSelect.length() > 0)
-                compoundSelect.append(" UNION ALL ");
-            compoundSelect.append(String.format(queryTemplate, chunk.getWorld().getName(), chunk.getX(), chunk.getZ()));
-
-            if (++count >= 500 || !chunkIterator.hasNext()) {
-                queries.add(compoundSelect.toString());
-                compoundSelect.setLength(0);
-                count = 0;
-            }
         }
 
-        Set<StackedEntityData> stackedEntityData = new HashSet<>();
-        this.databaseConnector.connect(connection -> {
-            for (String query : queries) {
-                try (Statement statement = connection.createStatement()) {
-                    ResultSet result = statement.executeQuery(query);
-                    while (result.next()) {
-                        stackedEntityData.add(new StackedEntityData(
-                                result.getInt("id"),
-                                UUID.fromString(result.getString("entity_uuid")),
-                                result.getBytes("stack_entities")
-                        ));
-                    }
-                }
+        List<StackedEntityData> stackedEntityData = new ArrayList<>();
+        this.databaseConnector.connect(connection -> this.queryChunks(connection, "stacked_entity", chunks, (result, world) -> stackedEntityData.add(new StackedEntityData(
+                result.getInt("id"),
+                UUID.fromString(result.getString("entity_uuid")),
+                result.getBytes("stack_entities"),
+                result.getInt("chunk_x"),
+                result.getInt("chunk_z")
+        ))));
+
+        // Decode the stack data now so only the entity lookups need to be done on the main thread
+        for (StackedEntityData stackData : stackedEntityData)
+            stackData.decode();
+
+        this.queueAttachment(new PendingStackAttachment<>(stackedEntityData, (stackData, cleanup) -> {
+            Entity entity = chunkEntities.get(stackData.entityUUID);
+
+            // The chunk may have unloaded again while waiting, leave the stack to be loaded with it next time
+            if (entity != null && !entity.isValid())
+                return null;
+
+            if (entity == null || stackData.stackedEntityDataStorage == null) {
+                cleanup.add(new StackedEntity(stackData.id, null, new StackedEntityDataStorage()));
+                return null;
             }
-        });
 
-        Runnable task = () -> {
-            Set<StackedEntity> stackedEntities = new HashSet<>();
-            Set<Stack<?>> cleanup = new HashSet<>();
-
-            for (StackedEntityData stackData : stackedEntityData) {
-                Entity entity = chunkEntities.get(stackData.entityUUID);
-                if (entity != null) {
-                    stackedEntities.add(EntitySerializer.fromBlob(stackData.id, (LivingEntity) entity, stackData.stackEntities));
-                } else {
-                    cleanup.add(new StackedEntity(stackData.id, null, null));
-                }
-            }
-
-            callback.accept(stackedEntities);
-
-            if (!cleanup.isEmpty())
-                Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> this.deleteStacks(cleanup));
-        };
-
-        if (Bukkit.isPrimaryThread()) {
-            task.run();
-        } else {
-            Bukkit.getScheduler().runTask(this.rosePlugin, task);
-        }
+            StackedEntity stackedEntity = new StackedEntity(stackData.id, (LivingEntity) entity, stackData.stackedEntityDataStorage);
+            stackedEntity.markSaved(stackedEntity.getModificationCount(), StackerUtils.getChunkKey(stackData.chunkX, stackData.chunkZ));
+            return stackedEntity;
+        }, callback, doneCallback));
     }
 
+    /**
+     * Loads the item stacks in the given chunks.
+     * The stacks are attached to their items on the main thread a few at a time, so the callback may be called multiple
+     * times with part of the stacks each time.
+     *
+     * @param chunks The chunks to load the item stacks of
+     * @param callback The callback to call on the main thread with the loaded stacks
+     */
     public void getStackedItems(Set<Chunk> chunks, Consumer<Set<StackedItem>> callback) {
+        this.getStackedItems(chunks, callback, () -> { });
+    }
+
+    /**
+     * Loads the item stacks in the given chunks.
+     * The stacks are attached to their items on the main thread a few at a time, so the callback may be called multiple
+     * times with part of the stacks each time.
+     *
+     * @param chunks The chunks to load the item stacks of
+     * @param callback The callback to call on the main thread with the loaded stacks
+     * @param doneCallback The callback to call on the main thread once every stack has been attached
+     */
+    public void getStackedItems(Set<Chunk> chunks, Consumer<Set<StackedItem>> callback, Runnable doneCallback) {
         if (chunks.isEmpty())
             callback.accept(Collections.emptySet());
 
-        String queryTemplate = "SELECT * FROM " + this.getTablePrefix() + "stacked_item WHERE world = '%s' AND chunk_x = %d AND chunk_z = %d";
-        List<String> queries = new ArrayList<>();
+        // Make sure we don't read anything in these chunks that is still waiting to be written
+        this.flushPendingWrites(chunks);
 
-        int count = 0;
-        StringBuilder compoundSelect = new StringBuilder();
         Map<UUID, Entity> chunkEntities = new HashMap<>();
-        Iterator<Chunk> chunkIterator = chunks.iterator();
-        while (chunkIterator.hasNext()) {
-            Chunk chunk = chunkIterator.next();
+        for (Chunk chunk : chunks) {
             try {
                 Entity[] entities = chunk.getEntities();
                 for (Entity entity : entities)
                     chunkEntities.put(entity.getUniqueId(), entity);
             } catch (Exception ignored) { }
-
-            if (compoundSelect.length() > 0)
-                compoundSelect.append(" UNION ALL ");
-            compoundSelect.append(String.format(queryTemplate, chunk.getWorld().getName(), chunk.getX(), chunk.getZ()));
-
-            if (++count >= 500 || !chunkIterator.hasNext()) {
-                queries.add(compoundSelect.toString());
-                compoundSelect.setLength(0);
-                count = 0;
-            }
         }
 
         Set<StackedItemData> stackedItemData = new HashSet<>();
-        this.databaseConnector.connect(connection -> {
-            for (String query : queries) {
-                try (Statement statement = connection.createStatement()) {
-                    ResultSet result = statement.executeQuery(query);
-                    while (result.next()) {
-                        stackedItemData.add(new StackedItemData(
-                                result.getInt("id"),
-                                result.getInt("stack_size"),
-                                UUID.fromString(result.getString("entity_uuid"))
-                        ));
-                    }
-                }
-            }
-        });
-
-        Runnable task = () -> {
-            Set<StackedItem> stackedItems = new HashSet<>();
-            Set<Stack<?>> cleanup = new HashSet<>();
-
-            for (StackedItemData stackData : stackedItemData) {
-                Entity entity = chunkEntities.get(stackData.entityUUID);
-                if (entity != null) {
-                    stackedItems.add(new StackedItem(stackData.id, stackData.stackSize, (Item) entity));
-                } else {
-                    cleanup.add(new StackedItem(stackData.id, 0, null));
-                }
+        this.databaseConnector.connect(connection -> this.queryChunks(connection, "stacked_item", chunks, (result, world) -> stackedItemData.add(new StackedItemData(
+                result.getInt("id"),
+                result.getInt("stack_size"),
+                UUID.fromString(result.getString("entity_uuid")),
+                result.getInt("chunk_x"),
+                result.getInt("chunk_z")
+        ))));
+
+        this.queueAttachment(new PendingStackAttachment<>(new ArrayList<>(stackedItemData), (stackData, cleanup) -> {
+            Entity entity = chunkEntities.get(stackData.entityUUID);
+
+            // The chunk may have unloaded again while waiting, leave the stack to be loaded with it next time
+            if (entity != null && !entity.isValid())
+                return null;
+
+            if (entity == null) {
+                cleanup.add(new StackedItem(stackData.id, 0, null));
+                return null;
             }
 
-            callback.accept(stackedItems);
-
-            if (!cleanup.isEmpty())
-                Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> this.deleteStacks(cleanup));
-        };
-
-        if (Bukkit.isPrimaryThread()) {
-            task.run();
-        } else {
-            Bukkit.getScheduler().runTask(this.rosePlugin, task);
-        }
+            StackedItem stackedItem = new StackedItem(stackData.id, stackData.stackSize, (Item) entity);
+            stackedItem.markSaved(stackedItem.getModificationCount(), StackerUtils.getChunkKey(stackData.chunkX, stackData.chunkZ));
+            return stackedItem;
+        }, callback, doneCallback));
     }
 
+    /**
+     * Loads the block stacks in the given chunks.
+     * The stacks are put back into the world on the main thread a few at a time, so the callback may be called multiple
+     * times with part of the stacks each time.
+     *
+     * @param chunks The chunks to load the block stacks of
+     * @param callback The callback to call on the main thread with the loaded stacks
+     */
     public void getStackedBlocks(Set<Chunk> chunks, Consumer<Set<StackedBlock>> callback) {
+        this.getStackedBlocks(chunks, callback, () -> { });
+    }
+
+    /**
+     * Loads the block stacks in the given chunks.
+     * The stacks are put back into the world on the main thread a few at a time, so the callback may be called multiple
+     * times with part of the stacks each time.
+     *
+     * @param chunks The chunks to load the block stacks of
+     * @param callback The callback to call on the main thread with the loaded stacks
+     * @param doneCallback The callback to call on the main thread once every stack has been loaded
+     */
+    public void getStackedBlocks(Set<Chunk> chunks, Consumer<Set<StackedBlock>> callback, Runnable doneCallback) {
         if (chunks.isEmpty())
             callback.accept(Collections.emptySet());
 
-        String queryTemplate = "SELECT * FROM " + this.getTablePrefix() + "stacked_block WHERE world = '%s' AND chunk_x = %d AND chunk_z = %d";
-        List<String> queries = new ArrayList<>();
-
-        int count = 0;
-        StringBuilder compoundSelect = new StringBuilder();
-        Iterator<Chunk> chunkIterator = chunks.iterator();
-        while (chunkIterator.hasNext()) {
-            Chunk chunk = chunkIterator.next();
-            if (compoundSelect.length() > 0)
-                compoundSelect.append(" UNION ALL ");
-            compoundSelect.append(String.format(queryTemplate, chunk.getWorld().getName(), chunk.getX(), chunk.getZ()));
-
-            if (++count >= 500 || !chunkIterator.hasNext()) {
-                queries.add(compoundSelect.toString());
-                compoundSelect.setLength(0);
-                count = 0;
-            }
-        }
+        // Make sure we don't read anything in these chunks that is still waiting to be written
+        this.flushPendingWrites(chunks);
 
         Set<StackedBlockData> stackedBlockData = new HashSet<>();
-        this.databaseConnector.connect(connection -> {
-            for (String query : queries) {
-                try (Statement statement = connection.createStatement()) {
-                    ResultSet result = statement.executeQuery(query);
-                    while (result.next()) {
-                        stackedBlockData.add(new StackedBlockData(
-                                result.getInt("id"),
-                                result.getInt("stack_size"),
-                                result.getInt("chunk_x"),
-                                result.getInt("chunk_z"),
-                                result.getInt("block_x"),
-                                result.getInt("block_y"),
-                                result.getInt("block_z"),
-                                result.getString("world")
-                        ));
-                    }
-                }
-            }
-        });
-
-        Runnable task = () -> {
-            Set<StackedBlock> stackedBlocks = new HashSet<>();
-            Set<Stack<?>> cleanup = new HashSet<>();
-
-            for (StackedBlockData stackData : stackedBlockData) {
-                World world = Bukkit.getWorld(stackData.world);
-                Block block = null;
-
-                boolean invalid = world == null;
-                if (!invalid) {
-                    block = world.getBlockAt((stackData.chunkX << 4) + stackData.blockX, stackData.blockY, (stackData.chunkZ << 4) + stackData.blockZ);
-                    if (block.getType() == Material.AIR)
-                        invalid = true;
-                }
-
-                if (!invalid) {
-                    stackedBlocks.add(new StackedBlock(stackData.id, stackData.stackSize, block));
-                } else {
-                    cleanup.add(new StackedBlock(stackData.id, 0, null));
-                }
+        this.databaseConnector.connect(connection -> this.queryChunks(connection, "stacked_block", chunks, (result, world) -> stackedBlockData.add(new StackedBlockData(
+                result.getInt("id"),
+                result.getInt("stack_size"),
+                result.getInt("chunk_x"),
+                result.getInt("chunk_z"),
+                result.getInt("block_x"),
+                result.getInt("block_y"),
+                result.getInt("block_z"),
+                world
+        ))));
+
+        this.queueAttachment(new PendingStackAttachment<>(new ArrayList<>(stackedBlockData), (stackData, cleanup) -> {
+            Block block = stackData.world.getBlockAt((stackData.chunkX << 4) + stackData.blockX, stackData.blockY, (stackData.chunkZ << 4) + stackData.blockZ);
+            if (block.getType() == Material.AIR) {
+                cleanup.add(new StackedBlock(stackData.id, 0, null));
+                return null;
             }
 
-            callback.accept(stackedBlocks);
-
-            if (!cleanup.isEmpty())
-                Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> this.deleteStacks(cleanup));
-        };
-
-        if (Bukkit.isPrimaryThread()) {
-            task.run();
-        } else {
-            Bukkit.getScheduler().runTask(this.rosePlugin, task);
-        }
+            StackedBlock stackedBlock = new StackedBlock(stackData.id, stackData.stackSize, block);
+            stackedBlock.markSaved(stackedBlock.getModificationCount(), StackerUtils.getChunkKey(stackData.chunkX, stackData.chunkZ));
+            return stackedBlock;
+        }, callback, doneCallback));
     }
 
+    /**
+     * Loads the spawner stacks in the given chunks.
+     * The stacks are put back into the world on the main thread a few at a time, so the callback may be called multiple
+     * times with part of the stacks each time.
+     *
+     * @param chunks The chunks to load the spawner stacks of
+     * @param callback The callback to call on the main thread with the loaded stacks
+     */
     public void getStackedSpawners(Set<Chunk> chunks, Consumer<Set<StackedSpawner>> callback) {
+        this.getStackedSpawners(chunks, callback, () -> { });
+    }
+
+    /**
+     * Loads the spawner stacks in the given chunks.
+     * The stacks are put back into the world on the main thread a few at a time, so the callback may be called multiple
+     * times with part of the stacks each time.
+     *
+     * @param chunks The chunks to load the spawner stacks of
+     * @param callback The callback to call on the main thread with the loaded stacks
+     * @param doneCallback The callback to call on the main thread once every stack has been loaded
+     */
+    public void getStackedSpawners(Set<Chunk> chunks, Consumer<Set<StackedSpawner>> callback, Runnable doneCallback) {
         if (chunks.isEmpty())
             callback.accept(Collections.emptySet());
 
-        String queryTemplate = "SELECT * FROM " + this.getTablePrefix() + "stacked_spawner WHERE world = '%s' AND chunk_x = %d AND chunk_z = %d";
-        List<String> queries = new ArrayList<>();
-
-        int count = 0;
-        StringBuilder compoundSelect = new StringBuilder();
-        Iterator<Chunk> chunkIterator = chunks.iterator();
-        while (chunkIterator.hasNext()) {
-            Chunk chunk = chunkIterator.next();
-            if (compoundSelect.length() > 0)
-                compoundSelect.append(" UNION ALL ");
-            compoundSelect.append(String.format(queryTemplate, chunk.getWorld().getName(), chunk.getX(), chunk.getZ()));
-
-            if (++count >= 500 || !chunkIterator.hasNext()) {
-                queries.add(compoundSelect.toString());
-                compoundSelect.setLength(0);
-                count = 0;
-            }
-        }
+        // Make sure we don't read anything in these chunks that is still waiting to be written
+        this.flushPendingWrites(chunks);
 
         Set<StackedBlockData> stackedSpawnerData = new HashSet<>();
-        this.databaseConnector.connect(connection -> {
-            for (String query : queries) {
-                try (Statement statement = connection.createStatement()) {
-                    ResultSet result = statement.executeQuery(query);
-                    while (result.next()) {
-                        stackedSpawnerData.add(new StackedBlockData(
-                                result.getInt("id"),
-                                result.getInt("stack_size"),
-                                result.getInt("chunk_x"),
-                                result.getInt("chunk_z"),
-                                result.getInt("block_x"),
-                                result.getInt("block_y"),
-                                result.getInt("block_z"),
-                                result.getString("world")
-                        ));
-                    }
-                }
+        this.databaseConnector.connect(connection -> this.queryChunks(connection, "stacked_spawner", chunks, (result, world) -> stackedSpawnerData.add(new StackedBlockData(
+                result.getInt("id"),
+                result.getInt("stack_size"),
+                result.getInt("chunk_x"),
+                result.getInt("chunk_z"),
+                result.getInt("block_x"),
+                result.getInt("block_y"),
+                result.getInt("block_z"),
+                world
+        ))));
+
+        this.queueAttachment(new PendingStackAttachment<>(new ArrayList<>(stackedSpawnerData), (stackData, cleanup) -> {
+            Block block = stackData.world.getBlockAt((stackData.chunkX << 4) + stackData.blockX, stackData.blockY, (stackData.chunkZ << 4) + stackData.blockZ);
+            if (block.getType() != Material.SPAWNER) {
+                cleanup.add(new StackedBlock(stackData.id, 0, null));
+                return null;
             }
-        });
 
-        Runnable task = () -> {
-            Set<StackedSpawner> stackedSpawners = new HashSet<>();
-            Set<Stack<?>> cleanup = new HashSet<>();
+            StackedSpawner stackedSpawner = new StackedSpawner(stackData.id, stackData.stackSize, (CreatureSpawner) block.getState());
+            stackedSpawner.markSaved(stackedSpawner.getModificationCount(), StackerUtils.getChunkKey(stackData.chunkX, stackData.chunkZ));
+            return stackedSpawner;
+        }, callback, doneCallback));
+    }
 
-            for (StackedBlockData stackData : stackedSpawnerData) {
-                World world = Bukkit.getWorld(stackData.world);
-                Block block = null;
+    /**
+     * Queries the rows of a stack table that are in the given chunks.
+     * Chunks are grouped by world id and looked up by their packed chunk key using prepared statements.
+     * The number of keys per statement is rounded up to one of a few fixed sizes, padding with a repeated key,
+     * so the same handful of statements are reused no matter how many chunks are loaded at once.
+     *
+     * @param connection The connection to query with
+     * @param tableName The name of the table without the prefix
+     * @param chunks The chunks to get the rows for
+     * @param consumer The consumer to call for each row with the world the row is in
+     * @throws SQLException if a query fails
+     */
+    private void queryChunks(Connection connection, String tableName, Set<Chunk> chunks, ResultConsumer consumer) throws SQLException {
+        Map<World, List<Long>> chunkKeysByWorld = new HashMap<>();
+        for (Chunk chunk : chunks)
+            chunkKeysByWorld.computeIfAbsent(chunk.getWorld(), x -> new ArrayList<>()).add(StackerUtils.getChunkKey(chunk.getX(), chunk.getZ()));
+
+        Map<Integer, PreparedStatement> statements = new HashMap<>();
+        try {
+            for (Map.Entry<World, List<Long>> entry : chunkKeysByWorld.entrySet()) {
+                // Worlds that were never saved to can't have any stacks
+                World world = entry.getKey();
+                int worldId = this.getWorldId(connection, world.getName(), false);
+                if (worldId == -1)
+                    continue;
+
+                List<Long> chunkKeys = entry.getValue();
+                int index = 0;
+                while (index < chunkKeys.size()) {
+                    int remaining = chunkKeys.size() - index;
+                    int bucketSize = CHUNK_QUERY_BUCKET_SIZES[CHUNK_QUERY_BUCKET_SIZES.length - 1];
+                    for (int size : CHUNK_QUERY_BUCKET_SIZES) {
+                        if (size >= remaining) {
+                            bucketSize = size;
+                            break;
+                        }
+                    }
 
-                boolean invalid = world == null;
-                if (!invalid) {
-                    block = world.getBlockAt((stackData.chunkX << 4) + stackData.blockX, stackData.blockY, (stackData.chunkZ << 4) + stackData.blockZ);
-                    if (block.getType() != Material.SPAWNER)
-                        invalid = true;
-                }
+                    PreparedStatement statement = statements.get(bucketSize);
+                    if (statement == null) {
+                        String placeholders = String.join(", ", Collections.nCopies(bucketSize, "?"));
+                        statement = connection.prepareStatement("SELECT * FROM " + this.getTablePrefix() + tableName + " WHERE world_id = ? AND chunk_key IN (" + placeholders + ")");
+                        statements.put(bucketSize, statement);
+                    }
 
-                if (!invalid) {
-                    stackedSpawners.add(new StackedSpawner(stackData.id, stackData.stackSize, (CreatureSpawner) block.getState()));
-                } else {
-                    cleanup.add(new StackedBlock(stackData.id, 0, null));
+                    int count = Math.min(bucketSize, remaining);
+                    statement.setInt(1, worldId);
+                    for (int i = 0; i < bucketSize; i++)
+                        statement.setLong(i + 2, chunkKeys.get(index + Math.min(i, count - 1)));
+                    index += count;
+
+                    try (ResultSet result = statement.executeQuery()) {
+                        while (result.next())
+                            consumer.accept(result, world);
+                    }
                 }
             }
-
-            callback.accept(stackedSpawners);
-
-            if (!cleanup.isEmpty())
-                Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> this.deleteStacks(cleanup));
-        };
-
-        if (Bukkit.isPrimaryThread()) {
-            task.run();
-        } else {
-            Bukkit.getScheduler().runTask(this.rosePlugin, task);
+        } finally {
+            for (PreparedStatement statement : statements.values())
+                statement.close();
         }
     }
 
@@ -355,172 +466,232 @@ public class DataManager extends AbstractDataManager {
         if (stackedEntities.isEmpty())
             return;
 
-        this.databaseConnector.connect(connection -> {
-            Set<StackedEntity> update = stackedEntities.stream().filter(x -> x.getId() != -1).collect(Collectors.toSet());
-            Set<StackedEntity> insert = stackedEntities.stream().filter(x -> x.getId() == -1).collect(Collectors.toSet());
-
-            if (!update.isEmpty()) {
-                String batchUpdate = "UPDATE " + this.getTablePrefix() + "stacked_entity SET entity_uuid = ?, stack_entities = ?, world = ?, chunk_x = ?, chunk_z = ? WHERE id = ?";
-                try (PreparedStatement statement = connection.prepareStatement(batchUpdate)) {
-                    for (StackedEntity stack : update) {
-                        statement.setString(1, stack.getEntity().getUniqueId().toString());
-                        statement.setBytes(2, EntitySerializer.toBlob(stack));
-                        statement.setString(3, stack.getLocation().getWorld().getName());
-                        statement.setInt(4, stack.getLocation().getBlockX() >> 4);
-                        statement.setInt(5, stack.getLocation().getBlockZ() >> 4);
-                        statement.setInt(6, stack.getId());
-                        statement.addBatch();
-                    }
-                    statement.executeBatch();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+        List<Runnable> savedCallbacks = new ArrayList<>();
+        this.databaseConnector.connect(connection -> this.createOrUpdateStackedEntities(connection, stackedEntities, savedCallbacks));
+        savedCallbacks.forEach(Runnable::run);
+    }
+
+    private void createOrUpdateStackedEntities(Connection connection, Collection<StackedEntity> stackedEntities, List<Runnable> savedCallbacks) throws SQLException {
+        // Only write stacks that have changed since they were last saved
+        Set<StackedEntity> dirty = stackedEntities.stream().filter(Stack::isDirty).collect(Collectors.toSet());
+        if (dirty.isEmpty())
+            return;
+
+        Set<StackedEntity> update = dirty.stream().filter(x -> x.getId() != -1).collect(Collectors.toSet());
+        Set<StackedEntity> insert = dirty.stream().filter(x -> x.getId() == -1).collect(Collectors.toSet());
+
+        if (!update.isEmpty()) {
+            String batchUpdate = "UPDATE " + this.getTablePrefix() + "stacked_entity SET entity_uuid = ?, stack_entities = ?, world_id = ?, chunk_x = ?, chunk_z = ?, chunk_key = ? WHERE id = ?";
+            try (PreparedStatement statement = connection.prepareStatement(batchUpdate)) {
+                List<Runnable> batchCallbacks = new ArrayList<>();
+                for (StackedEntity stack : update) {
+                    int modificationCount = stack.getModificationCount();
+                    Location location = stack.getLocation();
+                    int worldId = this.getWorldId(connection, location.getWorld().getName(), true);
+                    long chunkKey = StackerUtils.getChunkKey(location);
+                    statement.setString(1, stack.getEntity().getUniqueId().toString());
+                    statement.setBytes(2, EntitySerializer.toBlob(stack));
+                    statement.setInt(3, worldId);
+                    statement.setInt(4, location.getBlockX() >> 4);
+                    statement.setInt(5, location.getBlockZ() >> 4);
+                    statement.setLong(6, chunkKey);
+                    statement.setInt(7, stack.getId());
+                    statement.addBatch();
+                    batchCallbacks.add(() -> stack.markSaved(modificationCount, chunkKey));
                 }
+                statement.executeBatch();
+                savedCallbacks.addAll(batchCallbacks);
             }
+        }
 
-            if (!insert.isEmpty()) {
-                String batchInsert = "INSERT INTO " + this.getTablePrefix() + "stacked_entity (entity_uuid, stack_entities, world, chunk_x, chunk_z) VALUES (?, ?, ?, ?, ?)";
+        if (!insert.isEmpty()) {
+            String batchInsert = "INSERT INTO " + this.getTablePrefix() + "stacked_entity (entity_uuid, stack_entities, world_id, chunk_x, chunk_z, chunk_key) VALUES (?, ?, ?, ?, ?, ?)";
 
-                if (this.databaseConnector instanceof SQLiteConnector) {
-                    batchInsert += " ON CONFLICT(entity_uuid) DO UPDATE SET stack_entities = ?, world = ?, chunk_x = ?, chunk_z = ?";
-                } else {
-                    batchInsert += " ON DUPLICATE KEY UPDATE stack_entities = ?, world = ?, chunk_x = ?, chunk_z = ?";
-                }
+            if (this.databaseConnector instanceof SQLiteConnector) {
+                batchInsert += " ON CONFLICT(entity_uuid) DO UPDATE SET stack_entities = ?, world_id = ?, chunk_x = ?, chunk_z = ?, chunk_key = ?";
+            } else {
+                batchInsert += " ON DUPLICATE KEY UPDATE stack_entities = ?, world_id = ?, chunk_x = ?, chunk_z = ?, chunk_key = ?";
+            }
 
-                try (PreparedStatement statement = connection.prepareStatement(batchInsert)) {
-                    for (StackedEntity stack : insert) {
-                        statement.setString(1, stack.getEntity().getUniqueId().toString());
-                        statement.setBytes(2, EntitySerializer.toBlob(stack));
-                        statement.setString(3, stack.getLocation().getWorld().getName());
-                        statement.setInt(4, stack.getLocation().getBlockX() >> 4);
-                        statement.setInt(5, stack.getLocation().getBlockZ() >> 4);
-                        // On conflict
-                        statement.setBytes(6, EntitySerializer.toBlob(stack));
-                        statement.setString(7, stack.getLocation().getWorld().getName());
-                        statement.setInt(8, stack.getLocation().getBlockX() >> 4);
-                        statement.setInt(9, stack.getLocation().getBlockZ() >> 4);
-                        statement.addBatch();
-                    }
-                    statement.executeBatch();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+            try (PreparedStatement statement = connection.prepareStatement(batchInsert)) {
+                List<Runnable> batchCallbacks = new ArrayList<>();
+                for (StackedEntity stack : insert) {
+                    int modificationCount = stack.getModificationCount();
+                    Location location = stack.getLocation();
+                    int worldId = this.getWorldId(connection, location.getWorld().getName(), true);
+                    long chunkKey = StackerUtils.getChunkKey(location);
+                    byte[] stackEntities = EntitySerializer.toBlob(stack);
+                    statement.setString(1, stack.getEntity().getUniqueId().toString());
+                    statement.setBytes(2, stackEntities);
+                    statement.setInt(3, worldId);
+                    statement.setInt(4, location.getBlockX() >> 4);
+                    statement.setInt(5, location.getBlockZ() >> 4);
+                    statement.setLong(6, chunkKey);
+                    // On conflict
+                    statement.setBytes(7, stackEntities);
+                    statement.setInt(8, worldId);
+                    statement.setInt(9, location.getBlockX() >> 4);
+                    statement.setInt(10, location.getBlockZ() >> 4);
+                    statement.setLong(11, chunkKey);
+                    statement.addBatch();
+                    batchCallbacks.add(() -> stack.markSaved(modificationCount, chunkKey));
                 }
+                statement.executeBatch();
+                savedCallbacks.addAll(batchCallbacks);
             }
-        });
+        }
     }
 
     public void createOrUpdateStackedItems(Collection<StackedItem> stackedItems) {
         if (stackedItems.isEmpty())
             return;
 
-        this.databaseConnector.connect(connection -> {
-            Set<StackedItem> update = stackedItems.stream().filter(x -> x.getId() != -1).collect(Collectors.toSet());
-            Set<StackedItem> insert = stackedItems.stream().filter(x -> x.getId() == -1).collect(Collectors.toSet());
-
-            if (!update.isEmpty()) {
-                String batchUpdate = "UPDATE " + this.getTablePrefix() + "stacked_item SET stack_size = ?, entity_uuid = ?, world = ?, chunk_x = ?, chunk_z = ? WHERE id = ?";
-                try (PreparedStatement statement = connection.prepareStatement(batchUpdate)) {
-                    for (StackedItem stack : update) {
-                        statement.setInt(1, stack.getStackSize());
-                        statement.setString(2, stack.getItem().getUniqueId().toString());
-                        statement.setString(3, stack.getLocation().getWorld().getName());
-                        statement.setInt(4, stack.getLocation().getBlockX() >> 4);
-                        statement.setInt(5, stack.getLocation().getBlockZ() >> 4);
-                        statement.setInt(6, stack.getId());
-                        statement.addBatch();
-                    }
-                    statement.executeBatch();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+        List<Runnable> savedCallbacks = new ArrayList<>();
+        this.databaseConnector.connect(connection -> this.createOrUpdateStackedItems(connection, stackedItems, savedCallbacks));
+        savedCallbacks.forEach(Runnable::run);
+    }
+
+    private void createOrUpdateStackedItems(Connection connection, Collection<StackedItem> stackedItems, List<Runnable> savedCallbacks) throws SQLException {
+        // Only write stacks that have changed since they were last saved
+        Set<StackedItem> dirty = stackedItems.stream().filter(Stack::isDirty).collect(Collectors.toSet());
+        if (dirty.isEmpty())
+            return;
+
+        Set<StackedItem> update = dirty.stream().filter(x -> x.getId() != -1).collect(Collectors.toSet());
+        Set<StackedItem> insert = dirty.stream().filter(x -> x.getId() == -1).collect(Collectors.toSet());
+
+        if (!update.isEmpty()) {
+            String batchUpdate = "UPDATE " + this.getTablePrefix() + "stacked_item SET stack_size = ?, entity_uuid = ?, world_id = ?, chunk_x = ?, chunk_z = ?, chunk_key = ? WHERE id = ?";
+            try (PreparedStatement statement = connection.prepareStatement(batchUpdate)) {
+                List<Runnable> batchCallbacks = new ArrayList<>();
+                for (StackedItem stack : update) {
+                    int modificationCount = stack.getModificationCount();
+                    Location location = stack.getLocation();
+                    int worldId = this.getWorldId(connection, location.getWorld().getName(), true);
+                    long chunkKey = StackerUtils.getChunkKey(location);
+                    statement.setInt(1, stack.getStackSize());
+                    statement.setString(2, stack.getItem().getUniqueId().toString());
+                    statement.setInt(3, worldId);
+                    statement.setInt(4, location.getBlockX() >> 4);
+                    statement.setInt(5, location.getBlockZ() >> 4);
+                    statement.setLong(6, chunkKey);
+                    statement.setInt(7, stack.getId());
+                    statement.addBatch();
+                    batchCallbacks.add(() -> stack.markSaved(modificationCount, chunkKey));
                 }
+                statement.executeBatch();
+                savedCallbacks.addAll(batchCallbacks);
             }
+        }
 
-            if (!insert.isEmpty()) {
-                String batchInsert = "INSERT INTO " + this.getTablePrefix() + "stacked_item (stack_size, entity_uuid, world, chunk_x, chunk_z) VALUES (?, ?, ?, ?, ?)";
+        if (!insert.isEmpty()) {
+            String batchInsert = "INSERT INTO " + this.getTablePrefix() + "stacked_item (stack_size, entity_uuid, world_id, chunk_x, chunk_z, chunk_key) VALUES (?, ?, ?, ?, ?, ?)";
 
-                if (this.databaseConnector instanceof SQLiteConnector) {
-                    batchInsert += " ON CONFLICT(entity_uuid) DO UPDATE SET stack_size = ?, world = ?, chunk_x = ?, chunk_z = ?";
-                } else {
-                    batchInsert += " ON DUPLICATE KEY UPDATE stack_size = ?, world = ?, chunk_x = ?, chunk_z = ?";
-                }
+            if (this.databaseConnector instanceof SQLiteConnector) {
+                batchInsert += " ON CONFLICT(entity_uuid) DO UPDATE SET stack_size = ?, world_id = ?, chunk_x = ?, chunk_z = ?, chunk_key = ?";
+            } else {
+                batchInsert += " ON DUPLICATE KEY UPDATE stack_size = ?, world_id = ?, chunk_x = ?, chunk_z = ?, chunk_key = ?";
+            }
 
-                try (PreparedStatement statement = connection.prepareStatement(batchInsert)) {
-                    for (StackedItem stack : insert) {
-                        statement.setInt(1, stack.getStackSize());
-                        statement.setString(2, stack.getItem().getUniqueId().toString());
-                        statement.setString(3, stack.getLocation().getWorld().getName());
-                        statement.setInt(4, stack.getLocation().getBlockX() >> 4);
-                        statement.setInt(5, stack.getLocation().getBlockZ() >> 4);
-                        // On conflict
-                        statement.setInt(6, stack.getStackSize());
-                        statement.setString(7, stack.getLocation().getWorld().getName());
-                        statement.setInt(8, stack.getLocation().getBlockX() >> 4);
-                        statement.setInt(9, stack.getLocation().getBlockZ() >> 4);
-                        statement.addBatch();
-                    }
-                    statement.executeBatch();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+            try (PreparedStatement statement = connection.prepareStatement(batchInsert)) {
+                List<Runnable> batchCallbacks = new ArrayList<>();
+                for (StackedItem stack : insert) {
+                    int modificationCount = stack.getModificationCount();
+                    Location location = stack.getLocation();
+                    int worldId = this.getWorldId(connection, location.getWorld().getName(), true);
+                    long chunkKey = StackerUtils.getChunkKey(location);
+                    statement.setInt(1, stack.getStackSize());
+                    statement.setString(2, stack.getItem().getUniqueId().toString());
+                    statement.setInt(3, worldId);
+                    statement.setInt(4, location.getBlockX() >> 4);
+                    statement.setInt(5, location.getBlockZ() >> 4);
+                    statement.setLong(6, chunkKey);
+                    // On conflict
+                    statement.setInt(7, stack.getStackSize());
+                    statement.setInt(8, worldId);
+                    statement.setInt(9, location.getBlockX() >> 4);
+                    statement.setInt(10, location.getBlockZ() >> 4);
+                    statement.setLong(11, chunkKey);
+                    statement.addBatch();
+                    batchCallbacks.add(() -> stack.markSaved(modificationCount, chunkKey));
                 }
+                statement.executeBatch();
+                savedCallbacks.addAll(batchCallbacks);
             }
-        });
+        }
     }
 
     public <T extends Stack<?>> void createOrUpdateStackedBlocksOrSpawners(Collection<T> stacks) {
         if (stacks.isEmpty())
             return;
 
-        String tableName = stacks.iterator().next() instanceof StackedBlock ? "stacked_block" : "stacked_spawner";
-        this.databaseConnector.connect(connection -> {
-            Set<Stack<?>> update = stacks.stream().filter(x -> x.getId() != -1).collect(Collectors.toSet());
-            Set<Stack<?>> insert = stacks.stream().filter(x -> x.getId() == -1).collect(Collectors.toSet());
-
-            if (!update.isEmpty()) {
-                String batchUpdate = "UPDATE " + this.getTablePrefix() + tableName + " SET stack_size = ? WHERE id = ?";
-                try (PreparedStatement statement = connection.prepareStatement(batchUpdate)) {
-                    for (Stack<?> stack : update) {
-                        statement.setInt(1, stack.getStackSize());
-                        statement.setInt(2, stack.getId());
-                        statement.addBatch();
-                    }
-                    statement.executeBatch();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+        List<Runnable> savedCallbacks = new ArrayList<>();
+        this.databaseConnector.connect(connection -> this.createOrUpdateStackedBlocksOrSpawners(connection, stacks, savedCallbacks));
+        savedCallbacks.forEach(Runnable::run);
+    }
+
+    private <T extends Stack<?>> void createOrUpdateStackedBlocksOrSpawners(Connection connection, Collection<T> stacks, List<Runnable> savedCallbacks) throws SQLException {
+        // Only write stacks that have changed since they were last saved
+        Set<Stack<?>> dirty = stacks.stream().filter(Stack::isDirty).collect(Collectors.toSet());
+        if (dirty.isEmpty())
+            return;
+
+        String tableName = dirty.iterator().next() instanceof StackedBlock ? "stacked_block" : "stacked_spawner";
+        Set<Stack<?>> update = dirty.stream().filter(x -> x.getId() != -1).collect(Collectors.toSet());
+        Set<Stack<?>> insert = dirty.stream().filter(x -> x.getId() == -1).collect(Collectors.toSet());
+
+        if (!update.isEmpty()) {
+            String batchUpdate = "UPDATE " + this.getTablePrefix() + tableName + " SET stack_size = ? WHERE id = ?";
+            try (PreparedStatement statement = connection.prepareStatement(batchUpdate)) {
+                List<Runnable> batchCallbacks = new ArrayList<>();
+                for (Stack<?> stack : update) {
+                    int modificationCount = stack.getModificationCount();
+                    long chunkKey = StackerUtils.getChunkKey(stack.getLocation());
+                    statement.setInt(1, stack.getStackSize());
+                    statement.setInt(2, stack.getId());
+                    statement.addBatch();
+                    batchCallbacks.add(() -> stack.markSaved(modificationCount, chunkKey));
                 }
+                statement.executeBatch();
+                savedCallbacks.addAll(batchCallbacks);
             }
+        }
 
-            if (!insert.isEmpty()) {
-                String batchInsert = "INSERT INTO " + this.getTablePrefix() + tableName + " (stack_size, world, chunk_x, chunk_z, block_x, block_y, block_z) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        if (!insert.isEmpty()) {
+            String batchInsert = "INSERT INTO " + this.getTablePrefix() + tableName + " (stack_size, world_id, chunk_x, chunk_z, chunk_key, block_x, block_y, block_z) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
 
-                if (this.databaseConnector instanceof SQLiteConnector) {
-                    batchInsert += " ON CONFLICT(world, chunk_x, chunk_z, block_x, block_y, block_z) DO UPDATE SET stack_size = ?";
-                } else {
-                    batchInsert += " ON DUPLICATE KEY UPDATE stack_size = ?";
-                }
+            if (this.databaseConnector instanceof SQLiteConnector) {
+                batchInsert += " ON CONFLICT(world_id, chunk_x, chunk_z, block_x, block_y, block_z) DO UPDATE SET stack_size = ?";
+            } else {
+                batchInsert += " ON DUPLICATE KEY UPDATE stack_size = ?";
+            }
 
-                try (PreparedStatement statement = connection.prepareStatement(batchInsert)) {
-                    for (Stack<?> stack : insert) {
-                        statement.setInt(1, stack.getStackSize());
-                        statement.setString(2, stack.getLocation().getWorld().getName());
-                        statement.setInt(3, stack.getLocation().getBlockX() >> 4);
-                        statement.setInt(4, stack.getLocation().getBlockZ() >> 4);
-                        statement.setInt(5, stack.getLocation().getBlockX() & 0xF);
-                        statement.setInt(6, stack.getLocation().getBlockY());
-                        statement.setInt(7, stack.getLocation().getBlockZ() & 0xF);
-                        statement.setInt(8, stack.getStackSize());
-                        statement.addBatch();
-                    }
-                    statement.executeBatch();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+            try (PreparedStatement statement = connection.prepareStatement(batchInsert)) {
+                List<Runnable> batchCallbacks = new ArrayList<>();
+                for (Stack<?> stack : insert) {
+                    int modificationCount = stack.getModificationCount();
+                    Location location = stack.getLocation();
+                    int worldId = this.getWorldId(connection, location.getWorld().getName(), true);
+                    long chunkKey = StackerUtils.getChunkKey(location);
+                    statement.setInt(1, stack.getStackSize());
+                    statement.setInt(2, worldId);
+                    statement.setInt(3, location.getBlockX() >> 4);
+                    statement.setInt(4, location.getBlockZ() >> 4);
+                    statement.setLong(5, chunkKey);
+                    statement.setInt(6, location.getBlockX() & 0xF);
+                    statement.setInt(7, location.getBlockY());
+                    statement.setInt(8, location.getBlockZ() & 0xF);
+                    statement.setInt(9, stack.getStackSize());
+                    statement.addBatch();
+                    batchCallbacks.add(() -> stack.markSaved(modificationCount, chunkKey));
                 }
+                statement.executeBatch();
+                savedCallbacks.addAll(batchCallbacks);
             }
-        });
+        }
     }
 
-    public void deleteStacks(Set<Stack<?>> stacks) {
-        if (stacks.isEmpty())
-            return;
-
+    private void deleteStacks(Connection connection, Collection<Stack<?>> stacks) throws SQLException {
         Set<StackedBlock> stackedBlocks = new HashSet<>();
         Set<StackedEntity> stackedEntities = new HashSet<>();
         Set<StackedItem> stackedItems = new HashSet<>();
@@ -541,22 +712,20 @@ public class DataManager extends AbstractDataManager {
             }
         }
 
-        this.databaseConnector.connect(connection -> {
-            if (!stackedBlocks.isEmpty())
-                this.deleteStackBatch(connection, stackedBlocks, "stacked_block");
+        if (!stackedBlocks.isEmpty())
+            this.deleteStackBatch(connection, stackedBlocks, "stacked_block");
 
-            if (!stackedEntities.isEmpty())
-                this.deleteStackBatch(connection, stackedEntities, "stacked_entity");
+        if (!stackedEntities.isEmpty())
+            this.deleteStackBatch(connection, stackedEntities, "stacked_entity");
 
-            if (!stackedItems.isEmpty())
-                this.deleteStackBatch(connection, stackedItems, "stacked_item");
+        if (!stackedItems.isEmpty())
+            this.deleteStackBatch(connection, stackedItems, "stacked_item");
 
-            if (!stackedSpawners.isEmpty())
-                this.deleteStackBatch(connection, stackedSpawners, "stacked_spawner");
-        });
+        if (!stackedSpawners.isEmpty())
+            this.deleteStackBatch(connection, stackedSpawners, "stacked_spawner");
     }
 
-    private <T extends Stack<?>> void deleteStackBatch(Connection connection, Set<T> stacks, String tableName) {
+    private <T extends Stack<?>> void deleteStackBatch(Connection connection, Set<T> stacks, String tableName) throws SQLException {
         String batchDelete = "DELETE FROM " + this.getTablePrefix() + tableName + " WHERE id = ?";
         try (PreparedStatement statement = connection.prepareStatement(batchDelete)) {
             for (Stack<?> stack : stacks) {
@@ -564,19 +733,461 @@ public class DataManager extends AbstractDataManager {
                 statement.addBatch();
             }
             statement.executeBatch();
-        } catch (SQLException ex) {
-            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Queues stacks to be created or updated in the database on the next write
+     *
+     * @param stacks The stacks to save
+     */
+    public void queueStackUpdates(Collection<? extends Stack<?>> stacks) {
+        if (stacks.isEmpty())
+            return;
+
+        synchronized (this.pendingWriteLock) {
+            for (Stack<?> stack : stacks) {
+                if (!this.pendingDeletes.contains(stack)) {
+                    this.pendingUpdates.add(stack);
+                    this.indexPendingStack(stack);
+                }
+            }
+        }
+
+        this.checkPendingWriteThreshold();
+    }
+
+    /**
+     * Queues stacks to be deleted from the database on the next write.
+     * Any pending updates for these stacks are dropped.
+     *
+     * @param stacks The stacks to delete
+     */
+    public void queueStackDeletions(Collection<? extends Stack<?>> stacks) {
+        if (stacks.isEmpty())
+            return;
+
+        synchronized (this.pendingWriteLock) {
+            for (Stack<?> stack : stacks) {
+                this.pendingUpdates.remove(stack);
+                this.inFlightUpdates.remove(stack);
+                if (stack.getId() != -1) {
+                    this.pendingDeletes.add(stack);
+                    this.indexPendingStack(stack);
+                } else {
+                    this.unindexPendingStack(stack);
+                }
+            }
+        }
+
+        this.checkPendingWriteThreshold();
+    }
+
+    /**
+     * Writes all queued stack updates and deletions to the database in a single transaction.
+     * Blocks until any write that is already in progress has finished.
+     */
+    public void flushPendingWrites() {
+        synchronized (this.flushLock) {
+            List<Stack<?>> updates;
+            List<Stack<?>> deletes;
+            synchronized (this.pendingWriteLock) {
+                this.flushRequested = false;
+                if (this.pendingUpdates.isEmpty() && this.pendingDeletes.isEmpty())
+                    return;
+
+                updates = new ArrayList<>(this.pendingUpdates);
+                deletes = new ArrayList<>(this.pendingDeletes);
+                this.pendingUpdates.clear();
+                this.pendingDeletes.clear();
+                this.inFlightUpdates.addAll(updates);
+
+                for (PendingChunks pendingChunks : this.pendingStackChunks.values())
+                    this.markChunksInFlight(pendingChunks);
+                this.pendingStackChunks.clear();
+                this.pendingChunkIndex.clear();
+            }
+
+            this.writePendingStacks(updates, deletes);
+        }
+    }
+
+    /**
+     * Writes the queued stack updates and deletions that are in any of the given chunks, so the chunks can be read back
+     * from the database. The rest of the queue is left to be written later.
+     * Only blocks for a write that is already in progress if it includes stacks in these chunks.
+     *
+     * @param chunks The chunks that are about to be read
+     */
+    private void flushPendingWrites(Set<Chunk> chunks) {
+        Map<UUID, List<Long>> chunkKeysByWorld = new HashMap<>();
+        for (Chunk chunk : chunks)
+            chunkKeysByWorld.computeIfAbsent(chunk.getWorld().getUID(), x -> new ArrayList<>()).add(StackerUtils.getChunkKey(chunk.getX(), chunk.getZ()));
+
+        synchronized (this.pendingWriteLock) {
+            if (!this.hasPendingWrites(chunkKeysByWorld))
+                return;
+        }
+
+        synchronized (this.flushLock) {
+            List<Stack<?>> updates = new ArrayList<>();
+            List<Stack<?>> deletes = new ArrayList<>();
+            synchronized (this.pendingWriteLock) {
+                for (Map.Entry<UUID, List<Long>> entry : chunkKeysByWorld.entrySet()) {
+                    Map<Long, Set<Stack<?>>> worldIndex = this.pendingChunkIndex.get(entry.getKey());
+                    if (worldIndex == null)
+                        continue;
+
+                    for (long chunkKey : entry.getValue()) {
+                        Set<Stack<?>> stacks = worldIndex.get(chunkKey);
+                        if (stacks == null)
+                            continue;
+
+                        for (Stack<?> stack : new ArrayList<>(stacks)) {
+                            if (this.pendingUpdates.remove(stack)) {
+                                updates.add(stack);
+                            } else if (this.pendingDeletes.remove(stack)) {
+                                deletes.add(stack);
+                            }
+
+                            PendingChunks pendingChunks = this.unindexPendingStack(stack);
+                            if (pendingChunks != null)
+                                this.markChunksInFlight(pendingChunks);
+                        }
+                    }
+                }
+
+                // Anything that was in flight for these chunks has been written by now since we hold the flush lock
+                if (updates.isEmpty() && deletes.isEmpty())
+                    return;
+
+                this.inFlightUpdates.addAll(updates);
+            }
+
+            this.writePendingStacks(updates, deletes);
+        }
+    }
+
+    /**
+     * Writes drained stack updates and deletions to the database in a single transaction.
+     * If the write fails, the stacks are put back into the queue.
+     * Must be called while holding the flush lock.
+     *
+     * @param updates The stacks to save
+     * @param deletes The stacks to delete
+     */
+    private void writePendingStacks(List<Stack<?>> updates, List<Stack<?>> deletes) {
+        List<StackedEntity> stackedEntities = new ArrayList<>();
+        List<StackedItem> stackedItems = new ArrayList<>();
+        List<StackedBlock> stackedBlocks = new ArrayList<>();
+        List<StackedSpawner> stackedSpawners = new ArrayList<>();
+        for (Stack<?> stack : updates) {
+            if (stack instanceof StackedEntity) {
+                stackedEntities.add((StackedEntity) stack);
+            } else if (stack instanceof StackedItem) {
+                stackedItems.add((StackedItem) stack);
+            } else if (stack instanceof StackedBlock) {
+                stackedBlocks.add((StackedBlock) stack);
+            } else if (stack instanceof StackedSpawner) {
+                stackedSpawners.add((StackedSpawner) stack);
+            }
+        }
+
+        List<Runnable> savedCallbacks = new ArrayList<>();
+        AtomicBoolean committed = new AtomicBoolean();
+        this.databaseConnector.connect(connection -> {
+            this.assignWorldIds(connection, updates.stream().map(Stack::getLocation).collect(Collectors.toList()));
+
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                this.createOrUpdateStackedEntities(connection, stackedEntities, savedCallbacks);
+                this.createOrUpdateStackedItems(connection, stackedItems, savedCallbacks);
+                this.createOrUpdateStackedBlocksOrSpawners(connection, stackedBlocks, savedCallbacks);
+                this.createOrUpdateStackedBlocksOrSpawners(connection, stackedSpawners, savedCallbacks);
+                this.deleteStacks(connection, deletes);
+                connection.commit();
+                committed.set(true);
+            } catch (SQLException ex) {
+                connection.rollback();
+                ex.printStackTrace();
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+
+        if (committed.get()) {
+            savedCallbacks.forEach(Runnable::run);
+            this.totalFlushedWrites.addAndGet(updates.size() + deletes.size());
+        }
+
+        synchronized (this.pendingWriteLock) {
+            if (!committed.get())
+                this.requeuePendingWrites(updates, deletes);
+            this.inFlightUpdates.clear();
+            this.inFlightChunkKeys.clear();
+        }
+    }
+
+    /**
+     * Puts the stacks of a failed write back into the queue so they are written again next time.
+     * Updates for stacks that were deleted while the write was in progress are dropped.
+     * Must be called while holding the pending write lock.
+     *
+     * @param updates The stack updates that failed to be written
+     * @param deletes The stack deletions that failed to be written
+     */
+    private void requeuePendingWrites(List<Stack<?>> updates, List<Stack<?>> deletes) {
+        for (Stack<?> stack : updates) {
+            if (this.inFlightUpdates.contains(stack) && !this.pendingDeletes.contains(stack)) {
+                this.pendingUpdates.add(stack);
+                this.indexPendingStack(stack);
+            }
+        }
+
+        for (Stack<?> stack : deletes) {
+            this.pendingUpdates.remove(stack);
+            this.pendingDeletes.add(stack);
+            this.indexPendingStack(stack);
+        }
+    }
+
+    /**
+     * Indexes a queued stack by the chunk it is in and the chunk it was last saved in, either of which its row may be read from.
+     * Must be called while holding the pending write lock.
+     *
+     * @param stack The queued stack
+     */
+    private void indexPendingStack(Stack<?> stack) {
+        this.unindexPendingStack(stack);
+
+        // Placeholder stacks for rows that are being cleaned up have nothing to locate them by
+        Location location;
+        try {
+            location = stack.getLocation();
+        } catch (NullPointerException e) {
+            return;
+        }
+
+        if (location == null || location.getWorld() == null)
+            return;
+
+        PendingChunks pendingChunks = new PendingChunks(location.getWorld().getUID(), StackerUtils.getChunkKey(location), stack.getSavedChunkKey());
+        this.pendingStackChunks.put(stack, pendingChunks);
+
+        Map<Long, Set<Stack<?>>> worldIndex = this.pendingChunkIndex.computeIfAbsent(pendingChunks.worldId, x -> new HashMap<>());
+        worldIndex.computeIfAbsent(pendingChunks.chunkKey, x -> new HashSet<>()).add(stack);
+        worldIndex.computeIfAbsent(pendingChunks.savedChunkKey, x -> new HashSet<>()).add(stack);
+    }
+
+    /**
+     * Removes a stack from the chunk index of queued stacks.
+     * Must be called while holding the pending write lock.
+     *
+     * @param stack The stack to remove
+     * @return the chunks the stack was indexed by, or null if it wasn't indexed
+     */
+    private PendingChunks unindexPendingStack(Stack<?> stack) {
+        PendingChunks pendingChunks = this.pendingStackChunks.remove(stack);
+        if (pendingChunks == null)
+            return null;
+
+        Map<Long, Set<Stack<?>>> worldIndex = this.pendingChunkIndex.get(pendingChunks.worldId);
+        if (worldIndex == null)
+            return pendingChunks;
+
+        for (long chunkKey : new long[] { pendingChunks.chunkKey, pendingChunks.savedChunkKey }) {
+            Set<Stack<?>> stacks = worldIndex.get(chunkKey);
+            if (stacks != null && stacks.remove(stack) && stacks.isEmpty())
+                worldIndex.remove(chunkKey);
+        }
+
+        if (worldIndex.isEmpty())
+            this.pendingChunkIndex.remove(pendingChunks.worldId);
+        return pendingChunks;
+    }
+
+    /**
+     * Marks the chunks of a stack as having a write in progress.
+     * Must be called while holding the pending write lock.
+     *
+     * @param pendingChunks The chunks the stack is indexed by
+     */
+    private void markChunksInFlight(PendingChunks pendingChunks) {
+        LongHashSet chunkKeys = this.inFlightChunkKeys.computeIfAbsent(pendingChunks.worldId, x -> new LongHashSet());
+        chunkKeys.add(pendingChunks.chunkKey);
+        chunkKeys.add(pendingChunks.savedChunkKey);
+    }
+
+    /**
+     * Checks if any of the given chunks have queued stacks or stacks that are being written.
+     * Must be called while holding the pending write lock.
+     *
+     * @param chunkKeysByWorld The chunk keys to check, grouped by world uid
+     * @return true if any of the chunks have stacks waiting to be written, otherwise false
+     */
+    private boolean hasPendingWrites(Map<UUID, List<Long>> chunkKeysByWorld) {
+        for (Map.Entry<UUID, List<Long>> entry : chunkKeysByWorld.entrySet()) {
+            Map<Long, Set<Stack<?>>> worldIndex = this.pendingChunkIndex.get(entry.getKey());
+            LongHashSet inFlight = this.inFlightChunkKeys.get(entry.getKey());
+            for (long chunkKey : entry.getValue())
+                if ((worldIndex != null && worldIndex.containsKey(chunkKey)) || (inFlight != null && inFlight.contains(chunkKey)))
+                    return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of stacks waiting to be saved
+     */
+    public int getPendingUpdateCount() {
+        synchronized (this.pendingWriteLock) {
+            return this.pendingUpdates.size();
+        }
+    }
+
+    /**
+     * @return the number of stacks waiting to be deleted
+     */
+    public int getPendingDeleteCount() {
+        synchronized (this.pendingWriteLock) {
+            return this.pendingDeletes.size();
+        }
+    }
+
+    /**
+     * @return the total number of queued updates and deletions that have been written since startup
+     */
+    public long getTotalFlushedWrites() {
+        return this.totalFlushedWrites.get();
+    }
+
+    /**
+     * Attaches loaded stacks right away when on the main thread, otherwise queues them to be attached over the next ticks
+     *
+     * @param attachment The loaded stacks to attach
+     */
+    private void queueAttachment(PendingStackAttachment<?, ?> attachment) {
+        if (Bukkit.isPrimaryThread()) {
+            attachment.attach(Long.MAX_VALUE, Integer.MAX_VALUE);
+        } else {
+            this.pendingStackAttachments.add(attachment);
+        }
+    }
+
+    /**
+     * Attaches loaded stacks until the time budget or the row limit for this tick runs out
+     */
+    private void processPendingStackAttachments() {
+        long endTime = System.nanoTime() + (long) (Setting.DATA_LOAD_BUDGET.getDouble() * 1000000);
+        int remainingLimit = Math.max(1, Setting.DATA_LOAD_ROW_LIMIT.getInt());
+
+        PendingStackAttachment<?, ?> attachment;
+        while ((attachment = this.pendingStackAttachments.peek()) != null) {
+            remainingLimit -= attachment.attach(endTime, remainingLimit);
+            if (!attachment.isDone())
+                return;
+
+            this.pendingStackAttachments.poll();
+            if (remainingLimit <= 0 || System.nanoTime() >= endTime)
+                return;
+        }
+    }
+
+    /**
+     * @return the number of loaded stack rows that are still waiting to be attached
+     */
+    public int getPendingStackAttachmentCount() {
+        return this.pendingStackAttachments.stream().mapToInt(PendingStackAttachment::getRemaining).sum();
+    }
+
+    private void checkPendingWriteThreshold() {
+        synchronized (this.pendingWriteLock) {
+            if (this.flushRequested || this.writeExecutor == null
+                    || this.pendingUpdates.size() + this.pendingDeletes.size() < Setting.DATA_WRITE_BATCH_SIZE.getInt())
+                return;
+
+            this.flushRequested = true;
+            this.writeExecutor.execute(this::flushPendingWrites);
+        }
+    }
+
+    /**
+     * Assigns ids to the worlds of the given locations outside of a transaction, so they can be cached right away.
+     * Should be called before opening a write transaction that may need new world ids.
+     *
+     * @param connection The connection to the database
+     * @param locations The locations to assign world ids for
+     * @throws SQLException if a world id could not be assigned
+     */
+    private void assignWorldIds(Connection connection, Collection<Location> locations) throws SQLException {
+        Set<String> worldNames = new HashSet<>();
+        for (Location location : locations)
+            if (location.getWorld() != null)
+                worldNames.add(location.getWorld().getName());
+
+        for (String worldName : worldNames)
+            this.getWorldId(connection, worldName, true);
+    }
+
+    /**
+     * Gets the id of a world in the stacked_world table.
+     * Ids never change once assigned, so they are cached for as long as the database connection is open.
+     * Ids assigned inside a transaction are not cached since the transaction may still be rolled back.
+     *
+     * @param connection The connection to the database
+     * @param worldName The name of the world
+     * @param create true to assign the world an id if it doesn't have one yet
+     * @return the id of the world, or -1 if it doesn't have one and create is false
+     * @throws SQLException if the world could not be looked up
+     */
+    private int getWorldId(Connection connection, String worldName, boolean create) throws SQLException {
+        Integer cachedId = this.worldIds.get(worldName);
+        if (cachedId != null)
+            return cachedId;
+
+        if (create) {
+            String insertIgnore;
+            if (this.databaseConnector instanceof SQLiteConnector) {
+                insertIgnore = "INSERT OR IGNORE INTO ";
+            } else {
+                insertIgnore = "INSERT IGNORE INTO ";
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(insertIgnore + this.getTablePrefix() + "stacked_world (name) VALUES (?)")) {
+                statement.setString(1, worldName);
+                statement.executeUpdate();
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement("SELECT id FROM " + this.getTablePrefix() + "stacked_world WHERE name = ?")) {
+            statement.setString(1, worldName);
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next())
+                    return -1;
+
+                int worldId = result.getInt(1);
+                if (connection.getAutoCommit())
+                    this.worldIds.put(worldName, worldId);
+                return worldId;
+            }
         }
     }
 
     public int purgeData(String world) {
+        this.flushPendingWrites();
+
         AtomicInteger totalDeleted = new AtomicInteger();
         this.databaseConnector.connect(connection -> {
+            int worldId = this.getWorldId(connection, world, false);
+            if (worldId == -1)
+                return;
+
             Set<String> types = Stream.of(StackType.values()).map(x -> "stacked_" + x.name().toLowerCase()).collect(Collectors.toSet());
             for (String type : types) {
-                String delete = "DELETE FROM " + this.getTablePrefix() + type + " WHERE world = ?";
+                String delete = "DELETE FROM " + this.getTablePrefix() + type + " WHERE world_id = ?";
                 try (PreparedStatement statement = connection.prepareStatement(delete)) {
-                    statement.setString(1, world);
+                    statement.setInt(1, worldId);
                     totalDeleted.addAndGet(statement.executeUpdate());
                 } catch (SQLException ex) {
                     ex.printStackTrace();
@@ -587,21 +1198,29 @@ public class DataManager extends AbstractDataManager {
     }
 
     public StackCounts queryData(String world) {
-        AtomicReference<StackCounts> stackCounts = new AtomicReference<>();
-        this.databaseConnector.connect(connection -> stackCounts.set(new StackCounts(
-                this.queryData(world, StackType.ENTITY, connection),
-                this.queryData(world, StackType.ITEM, connection),
-                this.queryData(world, StackType.BLOCK, connection),
-                this.queryData(world, StackType.SPAWNER, connection)
-        )));
+        this.flushPendingWrites();
+
+        AtomicReference<StackCounts> stackCounts = new AtomicReference<>(new StackCounts(0, 0, 0, 0));
+        this.databaseConnector.connect(connection -> {
+            int worldId = this.getWorldId(connection, world, false);
+            if (worldId == -1)
+                return;
+
+            stackCounts.set(new StackCounts(
+                    this.queryData(worldId, StackType.ENTITY, connection),
+                    this.queryData(worldId, StackType.ITEM, connection),
+                    this.queryData(worldId, StackType.BLOCK, connection),
+                    this.queryData(worldId, StackType.SPAWNER, connection)
+            ));
+        });
         return stackCounts.get();
     }
 
-    private int queryData(String world, StackType stackType, Connection connection) throws SQLException {
+    private int queryData(int worldId, StackType stackType, Connection connection) throws SQLException {
         AtomicInteger total = new AtomicInteger();
-        String query = "SELECT COUNT(*) FROM " + this.getTablePrefix() + "stacked_" + stackType.name().toLowerCase() + " WHERE world = ?";
+        String query = "SELECT COUNT(*) FROM " + this.getTablePrefix() + "stacked_" + stackType.name().toLowerCase() + " WHERE world_id = ?";
         try (PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setString(1, world);
+            statement.setInt(1, worldId);
             ResultSet result = statement.executeQuery();
             result.next();
             total.addAndGet(result.getInt(1));
@@ -642,86 +1261,389 @@ public class DataManager extends AbstractDataManager {
         return conversionHandlers;
     }
 
-    public void setConversionData(Map<StackType, Set<ConversionData>> conversionData) {
+    /**
+     * Saves a page of conversion data along with the checkpoint to resume converting from, as a single transaction
+     *
+     * @param stackType The type of stack the data is for, must be ENTITY, ITEM, or BLOCK
+     * @param conversionData The conversion data to save
+     * @param checkpointName The name of the checkpoint
+     * @param checkpoint The last source row included in the conversion data
+     */
+    public void addConversionData(StackType stackType, Collection<ConversionData> conversionData, String checkpointName, long checkpoint) {
+        AtomicBoolean committed = new AtomicBoolean();
+        this.databaseConnector.connect(connection -> {
+            if (stackType == StackType.BLOCK)
+                this.assignWorldIds(connection, conversionData.stream().map(ConversionData::getLocation).collect(Collectors.toList()));
+
+            this.runConversionTransaction(connection, checkpointName, checkpoint, () -> this.writeConversionData(connection, stackType, conversionData));
+            committed.set(true);
+        });
+
+        if (!committed.get() || conversionData.isEmpty())
+            return;
+
+        if (stackType == StackType.BLOCK) {
+            synchronized (this.conversionFilterLock) {
+                if (this.blockConversionChunkKeys != null)
+                    for (ConversionData data : conversionData)
+                        this.blockConversionChunkKeys.computeIfAbsent(data.getLocation().getWorld().getName(), x -> new LongHashSet()).add(StackerUtils.getChunkKey(data.getLocation()));
+            }
+            return;
+        }
+
+        // Add the new uuids to the filter if it is already built, otherwise it will read them when it is built
+        String tableName = stackType.name().toLowerCase();
+        synchronized (this.conversionFilterLock) {
+            BloomFilter<CharSequence> filter = this.conversionFilters.get(tableName);
+            if (filter == null)
+                return;
+
+            for (ConversionData data : conversionData)
+                filter.put(data.getUniqueId().toString());
+
+            // The filter was sized for the rows it was built with, build it again once it gets too full
+            if (filter.expectedFpp() > CONVERSION_FILTER_FALSE_POSITIVE_RATE * 2)
+                this.conversionFilters.remove(tableName);
+        }
+    }
+
+    private void writeConversionData(Connection connection, StackType stackType, Collection<ConversionData> conversionData) throws SQLException {
         if (conversionData.isEmpty())
             return;
 
-        this.databaseConnector.connect(connection -> {
-            Set<ConversionData> entityData = conversionData.get(StackType.ENTITY);
-            if (entityData != null && !entityData.isEmpty()) {
-                String entityInsert = "INSERT INTO " + this.getTablePrefix() + "convert_stacked_entity (entity_uuid, stack_size) VALUES (?, ?)";
-                try (PreparedStatement statement = connection.prepareStatement(entityInsert)) {
-                    for (ConversionData data : entityData) {
-                        statement.setString(1, data.getUniqueId().toString());
-                        statement.setInt(2, data.getStackSize());
-                        statement.addBatch();
-                    }
-                    statement.executeBatch();
+        if (stackType == StackType.BLOCK) {
+            String blockInsert = "INSERT INTO " + this.getTablePrefix() + "convert_stacked_block (stack_size, world_id, chunk_key, block_x, block_y, block_z) VALUES (?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement statement = connection.prepareStatement(blockInsert)) {
+                for (ConversionData data : conversionData) {
+                    Location location = data.getLocation();
+                    statement.setInt(1, data.getStackSize());
+                    statement.setInt(2, this.getWorldId(connection, location.getWorld().getName(), true));
+                    statement.setLong(3, StackerUtils.getChunkKey(location));
+                    statement.setInt(4, location.getBlockX());
+                    statement.setInt(5, location.getBlockY());
+                    statement.setInt(6, location.getBlockZ());
+                    statement.addBatch();
                 }
+                statement.executeBatch();
             }
+            return;
+        }
 
-            Set<ConversionData> itemData = conversionData.get(StackType.ITEM);
-            if (itemData != null && !itemData.isEmpty()) {
-                String itemInsert = "INSERT INTO " + this.getTablePrefix() + "convert_stacked_item (entity_uuid, stack_size) VALUES (?, ?)";
-                try (PreparedStatement statement = connection.prepareStatement(itemInsert)) {
-                    for (ConversionData data : itemData) {
-                        statement.setString(1, data.getUniqueId().toString());
-                        statement.setInt(2, data.getStackSize());
-                        statement.addBatch();
-                    }
-                    statement.executeBatch();
-                }
+        String tableName = stackType.name().toLowerCase();
+        String insert = "INSERT INTO " + this.getTablePrefix() + "convert_stacked_" + tableName + " (entity_uuid, stack_size) VALUES (?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(insert)) {
+            for (ConversionData data : conversionData) {
+                statement.setString(1, data.getUniqueId().toString());
+                statement.setInt(2, data.getStackSize());
+                statement.addBatch();
             }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Saves a page of converted block or spawner stacks along with the checkpoint to resume converting from, as a single transaction
+     *
+     * @param stacks The stacks to save
+     * @param checkpointName The name of the checkpoint
+     * @param checkpoint The last source row included in the stacks
+     * @param <T> The type of stack
+     */
+    public <T extends Stack<?>> void createOrUpdateStackedBlocksOrSpawners(Collection<T> stacks, String checkpointName, long checkpoint) {
+        List<Runnable> savedCallbacks = new ArrayList<>();
+        this.databaseConnector.connect(connection -> {
+            this.assignWorldIds(connection, stacks.stream().map(Stack::getLocation).collect(Collectors.toList()));
+            this.runConversionTransaction(connection, checkpointName, checkpoint,
+                    () -> this.createOrUpdateStackedBlocksOrSpawners(connection, stacks, savedCallbacks));
         });
+        savedCallbacks.forEach(Runnable::run);
     }
 
-    public Map<StackType, Set<ConversionData>> getConversionData(Set<Entity> entities, Set<StackType> requiredStackTypes) {
+    /**
+     * Gets the last source row that was converted for a checkpoint
+     *
+     * @param checkpointName The name of the checkpoint
+     * @return the last converted row, or 0 if nothing has been converted yet
+     */
+    public long getConversionCheckpoint(String checkpointName) {
+        AtomicLong checkpoint = new AtomicLong();
+        this.databaseConnector.connect(connection -> {
+            String query = "SELECT last_row FROM " + this.getTablePrefix() + "convert_checkpoint WHERE name = ?";
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setString(1, checkpointName);
+                ResultSet result = statement.executeQuery();
+                if (result.next())
+                    checkpoint.set(result.getLong(1));
+            }
+        });
+        return checkpoint.get();
+    }
+
+    /**
+     * Removes all conversion checkpoints for a plugin, should be called once it has been fully converted
+     *
+     * @param pluginName The name of the plugin
+     */
+    public void clearConversionCheckpoints(String pluginName) {
+        this.databaseConnector.connect(connection -> {
+            String delete = "DELETE FROM " + this.getTablePrefix() + "convert_checkpoint WHERE name LIKE ?";
+            try (PreparedStatement statement = connection.prepareStatement(delete)) {
+                statement.setString(1, pluginName + ":%");
+                statement.executeUpdate();
+            }
+        });
+    }
+
+    private void runConversionTransaction(Connection connection, String checkpointName, long checkpoint, ConversionWriter writer) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            writer.write();
+
+            String replace = "REPLACE INTO " + this.getTablePrefix() + "convert_checkpoint (name, last_row) VALUES (?, ?)";
+            try (PreparedStatement statement = connection.prepareStatement(replace)) {
+                statement.setString(1, checkpointName);
+                statement.setLong(2, checkpoint);
+                statement.executeUpdate();
+            }
+
+            connection.commit();
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    public Map<StackType, Set<ConversionData>> getConversionData(Set<Chunk> chunks, Set<Entity> entities, Set<StackType> requiredStackTypes) {
         Map<StackType, Set<ConversionData>> conversionData = new HashMap<>();
         if (requiredStackTypes.isEmpty())
             return conversionData;
 
+        boolean queryEntities = requiredStackTypes.contains(StackType.ENTITY) && this.mayHaveConversionData(entities, "entity");
+        boolean queryItems = requiredStackTypes.contains(StackType.ITEM) && this.mayHaveConversionData(entities, "item");
+        boolean queryBlocks = requiredStackTypes.contains(StackType.BLOCK) && this.mayHaveBlockConversionData(chunks);
+
+        for (StackType stackType : requiredStackTypes)
+            conversionData.put(stackType, new HashSet<>());
+
+        // Don't connect at all if none of the entities could have any data
+        if (!queryEntities && !queryItems && !queryBlocks)
+            return conversionData;
+
         this.databaseConnector.connect(connection -> {
-            if (requiredStackTypes.contains(StackType.ENTITY))
+            if (queryEntities)
                 conversionData.put(StackType.ENTITY, this.getConversionData(entities, "entity", connection));
 
-            if (requiredStackTypes.contains(StackType.ITEM))
+            if (queryItems)
                 conversionData.put(StackType.ITEM, this.getConversionData(entities, "item", connection));
+
+            // Hold the lock until the rows are taken so rows added meanwhile aren't dropped from the chunk keys
+            if (queryBlocks) {
+                synchronized (this.conversionFilterLock) {
+                    Set<Chunk> blockChunks = this.getBlockConversionChunks(chunks, connection);
+                    if (!blockChunks.isEmpty())
+                        conversionData.put(StackType.BLOCK, this.getBlockConversionData(blockChunks, connection));
+                }
+            }
+        });
+
+        return conversionData;
+    }
+
+    private Set<ConversionData> getBlockConversionData(Set<Chunk> chunks, Connection connection) throws SQLException {
+        Set<ConversionData> conversionData = new HashSet<>();
+        List<Integer> ids = new ArrayList<>();
+
+        // Get data
+        this.queryChunks(connection, "convert_stacked_block", chunks, (result, world) -> {
+            ids.add(result.getInt("id"));
+            Location location = new Location(world, result.getInt("block_x"), result.getInt("block_y"), result.getInt("block_z"));
+            conversionData.add(new ConversionData(location, result.getInt("stack_size")));
         });
 
+        // Delete data
+        if (!ids.isEmpty()) {
+            String delete = "DELETE FROM " + this.getTablePrefix() + "convert_stacked_block WHERE id = ?";
+            try (PreparedStatement statement = connection.prepareStatement(delete)) {
+                for (int id : ids) {
+                    statement.setInt(1, id);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+
+        // Every row in these chunks has been taken, they don't need to be queried again
+        synchronized (this.conversionFilterLock) {
+            if (this.blockConversionChunkKeys != null) {
+                for (Chunk chunk : chunks) {
+                    LongHashSet chunkKeys = this.blockConversionChunkKeys.get(chunk.getWorld().getName());
+                    if (chunkKeys != null)
+                        chunkKeys.remove(StackerUtils.getChunkKey(chunk.getX(), chunk.getZ()));
+                }
+            }
+        }
+
         return conversionData;
     }
 
+    /**
+     * Checks if any of the chunks may have block conversion data without connecting to the database
+     *
+     * @param chunks The chunks to check
+     * @return false if none of the chunks have block conversion data, true if they might or if the chunk keys are not loaded yet
+     */
+    private boolean mayHaveBlockConversionData(Set<Chunk> chunks) {
+        synchronized (this.conversionFilterLock) {
+            if (this.blockConversionChunkKeys == null)
+                return !chunks.isEmpty();
+
+            for (Chunk chunk : chunks) {
+                LongHashSet chunkKeys = this.blockConversionChunkKeys.get(chunk.getWorld().getName());
+                if (chunkKeys != null && chunkKeys.contains(StackerUtils.getChunkKey(chunk.getX(), chunk.getZ())))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Gets the chunks that have block conversion data, loading the keys of those chunks from the database if needed
+     *
+     * @param chunks The chunks to filter
+     * @param connection The connection to load the chunk keys with
+     * @return the chunks that have block conversion data
+     * @throws SQLException if the table could not be read
+     */
+    private Set<Chunk> getBlockConversionChunks(Set<Chunk> chunks, Connection connection) throws SQLException {
+        synchronized (this.conversionFilterLock) {
+            if (this.blockConversionChunkKeys == null) {
+                Map<String, LongHashSet> blockConversionChunkKeys = new HashMap<>();
+                try (Statement statement = connection.createStatement()) {
+                    ResultSet result = statement.executeQuery("SELECT DISTINCT w.name, b.chunk_key FROM " + this.getTablePrefix() + "convert_stacked_block b " +
+                            "JOIN " + this.getTablePrefix() + "stacked_world w ON w.id = b.world_id");
+                    while (result.next())
+                        blockConversionChunkKeys.computeIfAbsent(result.getString(1), x -> new LongHashSet()).add(result.getLong(2));
+                }
+                this.blockConversionChunkKeys = blockConversionChunkKeys;
+            }
+
+            Set<Chunk> blockChunks = new HashSet<>();
+            for (Chunk chunk : chunks) {
+                LongHashSet chunkKeys = this.blockConversionChunkKeys.get(chunk.getWorld().getName());
+                if (chunkKeys != null && chunkKeys.contains(StackerUtils.getChunkKey(chunk.getX(), chunk.getZ())))
+                    blockChunks.add(chunk);
+            }
+            return blockChunks;
+        }
+    }
+
     private Set<ConversionData> getConversionData(Set<Entity> entities, String tableName, Connection connection) throws SQLException {
         Set<ConversionData> conversionData = new HashSet<>();
 
-        Map<UUID, Entity> entityMap = new HashMap<>();
-        for (Entity entity : entities)
-            entityMap.put(entity.getUniqueId(), entity);
+        // Skip the entities that definitely don't have any data, usually this is all of them
+        Map<String, Entity> entityMap = new HashMap<>();
+        synchronized (this.conversionFilterLock) {
+            BloomFilter<CharSequence> filter = this.getConversionFilter(tableName, connection);
+            for (Entity entity : entities) {
+                String uuid = entity.getUniqueId().toString();
+                if (filter.mightContain(uuid))
+                    entityMap.put(uuid, entity);
+            }
+        }
 
         if (entityMap.isEmpty())
             return conversionData;
 
-        String entityUniqueIdsString = entityMap.keySet().stream().map(UUID::toString).map(x -> "'" + x + "'").collect(Collectors.joining(","));
+        List<String> entityUniqueIds = new ArrayList<>(entityMap.keySet());
+        String placeholders = String.join(", ", Collections.nCopies(CONVERSION_QUERY_BATCH_SIZE, "?"));
+        String query = "SELECT entity_uuid, stack_size FROM " + this.getTablePrefix() + "convert_stacked_" + tableName + " WHERE entity_uuid IN (" + placeholders + ")";
+        String delete = "DELETE FROM " + this.getTablePrefix() + "convert_stacked_" + tableName + " WHERE entity_uuid IN (" + placeholders + ")";
+        try (PreparedStatement queryStatement = connection.prepareStatement(query);
+             PreparedStatement deleteStatement = connection.prepareStatement(delete)) {
+            for (int index = 0; index < entityUniqueIds.size(); index += CONVERSION_QUERY_BATCH_SIZE) {
+                // Pad the last batch with its last uuid so the same statements can be used
+                int count = Math.min(CONVERSION_QUERY_BATCH_SIZE, entityUniqueIds.size() - index);
+                for (int i = 0; i < CONVERSION_QUERY_BATCH_SIZE; i++) {
+                    String uuid = entityUniqueIds.get(index + Math.min(i, count - 1));
+                    queryStatement.setString(i + 1, uuid);
+                    deleteStatement.setString(i + 1, uuid);
+                }
+
+                // Get data
+                boolean found = false;
+                try (ResultSet result = queryStatement.executeQuery()) {
+                    while (result.next()) {
+                        Entity entity = entityMap.get(result.getString("entity_uuid"));
+                        int stackSize = result.getInt("stack_size");
+                        conversionData.add(new ConversionData(entity, stackSize));
+                        found = true;
+                    }
+                }
 
-        // Get data
-        try (Statement statement = connection.createStatement()) {
-            String query = "SELECT entity_uuid, stack_size FROM " + this.getTablePrefix() + "convert_stacked_" + tableName + " WHERE entity_uuid IN (" + entityUniqueIdsString + ")";
-            ResultSet result = statement.executeQuery(query);
-            while (result.next()) {
-                UUID uuid = UUID.fromString(result.getString("entity_uuid"));
-                Entity entity = entityMap.get(uuid);
-                int stackSize = result.getInt("stack_size");
-                conversionData.add(new ConversionData(entity, stackSize));
+                // Delete data
+                if (found)
+                    deleteStatement.executeUpdate();
             }
         }
 
-        // Delete data
+        return conversionData;
+    }
+
+    /**
+     * Checks if any of the entities may have conversion data without connecting to the database
+     *
+     * @param entities The entities to check
+     * @param tableName The suffix of the conversion table
+     * @return false if none of the entities have conversion data, true if they might or if the filter is not built yet
+     */
+    private boolean mayHaveConversionData(Set<Entity> entities, String tableName) {
+        synchronized (this.conversionFilterLock) {
+            BloomFilter<CharSequence> filter = this.conversionFilters.get(tableName);
+            if (filter == null)
+                return !entities.isEmpty();
+
+            for (Entity entity : entities)
+                if (filter.mightContain(entity.getUniqueId().toString()))
+                    return true;
+            return false;
+        }
+    }
+
+    /**
+     * Gets a filter of the entity uuids that have conversion data, building it from the database if needed.
+     * Must be called while holding the conversion filter lock.
+     *
+     * @param tableName The suffix of the conversion table
+     * @param connection The connection to build the filter with
+     * @return a filter that matches every entity uuid with conversion data, and rarely some without
+     * @throws SQLException if the table could not be read
+     */
+    private BloomFilter<CharSequence> getConversionFilter(String tableName, Connection connection) throws SQLException {
+        BloomFilter<CharSequence> filter = this.conversionFilters.get(tableName);
+        if (filter != null)
+            return filter;
+
+        int count;
         try (Statement statement = connection.createStatement()) {
-            String query = "DELETE FROM " + this.getTablePrefix() + "convert_stacked_" + tableName + " WHERE entity_uuid IN (" + entityUniqueIdsString + ")";
-            statement.executeUpdate(query);
+            ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + this.getTablePrefix() + "convert_stacked_" + tableName);
+            count = result.next() ? result.getInt(1) : 0;
         }
 
-        return conversionData;
+        // Removed rows stay in the filter, they only cost a query if their entity is ever seen again
+        filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(count, 1), CONVERSION_FILTER_FALSE_POSITIVE_RATE);
+        if (count > 0) {
+            try (Statement statement = connection.createStatement()) {
+                ResultSet result = statement.executeQuery("SELECT entity_uuid FROM " + this.getTablePrefix() + "convert_stacked_" + tableName);
+                while (result.next())
+                    filter.put(result.getString(1));
+            }
+        }
+
+        this.conversionFilters.put(tableName, filter);
+        return filter;
     }
 
     public List<String> getTranslationLocales(String requiredVersion) {
@@ -793,9 +1715,9 @@ public class DataManager extends AbstractDataManager {
         private int stackSize;
         private int chunkX, chunkZ;
         private int blockX, blockY, blockZ;
-        private String world;
+        private World world;
 
-        public StackedBlockData(int id, int stackSize, int chunkX, int chunkZ, int blockX, int blockY, int blockZ, String world) {
+        public StackedBlockData(int id, int stackSize, int chunkX, int chunkZ, int blockX, int blockY, int blockZ, World world) {
             this.id = id;
             this.stackSize = stackSize;
             this.chunkX = chunkX;
@@ -811,11 +1733,108 @@ public class DataManager extends AbstractDataManager {
         private int id;
         private UUID entityUUID;
         private byte[] stackEntities;
+        private StackedEntityDataStorage stackedEntityDataStorage;
+        private int chunkX, chunkZ;
 
-        public StackedEntityData(int id, UUID entityUUID, byte[] stackEntities) {
+        public StackedEntityData(int id, UUID entityUUID, byte[] stackEntities, int chunkX, int chunkZ) {
             this.id = id;
             this.entityUUID = entityUUID;
             this.stackEntities = stackEntities;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+
+        /**
+         * Decodes the stack data, leaves the storage null if the data is unreadable
+         */
+        public void decode() {
+            try {
+                this.stackedEntityDataStorage = EntitySerializer.readStorage(this.stackEntities);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            this.stackEntities = null;
+        }
+    }
+
+    /**
+     * The chunks a queued stack's row may be read from
+     */
+    private static class PendingChunks {
+
+        private final UUID worldId;
+        private final long chunkKey;
+        private final long savedChunkKey;
+
+        private PendingChunks(UUID worldId, long chunkKey, long savedChunkKey) {
+            this.worldId = worldId;
+            this.chunkKey = chunkKey;
+            this.savedChunkKey = savedChunkKey;
+        }
+
+    }
+
+    /**
+     * Loaded stack rows from a chunk load that are waiting to be attached on the main thread
+     */
+    private class PendingStackAttachment<D, S extends Stack<?>> {
+        private final List<D> stackData;
+        private final StackAttacher<D, S> attacher;
+        private final Consumer<Set<S>> callback;
+        private final Runnable doneCallback;
+        private volatile int index;
+
+        public PendingStackAttachment(List<D> stackData, StackAttacher<D, S> attacher, Consumer<Set<S>> callback, Runnable doneCallback) {
+            this.stackData = stackData;
+            this.attacher = attacher;
+            this.callback = callback;
+            this.doneCallback = doneCallback;
+            this.index = 0;
+        }
+
+        /**
+         * Attaches stacks until they are all attached, the end time is reached, or the limit is reached.
+         * At least one stack is always attached.
+         *
+         * @param endTime The System#nanoTime to stop attaching at
+         * @param limit The maximum number of stacks to attach
+         * @return the number of stacks that were attached
+         */
+        public int attach(long endTime, int limit) {
+            Set<S> stacks = new HashSet<>();
+            Set<Stack<?>> cleanup = new HashSet<>();
+            int start = this.index;
+
+            do {
+                if (this.isDone())
+                    break;
+
+                S stack = this.attacher.attach(this.stackData.get(this.index++), cleanup);
+                if (stack != null)
+                    stacks.add(stack);
+            } while (this.index - start < limit && System.nanoTime() < endTime);
+
+            if (!stacks.isEmpty() || this.isDone())
+                this.callback.accept(stacks);
+
+            if (!cleanup.isEmpty())
+                DataManager.this.queueStackDeletions(cleanup);
+
+            if (this.isDone())
+                this.doneCallback.run();
+
+            return this.index - start;
+        }
+
+        /**
+         * @return the number of stacks that are still waiting to be attached
+         */
+        public int getRemaining() {
+            return this.stackData.size() - this.index;
+        }
+
+        public boolean isDone() {
+            return this.index >= this.stackData.size();
         }
     }
 
@@ -823,12 +1842,37 @@ public class DataManager extends AbstractDataManager {
         private int id;
         private int stackSize;
         private UUID entityUUID;
+        private int chunkX, chunkZ;
 
-        public StackedItemData(int id, int stackSize, UUID entityUUID) {
+        public StackedItemData(int id, int stackSize, UUID entityUUID, int chunkX, int chunkZ) {
             this.id = id;
             this.stackSize = stackSize;
             this.entityUUID = entityUUID;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
         }
     }
 
+    @FunctionalInterface
+    private interface StackAttacher<D, S extends Stack<?>> {
+        /**
+         * Creates the stack for a loaded row
+         *
+         * @param stackData The loaded row
+         * @param cleanup The stacks to delete, add to this if the row no longer belongs to anything
+         * @return the stack, or null if there is no stack to attach for this row
+         */
+        S attach(D stackData, Set<Stack<?>> cleanup);
+    }
+
+    @FunctionalInterface
+    private interface ResultConsumer {
+        void accept(ResultSet result, World world) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ConversionWriter {
+        void write() throws SQLException;
+    }
+
 }
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -33,12 +34,36 @@ import org.bukkit.entity.EntityType;
 
 public class LocaleManager extends AbstractLocaleManager {
 
+    /**
+     * Stands in for the amount while compiling a stack display message
+     */
+    private static final String AMOUNT_MARKER = "\u0000";
+
+    /**
+     * The amount a compiled stack display message is checked with, covers every digit
+     */
+    private static final int VALIDATION_AMOUNT = 1234567890;
+
+    /**
+     * The maximum number of compiled stack display messages to keep per message, item names can be anything
+     */
+    private static final int MAX_DISPLAY_TEMPLATES = 1024;
+
     private List<String> translationLocales;
+    private final Map<String, Map<String, DisplayTemplate>> displayTemplates;
 
     public LocaleManager(RosePlugin rosePlugin) {
         super(rosePlugin);
 
         this.translationLocales = new ArrayList<>();
+        this.displayTemplates = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void reload() {
+        super.reload();
+
+        this.displayTemplates.clear();
     }
 
     @Override
@@ -79,6 +104,56 @@ public class LocaleManager extends AbstractLocaleManager {
         return message;
     }
 
+    /**
+     * Gets a stack display message, such as entity-stack-display, with the amount and name placeholders applied.
+     * Each message is compiled once per name so only the amount has to be put in after that.
+     *
+     * @param messageKey The key of the message to get
+     * @param amount The value of the amount placeholder
+     * @param name The value of the name placeholder
+     * @return The locale message with the given placeholders applied
+     */
+    public String getStackDisplayMessage(String messageKey, int amount, String name) {
+        if (name == null)
+            return this.getLocaleMessage(messageKey, this.getStackDisplayPlaceholders(amount, null));
+
+        Map<String, DisplayTemplate> templates = this.displayTemplates.computeIfAbsent(messageKey, x -> new ConcurrentHashMap<>());
+        DisplayTemplate template = templates.get(name);
+        if (template == null) {
+            if (templates.size() >= MAX_DISPLAY_TEMPLATES)
+                templates.clear();
+
+            template = this.compileDisplayTemplate(messageKey, name);
+            templates.put(name, template);
+        }
+
+        if (template == DisplayTemplate.UNCOMPILABLE)
+            return this.getLocaleMessage(messageKey, this.getStackDisplayPlaceholders(amount, name));
+        return template.apply(amount);
+    }
+
+    /**
+     * Compiles a stack display message for a name, splitting it around the amount after everything else has been applied
+     *
+     * @param messageKey The key of the message to compile
+     * @param name The value of the name placeholder
+     * @return the compiled message, or {@link DisplayTemplate#UNCOMPILABLE} if it can't be compiled
+     */
+    private DisplayTemplate compileDisplayTemplate(String messageKey, String name) {
+        String message = this.getLocaleMessage(messageKey, this.getStackDisplayPlaceholders(AMOUNT_MARKER, name));
+        DisplayTemplate template = new DisplayTemplate(message.split(Pattern.quote(AMOUNT_MARKER), -1));
+
+        // Formatting codes right before the amount or gradients over it depend on the amount itself, those have to be applied every time
+        String expected = this.getLocaleMessage(messageKey, this.getStackDisplayPlaceholders(VALIDATION_AMOUNT, name));
+        if (!expected.equals(template.apply(VALIDATION_AMOUNT)))
+            return DisplayTemplate.UNCOMPILABLE;
+        return template;
+    }
+
+    private StringPlaceholders getStackDisplayPlaceholders(Object amount, String name) {
+        return StringPlaceholders.builder("amount", amount).addPlaceholder("name", name).build();
+    }
+
     public void fetchMinecraftTranslationLocales() {
         Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> {
             String version;
@@ -193,6 +268,36 @@ public class LocaleManager extends AbstractLocaleManager {
         return this.translationLocales;
     }
 
+    /**
+     * A stack display message with everything but the amount applied
+     */
+    private static class DisplayTemplate {
+
+        private static final DisplayTemplate UNCOMPILABLE = new DisplayTemplate(new String[0]);
+
+        private final String[] parts;
+
+        private DisplayTemplate(String[] parts) {
+            this.parts = parts;
+        }
+
+        /**
+         * @param amount The amount to put in
+         * @return the message with the amount put in between each part
+         */
+        private String apply(int amount) {
+            if (this.parts.length == 1)
+                return this.parts[0];
+
+            String amountString = String.valueOf(amount);
+            StringBuilder stringBuilder = new StringBuilder(this.parts[0]);
+            for (int i = 1; i < this.parts.length; i++)
+                stringBuilder.append(amountString).append(this.parts[i]);
+            return stringBuilder.toString();
+        }
+
+    }
+
     public static class TranslationResponse {
 
         public enum Result {
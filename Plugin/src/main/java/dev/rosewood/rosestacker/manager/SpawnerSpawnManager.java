@@ -9,9 +9,11 @@ import dev.rosewood.rosestacker.stack.settings.SpawnerStackSettings;
 import dev.rosewood.rosestacker.stack.settings.spawner.ConditionTag;
 import dev.rosewood.rosestacker.stack.settings.spawner.tags.NoneConditionTag;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -44,20 +46,31 @@ public class SpawnerSpawnManager extends Manager implements Runnable {
     public static final int DELAY_THRESHOLD = 3;
 
     private final Random random;
+    private final PriorityQueue<ScheduledSpawner> spawnerQueue;
+    private final Map<StackedSpawner, Long> spawnerDueTicks;
+    private long currentTick;
     private BukkitTask task;
 
     public SpawnerSpawnManager(RosePlugin rosePlugin) {
         super(rosePlugin);
 
         this.random = new Random();
+        this.spawnerQueue = new PriorityQueue<>(Comparator.comparingLong((ScheduledSpawner x) -> x.dueTick));
+        this.spawnerDueTicks = new HashMap<>();
+        this.currentTick = 0;
     }
 
     @Override
     public void reload() {
-        if (!this.rosePlugin.getManager(StackManager.class).isSpawnerStackingEnabled())
+        StackManager stackManager = this.rosePlugin.getManager(StackManager.class);
+        if (!stackManager.isSpawnerStackingEnabled())
             return;
 
         this.task = Bukkit.getScheduler().runTaskTimer(this.rosePlugin, this, 0, 1);
+
+        // Anything created from here on schedules itself
+        for (StackedSpawner stackedSpawner : stackManager.getStackedSpawners().values())
+            this.scheduleSpawner(stackedSpawner);
     }
 
     @Override
@@ -66,151 +79,217 @@ public class SpawnerSpawnManager extends Manager implements Runnable {
             this.task.cancel();
             this.task = null;
         }
+
+        this.spawnerQueue.clear();
+        this.spawnerDueTicks.clear();
+    }
+
+    /**
+     * Schedules a spawner to be checked on the next tick.
+     * Should be called whenever its delay may have been reset or its redstone power may have changed.
+     * Must be called on the main thread.
+     *
+     * @param stackedSpawner The spawner to check
+     */
+    public void scheduleSpawner(StackedSpawner stackedSpawner) {
+        this.scheduleSpawner(stackedSpawner, this.currentTick + 1);
+    }
+
+    /**
+     * Schedules a spawner to be checked on a tick, unless it is already going to be checked sooner
+     *
+     * @param stackedSpawner The spawner to check
+     * @param dueTick The tick to check the spawner on
+     */
+    private void scheduleSpawner(StackedSpawner stackedSpawner, long dueTick) {
+        if (this.task == null)
+            return;
+
+        Long scheduledTick = this.spawnerDueTicks.get(stackedSpawner);
+        if (scheduledTick != null && scheduledTick <= dueTick)
+            return;
+
+        // The entry for the old tick is left in the queue and skipped once it comes up
+        this.spawnerDueTicks.put(stackedSpawner, dueTick);
+        this.spawnerQueue.add(new ScheduledSpawner(stackedSpawner, dueTick));
+    }
+
+    /**
+     * Schedules the next check of a spawner for when its delay could first drop below the {@link #DELAY_THRESHOLD}
+     *
+     * @param stackedSpawner The spawner to check
+     */
+    private void scheduleNextCheck(StackedSpawner stackedSpawner) {
+        // The delay only counts down once per tick while a player is nearby, so it can't get there any sooner
+        long ticksUntilDue = Math.max(1, stackedSpawner.getLastDelay() - DELAY_THRESHOLD + 1);
+        this.scheduleSpawner(stackedSpawner, this.currentTick + ticksUntilDue);
     }
 
     @Override
     public void run() {
+        this.currentTick++;
+
+        ScheduledSpawner next = this.spawnerQueue.peek();
+        if (next == null || next.dueTick > this.currentTick)
+            return;
+
         StackManager stackManager = this.rosePlugin.getManager(StackManager.class);
 
         boolean randomizeSpawnAmounts = Setting.SPAWNER_SPAWN_COUNT_STACK_SIZE_RANDOMIZED.getBoolean();
         int maxFailedSpawnAttempts = Setting.SPAWNER_MAX_FAILED_SPAWN_ATTEMPTS.getInt();
         boolean redstoneSpawners = Setting.SPAWNER_DEACTIVATE_WHEN_POWERED.getBoolean();
 
-        Map<Block, StackedSpawner> stackedSpawners = stackManager.getStackedSpawners();
-        for (Entry<Block, StackedSpawner> entry : stackedSpawners.entrySet()) {
-            Block block = entry.getKey();
-            if (block.getType() != Material.SPAWNER)
+        while (!this.spawnerQueue.isEmpty() && this.spawnerQueue.peek().dueTick <= this.currentTick) {
+            ScheduledSpawner scheduledSpawner = this.spawnerQueue.poll();
+            StackedSpawner stackedSpawner = scheduledSpawner.stackedSpawner;
+
+            // Skip entries for spawners that have been rescheduled since
+            Long dueTick = this.spawnerDueTicks.get(stackedSpawner);
+            if (dueTick == null || dueTick != scheduledSpawner.dueTick)
                 continue;
 
-            StackedSpawner stackedSpawner = entry.getValue();
-            SpawnerStackSettings stackSettings = stackedSpawner.getStackSettings();
-            CreatureSpawner spawner = (CreatureSpawner) block.getState(); // Need to refetch the state so the delay is the latest
-            if (redstoneSpawners) {
-                boolean isPowered = block.isBlockPowered();
-                boolean wasPowered = stackedSpawner.isPowered();
-                boolean changed = false;
-                if (isPowered && !wasPowered) {
-                    // Prevent the spawner from spinning and counting down the delay (in most cases)
-                    spawner.setRequiredPlayerRange(1);
-                    changed = true;
-                } else if (!isPowered && wasPowered) {
-                    spawner.setRequiredPlayerRange(stackSettings.getPlayerActivationRange());
-                    changed = true;
-                }
+            this.spawnerDueTicks.remove(stackedSpawner);
+            this.tickSpawner(stackManager, stackedSpawner, randomizeSpawnAmounts, maxFailedSpawnAttempts, redstoneSpawners);
+        }
+    }
 
-                int delay = spawner.getDelay();
-                if (isPowered) {
-                    int lastDelay = stackedSpawner.getLastDelay();
+    private void tickSpawner(StackManager stackManager, StackedSpawner stackedSpawner, boolean randomizeSpawnAmounts, int maxFailedSpawnAttempts, boolean redstoneSpawners) {
+        // Stop checking spawners that were unloaded or removed, they are scheduled again if they come back
+        Block block = stackedSpawner.getSpawner().getBlock();
+        if (stackManager.getStackedSpawner(block) != stackedSpawner || block.getType() != Material.SPAWNER)
+            return;
 
-                    // If the spawner is still spinning, prevent it from counting down
-                    if (lastDelay != delay) {
-                        spawner.setDelay(lastDelay);
-                        changed = true;
-                    }
-                }
+        SpawnerStackSettings stackSettings = stackedSpawner.getStackSettings();
+        CreatureSpawner spawner = (CreatureSpawner) block.getState(); // Need to refetch the state so the delay is the latest
+        if (redstoneSpawners) {
+            boolean isPowered = block.isBlockPowered();
+            boolean wasPowered = stackedSpawner.isPowered();
+            boolean changed = false;
+            if (isPowered && !wasPowered) {
+                // Prevent the spawner from spinning and counting down the delay (in most cases)
+                spawner.setRequiredPlayerRange(1);
+                changed = true;
+            } else if (!isPowered && wasPowered) {
+                spawner.setRequiredPlayerRange(stackSettings.getPlayerActivationRange());
+                changed = true;
+            }
 
-                if (changed) {
-                    spawner.update(false, false);
-                    stackedSpawner.setPowered(isPowered);
+            int delay = spawner.getDelay();
+            if (isPowered) {
+                int lastDelay = stackedSpawner.getLastDelay();
+
+                // If the spawner is still spinning, prevent it from counting down
+                if (lastDelay != delay) {
+                    spawner.setDelay(lastDelay);
+                    changed = true;
                 }
             }
 
-            stackedSpawner.setLastDelay(spawner.getDelay());
-            if (stackedSpawner.getLastDelay() >= DELAY_THRESHOLD)
-                continue;
+            if (changed) {
+                spawner.update(false, false);
+                stackedSpawner.setPowered(isPowered);
+            }
+        }
 
-            EntityType entityType = spawner.getSpawnedType();
-            if (entityType.getEntityClass() == null || !LivingEntity.class.isAssignableFrom(entityType.getEntityClass()))
-                return;
+        stackedSpawner.setLastDelay(spawner.getDelay());
+        if (stackedSpawner.getLastDelay() >= DELAY_THRESHOLD) {
+            this.scheduleNextCheck(stackedSpawner);
+            return;
+        }
 
-            // Reset the spawn delay
-            int newDelay = this.random.nextInt(spawner.getMaxSpawnDelay() - spawner.getMinSpawnDelay() + 1) + spawner.getMinSpawnDelay();
-            stackedSpawner.setLastDelay(newDelay);
-            spawner.setDelay(newDelay);
-            spawner.update(false, false);
+        // Leave spawners that can't spawn living entities alone until their type changes
+        EntityType entityType = spawner.getSpawnedType();
+        if (entityType.getEntityClass() == null || !LivingEntity.class.isAssignableFrom(entityType.getEntityClass()))
+            return;
 
-            // Spawn particles indicating the spawn occurred
-            block.getWorld().spawnParticle(Particle.FLAME, block.getLocation().clone().add(0.5, 0.5, 0.5), 50, 0.5, 0.5, 0.5, 0);
+        // Reset the spawn delay
+        int newDelay = this.random.nextInt(spawner.getMaxSpawnDelay() - spawner.getMinSpawnDelay() + 1) + spawner.getMinSpawnDelay();
+        stackedSpawner.setLastDelay(newDelay);
+        spawner.setDelay(newDelay);
+        spawner.update(false, false);
+        this.scheduleNextCheck(stackedSpawner);
 
-            List<ConditionTag> spawnRequirements = new ArrayList<>(stackSettings.getSpawnRequirements());
+        // Spawn particles indicating the spawn occurred
+        block.getWorld().spawnParticle(Particle.FLAME, block.getLocation().clone().add(0.5, 0.5, 0.5), 50, 0.5, 0.5, 0.5, 0);
 
-            // Check general spawner conditions
-            List<ConditionTag> perSpawnConditions = spawnRequirements.stream().filter(ConditionTag::isRequiredPerSpawn).collect(Collectors.toList());
-            spawnRequirements.removeAll(perSpawnConditions);
+        List<ConditionTag> spawnRequirements = new ArrayList<>(stackSettings.getSpawnRequirements());
 
-            Set<ConditionTag> invalidSpawnConditions = spawnRequirements.stream().filter(x -> !x.check(spawner, block)).collect(Collectors.toSet());
-            boolean passedSpawnerChecks = invalidSpawnConditions.isEmpty();
+        // Check general spawner conditions
+        List<ConditionTag> perSpawnConditions = spawnRequirements.stream().filter(ConditionTag::isRequiredPerSpawn).collect(Collectors.toList());
+        spawnRequirements.removeAll(perSpawnConditions);
 
-            invalidSpawnConditions.addAll(perSpawnConditions); // Will be removed when they pass
+        Set<ConditionTag> invalidSpawnConditions = spawnRequirements.stream().filter(x -> !x.check(spawner, block)).collect(Collectors.toSet());
+        boolean passedSpawnerChecks = invalidSpawnConditions.isEmpty();
 
-            // Spawn the mobs
-            int spawnAmount;
-            if (randomizeSpawnAmounts) {
-                spawnAmount = this.random.nextInt(spawner.getSpawnCount() - stackedSpawner.getStackSize() + 1) + stackedSpawner.getStackSize();
-            } else {
-                spawnAmount = spawner.getSpawnCount();
-            }
+        invalidSpawnConditions.addAll(perSpawnConditions); // Will be removed when they pass
 
-            int spawnRange = spawner.getSpawnRange();
-            boolean successfulSpawn = false;
-            for (int i = 0; i < spawnAmount; i++) {
-                int attempts = 0;
-                while (attempts < maxFailedSpawnAttempts) {
-                    int xOffset = this.random.nextInt(spawnRange * 2 + 1) - spawnRange;
-                    int yOffset = this.random.nextInt(3) - 1;
-                    int zOffset = this.random.nextInt(spawnRange * 2 + 1) - spawnRange;
-
-                    Location spawnLocation = block.getLocation().clone().add(xOffset + 0.5, yOffset, zOffset + 0.5);
-
-                    Block target = block.getLocation().clone().add(xOffset, yOffset, zOffset).getBlock();
-
-                    boolean invalid = false;
-                    for (ConditionTag conditionTag : perSpawnConditions) {
-                        if (!conditionTag.check(spawner, target)) {
-                            invalid = true;
-                        } else {
-                            invalidSpawnConditions.remove(conditionTag);
-                        }
-                    }
+        // Spawn the mobs
+        int spawnAmount;
+        if (randomizeSpawnAmounts) {
+            spawnAmount = this.random.nextInt(spawner.getSpawnCount() - stackedSpawner.getStackSize() + 1) + stackedSpawner.getStackSize();
+        } else {
+            spawnAmount = spawner.getSpawnCount();
+        }
 
-                    if (invalid) {
-                        attempts++;
-                        continue;
+        int spawnRange = spawner.getSpawnRange();
+        boolean successfulSpawn = false;
+        for (int i = 0; i < spawnAmount; i++) {
+            int attempts = 0;
+            while (attempts < maxFailedSpawnAttempts) {
+                int xOffset = this.random.nextInt(spawnRange * 2 + 1) - spawnRange;
+                int yOffset = this.random.nextInt(3) - 1;
+                int zOffset = this.random.nextInt(spawnRange * 2 + 1) - spawnRange;
+
+                Location spawnLocation = block.getLocation().clone().add(xOffset + 0.5, yOffset, zOffset + 0.5);
+
+                Block target = block.getLocation().clone().add(xOffset, yOffset, zOffset).getBlock();
+
+                boolean invalid = false;
+                for (ConditionTag conditionTag : perSpawnConditions) {
+                    if (!conditionTag.check(spawner, target)) {
+                        invalid = true;
+                    } else {
+                        invalidSpawnConditions.remove(conditionTag);
                     }
+                }
 
-                    if (!passedSpawnerChecks)
-                        break;
+                if (invalid) {
+                    attempts++;
+                    continue;
+                }
 
-                    LivingEntity entity = (LivingEntity) block.getWorld().spawn(spawnLocation, entityType.getEntityClass(), spawnedEntity -> {
-                        LivingEntity spawnedLivingEntity = (LivingEntity) spawnedEntity;
-                        if (stackSettings.isMobAIDisabled())
-                            this.disableAI(spawnedLivingEntity);
-                        this.tagSpawnedFromSpawner(spawnedLivingEntity);
-                    });
+                if (!passedSpawnerChecks)
+                    break;
 
-                    SpawnerSpawnEvent spawnerSpawnEvent = new SpawnerSpawnEvent(entity, spawner);
-                    Bukkit.getPluginManager().callEvent(spawnerSpawnEvent);
-                    if (spawnerSpawnEvent.isCancelled())
-                        entity.remove();
+                LivingEntity entity = (LivingEntity) block.getWorld().spawn(spawnLocation, entityType.getEntityClass(), spawnedEntity -> {
+                    LivingEntity spawnedLivingEntity = (LivingEntity) spawnedEntity;
+                    if (stackSettings.isMobAIDisabled())
+                        this.disableAI(spawnedLivingEntity);
+                    this.tagSpawnedFromSpawner(spawnedLivingEntity);
+                });
 
-                    if (entity.isValid()) // Don't spawn particles for auto-stacked entities
-                        block.getWorld().spawnParticle(Particle.EXPLOSION_NORMAL, spawnLocation.clone().add(0, 0.75, 0), 5, 0.25, 0.25, 0.25, 0.01);
+                SpawnerSpawnEvent spawnerSpawnEvent = new SpawnerSpawnEvent(entity, spawner);
+                Bukkit.getPluginManager().callEvent(spawnerSpawnEvent);
+                if (spawnerSpawnEvent.isCancelled())
+                    entity.remove();
 
-                    successfulSpawn = true;
-                    break;
-                }
+                if (entity.isValid()) // Don't spawn particles for auto-stacked entities
+                    block.getWorld().spawnParticle(Particle.EXPLOSION_NORMAL, spawnLocation.clone().add(0, 0.75, 0), 5, 0.25, 0.25, 0.25, 0.01);
+
+                successfulSpawn = true;
+                break;
             }
+        }
 
-            stackedSpawner.getLastInvalidConditions().clear();
-            if (!successfulSpawn) {
-                if (invalidSpawnConditions.isEmpty()) {
-                    stackedSpawner.getLastInvalidConditions().add(NoneConditionTag.class);
-                } else {
-                    List<Class<? extends ConditionTag>> invalidSpawnConditionClasses = new ArrayList<>();
-                    for (ConditionTag conditionTag : invalidSpawnConditions)
-                        invalidSpawnConditionClasses.add(conditionTag.getClass());
-                    stackedSpawner.getLastInvalidConditions().addAll(invalidSpawnConditionClasses);
-                }
+        stackedSpawner.getLastInvalidConditions().clear();
+        if (!successfulSpawn) {
+            if (invalidSpawnConditions.isEmpty()) {
+                stackedSpawner.getLastInvalidConditions().add(NoneConditionTag.class);
+            } else {
+                List<Class<? extends ConditionTag>> invalidSpawnConditionClasses = new ArrayList<>();
+                for (ConditionTag conditionTag : invalidSpawnConditions)
+                    invalidSpawnConditionClasses.add(conditionTag.getClass());
+                stackedSpawner.getLastInvalidConditions().addAll(invalidSpawnConditionClasses);
             }
         }
     }
@@ -257,4 +336,19 @@ public class SpawnerSpawnManager extends Manager implements Runnable {
         //entity.addPotionEffect(new PotionEffect(PotionEffectType.JUMP, Integer.MAX_VALUE, 128, true, false));
     }
 
+    /**
+     * A spawner waiting in the queue to be checked
+     */
+    private static class ScheduledSpawner {
+
+        private final StackedSpawner stackedSpawner;
+        private final long dueTick;
+
+        private ScheduledSpawner(StackedSpawner stackedSpawner, long dueTick) {
+            this.stackedSpawner = stackedSpawner;
+            this.dueTick = dueTick;
+        }
+
+    }
+
 }
@@ -20,6 +20,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
@@ -28,6 +30,7 @@ import org.bukkit.block.Block;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Item;
 import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.scheduler.BukkitTask;
 
@@ -37,6 +40,7 @@ import org.bukkit.scheduler.BukkitTask;
 public class StackManager extends Manager implements StackingLogic {
 
     private BukkitTask deleteTask;
+    private ForkJoinPool stackingPool;
 
     private final Map<UUID, StackingThread> stackingThreads;
     private final Set<Stack<?>> deletedStacks;
@@ -56,6 +60,20 @@ public class StackManager extends Manager implements StackingLogic {
 
     @Override
     public void reload() {
+        // Create the pool shared by all StackingThreads to stack in parallel
+        if (Setting.STACK_PARALLEL_ENABLED.getBoolean()) {
+            int parallelism = Setting.STACK_PARALLEL_THREADS.getInt();
+            if (parallelism <= 0)
+                parallelism = Runtime.getRuntime().availableProcessors();
+
+            this.stackingPool = new ForkJoinPool(parallelism, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("RoseStacker Stacking Worker " + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+
         // Load a new StackingThread per world
         Bukkit.getWorlds().forEach(this::loadWorld);
 
@@ -72,15 +90,41 @@ public class StackManager extends Manager implements StackingLogic {
         DataManager dataManager = this.rosePlugin.getManager(DataManager.class);
         if (!dataManager.isConnected()) {
             this.stackingThreads.clear();
+            this.shutdownStackingPool();
             return;
         }
 
         // Close and clear StackingThreads
         this.stackingThreads.values().forEach(StackingThread::close);
         this.stackingThreads.clear();
+        this.shutdownStackingPool();
 
         // Delete pending stacks
         this.deleteStacks();
+
+        // Write everything that is still queued
+        dataManager.flushPendingWrites();
+    }
+
+    private void shutdownStackingPool() {
+        if (this.stackingPool != null) {
+            this.stackingPool.shutdown();
+            this.stackingPool = null;
+        }
+    }
+
+    /**
+     * @return the pool to stack in parallel with, or null if stacks should not be stacked in parallel
+     */
+    public ForkJoinPool getStackingPool() {
+        return this.stackingPool;
+    }
+
+    /**
+     * @return the number of chunks in all worlds that are waiting to have their stacks loaded
+     */
+    public int getPendingChunkCount() {
+        return this.stackingThreads.values().stream().mapToInt(StackingThread::getPendingChunkCount).sum();
     }
 
     @Override
@@ -334,6 +378,15 @@ public class StackManager extends Manager implements StackingLogic {
         stackingThread.unloadChunk(chunk);
     }
 
+    /**
+     * Makes sure every nametag is sent again to a player during the next nametag update
+     *
+     * @param player The player
+     */
+    public void invalidateNametags(Player player) {
+        this.stackingThreads.values().forEach(x -> x.invalidateNametags(player));
+    }
+
     public boolean isEntityStackingEnabled() {
         return Setting.ENTITY_STACKING_ENABLED.getBoolean() && !this.conversionManager.isEntityStackingLocked();
     }
@@ -470,7 +523,7 @@ public class StackManager extends Manager implements StackingLogic {
      * Deletes all stacks pending deletion
      */
     private void deleteStacks() {
-        this.rosePlugin.getManager(DataManager.class).deleteStacks(new HashSet<>(this.deletedStacks));
+        this.rosePlugin.getManager(DataManager.class).queueStackDeletions(new HashSet<>(this.deletedStacks));
         this.deletedStacks.clear();
     }
 
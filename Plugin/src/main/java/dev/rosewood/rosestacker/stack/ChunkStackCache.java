@@ -0,0 +1,182 @@
+package dev.rosewood.rosestacker.stack;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the stacks of recently unloaded chunks in memory so they don't need to be read back from the database
+ * if the chunk is loaded again shortly after, such as when a player moves back and forth across a chunk border.
+ * Chunks without any stacks are cached too, since knowing that saves the read just the same.
+ * <p>
+ * Stacks are still queued to be saved when their chunk unloads, this cache only saves the read.
+ * Entries are evicted least recently unloaded first once there are too many, they are too old,
+ * or they are estimated to be using too much memory.
+ */
+public class ChunkStackCache {
+
+    /**
+     * The estimated memory used by a stack besides any entity nbt data, in bytes
+     */
+    private static final int STACK_MEMORY_OVERHEAD = 128;
+
+    /**
+     * The estimated memory used by a cached chunk besides its stacks, in bytes
+     */
+    private static final int CHUNK_MEMORY_OVERHEAD = 96;
+
+    private final int maxSize;
+    private final long maxAgeMillis;
+    private final long maxMemory;
+    private final LinkedHashMap<Long, ChunkStacks> entries;
+    private long memory;
+
+    /**
+     * @param maxSize The maximum number of chunks to keep, 0 or less to disable the cache
+     * @param maxAgeMillis The maximum time to keep a chunk for, in milliseconds
+     * @param maxMemory The maximum estimated memory for all cached chunks, in bytes
+     */
+    public ChunkStackCache(int maxSize, long maxAgeMillis, long maxMemory) {
+        this.maxSize = maxSize;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxMemory = maxMemory;
+        this.entries = new LinkedHashMap<>();
+        this.memory = 0;
+    }
+
+    /**
+     * Caches the stacks of an unloaded chunk, replacing anything already cached for it
+     *
+     * @param chunkKey The packed key of the chunk
+     * @param chunkStacks The stacks that were in the chunk
+     */
+    public synchronized void put(long chunkKey, ChunkStacks chunkStacks) {
+        if (this.maxSize <= 0)
+            return;
+
+        this.remove(chunkKey);
+        if (chunkStacks.memory > this.maxMemory)
+            return;
+
+        this.entries.put(chunkKey, chunkStacks);
+        this.memory += chunkStacks.memory;
+        this.evict();
+    }
+
+    /**
+     * Removes and returns the cached stacks of a chunk
+     *
+     * @param chunkKey The packed key of the chunk
+     * @return the stacks that were in the chunk when it unloaded, or null if the chunk is not cached
+     */
+    public synchronized ChunkStacks take(long chunkKey) {
+        this.evict();
+        return this.remove(chunkKey);
+    }
+
+    /**
+     * Removes all cached chunks
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.memory = 0;
+    }
+
+    /**
+     * @return the number of chunks that are cached
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the estimated memory used by all cached chunks, in bytes
+     */
+    public synchronized long getMemory() {
+        return this.memory;
+    }
+
+    private ChunkStacks remove(long chunkKey) {
+        ChunkStacks removed = this.entries.remove(chunkKey);
+        if (removed != null)
+            this.memory -= removed.memory;
+        return removed;
+    }
+
+    private void evict() {
+        long expireTime = System.currentTimeMillis() - this.maxAgeMillis;
+        Iterator<ChunkStacks> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            ChunkStacks eldest = iterator.next();
+            if (this.entries.size() <= this.maxSize && this.memory <= this.maxMemory && eldest.time > expireTime)
+                break;
+
+            iterator.remove();
+            this.memory -= eldest.memory;
+        }
+    }
+
+    /**
+     * The stacks that were in a chunk when it unloaded
+     */
+    public static class ChunkStacks {
+
+        private final List<StackedEntity> stackedEntities;
+        private final List<StackedItem> stackedItems;
+        private final List<StackedBlock> stackedBlocks;
+        private final List<StackedSpawner> stackedSpawners;
+        private final long time;
+        private final long memory;
+
+        public ChunkStacks(List<StackedEntity> stackedEntities, List<StackedItem> stackedItems, List<StackedBlock> stackedBlocks, List<StackedSpawner> stackedSpawners) {
+            this.stackedEntities = stackedEntities;
+            this.stackedItems = stackedItems;
+            this.stackedBlocks = stackedBlocks;
+            this.stackedSpawners = stackedSpawners;
+            this.time = System.currentTimeMillis();
+
+            long memory = CHUNK_MEMORY_OVERHEAD + (long) (stackedItems.size() + stackedBlocks.size() + stackedSpawners.size()) * STACK_MEMORY_OVERHEAD;
+            for (StackedEntity stackedEntity : stackedEntities)
+                memory += estimateMemory(stackedEntity);
+            this.memory = memory;
+        }
+
+        public List<StackedEntity> getStackedEntities() {
+            return this.stackedEntities;
+        }
+
+        public List<StackedItem> getStackedItems() {
+            return this.stackedItems;
+        }
+
+        public List<StackedBlock> getStackedBlocks() {
+            return this.stackedBlocks;
+        }
+
+        public List<StackedSpawner> getStackedSpawners() {
+            return this.stackedSpawners;
+        }
+
+        /**
+         * Estimates the memory used by an entity stack, each distinct nbt template is only counted once
+         *
+         * @param stackedEntity The entity stack
+         * @return the estimated memory used, in bytes
+         */
+        private static long estimateMemory(StackedEntity stackedEntity) {
+            List<StackedEntityDataStorage.Run> runs = stackedEntity.getStackedEntityDataStorage().getRuns();
+            Set<byte[]> templates = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            long memory = STACK_MEMORY_OVERHEAD + runs.size() * 16L;
+            for (StackedEntityDataStorage.Run run : runs)
+                if (templates.add(run.getData()))
+                    memory += run.getData().length;
+            return memory;
+        }
+
+    }
+
+}
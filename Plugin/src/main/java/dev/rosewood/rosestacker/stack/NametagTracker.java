@@ -0,0 +1,116 @@
+package dev.rosewood.rosestacker.stack;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+
+/**
+ * Remembers the nametag that was last sent to each player for each entity, so a packet only needs to be sent when
+ * the name or its visibility changes for that player.
+ * <p>
+ * Entities that were not updated during the last pass are forgotten, so they are sent again if they come back into range.
+ * Entities are only updated while they are within the player's entity tracking range, since the client forgets the
+ * nametags of entities outside of it.
+ */
+public class NametagTracker {
+
+    private final Map<UUID, Map<Integer, SentNametag>> sentNametags;
+    private volatile int pass;
+
+    public NametagTracker() {
+        this.sentNametags = new ConcurrentHashMap<>();
+        this.pass = 0;
+    }
+
+    /**
+     * Starts a new pass of nametag updates
+     */
+    public void nextPass() {
+        this.pass++;
+    }
+
+    /**
+     * Records the nametag that should be shown to a player for an entity
+     *
+     * @param player The player viewing the entity
+     * @param entity The entity with the nametag
+     * @param name The name that should be shown, or null if only the visibility is sent
+     * @param visible true if the name should be visible, otherwise false
+     * @return true if the nametag changed and needs to be sent, otherwise false
+     */
+    public boolean update(Player player, Entity entity, String name, boolean visible) {
+        Map<Integer, SentNametag> playerNametags = this.sentNametags.computeIfAbsent(player.getUniqueId(), x -> new ConcurrentHashMap<>());
+        SentNametag sentNametag = playerNametags.get(entity.getEntityId());
+        if (sentNametag != null && sentNametag.visible == visible && Objects.equals(sentNametag.name, name)) {
+            sentNametag.pass = this.pass;
+            return false;
+        }
+
+        playerNametags.put(entity.getEntityId(), new SentNametag(name, visible, this.pass));
+        return true;
+    }
+
+    /**
+     * Forgets what was sent for an entity, should be called when its nametag was sent to players some other way
+     *
+     * @param entity The entity
+     */
+    public void invalidate(Entity entity) {
+        for (Map<Integer, SentNametag> playerNametags : this.sentNametags.values())
+            playerNametags.remove(entity.getEntityId());
+    }
+
+    /**
+     * Forgets everything that was sent to a player, should be called when the player's client may have forgotten
+     * the entities around it, such as after a respawn or teleport
+     *
+     * @param player The player
+     */
+    public void invalidate(Player player) {
+        this.sentNametags.remove(player.getUniqueId());
+    }
+
+    /**
+     * Forgets the players that are no longer present and the entities that were not updated during the current pass
+     *
+     * @param players The players that are still present
+     */
+    public void cleanup(Collection<? extends Player> players) {
+        Set<UUID> playerUUIDs = new HashSet<>();
+        for (Player player : players)
+            playerUUIDs.add(player.getUniqueId());
+
+        int pass = this.pass;
+        this.sentNametags.keySet().retainAll(playerUUIDs);
+        for (Map<Integer, SentNametag> playerNametags : this.sentNametags.values())
+            playerNametags.values().removeIf(x -> x.pass != pass);
+    }
+
+    /**
+     * Forgets everything that was sent
+     */
+    public void clear() {
+        this.sentNametags.clear();
+    }
+
+    private static class SentNametag {
+
+        private final String name;
+        private final boolean visible;
+        private volatile int pass;
+
+        private SentNametag(String name, boolean visible, int pass) {
+            this.name = name;
+            this.visible = visible;
+            this.pass = pass;
+        }
+
+    }
+
+}
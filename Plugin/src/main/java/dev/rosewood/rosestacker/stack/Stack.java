@@ -4,6 +4,7 @@ import dev.rosewood.rosestacker.stack.settings.StackSettings;
 import dev.rosewood.rosestacker.utils.StackerUtils;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
@@ -12,14 +13,62 @@ public abstract class Stack<T extends StackSettings> {
 
     private final int id;
 
+    private final AtomicInteger modificationCount;
+    private volatile int savedModificationCount;
+    private volatile long savedChunkKey;
+
     public Stack(int id) {
         this.id = id;
+
+        // New stacks always start off needing to be saved
+        this.modificationCount = new AtomicInteger(1);
+        this.savedModificationCount = 0;
     }
 
     public int getId() {
         return this.id;
     }
 
+    /**
+     * Marks this stack as changed so it will be written the next time it is saved
+     */
+    public void markDirty() {
+        this.modificationCount.incrementAndGet();
+    }
+
+    /**
+     * @return the number of times this stack has been modified, used to detect changes while a save is in progress
+     */
+    public int getModificationCount() {
+        return this.modificationCount.get();
+    }
+
+    /**
+     * Marks this stack as saved
+     *
+     * @param modificationCount The modification count of the stack at the time its data was read for saving
+     * @param chunkKey The packed key of the chunk the stack was saved in
+     */
+    public void markSaved(int modificationCount, long chunkKey) {
+        this.savedModificationCount = modificationCount;
+        this.savedChunkKey = chunkKey;
+    }
+
+    /**
+     * @return the packed key of the chunk this stack was last saved in
+     */
+    public long getSavedChunkKey() {
+        return this.savedChunkKey;
+    }
+
+    /**
+     * @return true if this stack has changed or moved to another chunk since it was last saved, otherwise false
+     */
+    public boolean isDirty() {
+        return this.modificationCount.get() != this.savedModificationCount
+                || StackerUtils.getChunkKey(this.getLocation()) != this.savedChunkKey;
+    }
+
     public abstract int getStackSize();
 
     public abstract Location getLocation();
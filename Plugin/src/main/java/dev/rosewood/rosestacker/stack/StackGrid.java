@@ -0,0 +1,191 @@
+package dev.rosewood.rosestacker.stack;
+
+import dev.rosewood.rosestacker.utils.StackerUtils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import org.bukkit.Location;
+
+/**
+ * Indexes stacks into chunk sized cells so that the stacks near a location can be found
+ * without having to look at every stack in the world.
+ * Positions are only updated when {@link #update(Stack)} or {@link #refresh(Collection)} are called,
+ * so lookups may be slightly out of date for stacks that move around.
+ *
+ * @param <K> The type used to separate stacks that can never stack with each other
+ * @param <T> The stack type
+ */
+public class StackGrid<K, T extends Stack<?>> {
+
+    private final Function<T, K> keyFunction;
+    private final Map<Long, Map<K, Set<T>>> cells;
+    private final Map<T, GridPosition<K>> positions;
+
+    public StackGrid(Function<T, K> keyFunction) {
+        this.keyFunction = keyFunction;
+        this.cells = new ConcurrentHashMap<>();
+        this.positions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Adds a stack to the grid, or moves it to its current cell if it is already in the grid
+     *
+     * @param stack The stack to update
+     */
+    public synchronized void update(T stack) {
+        K key = this.keyFunction.apply(stack);
+        long cellKey = StackerUtils.getChunkKey(stack.getLocation());
+
+        GridPosition<K> position = this.positions.get(stack);
+        if (position != null) {
+            if (position.cellKey == cellKey && position.key.equals(key))
+                return;
+            this.removeFromCell(stack, position);
+        }
+
+        this.cells.computeIfAbsent(cellKey, x -> new ConcurrentHashMap<>()).computeIfAbsent(key, x -> ConcurrentHashMap.newKeySet()).add(stack);
+        this.positions.put(stack, new GridPosition<>(key, cellKey));
+    }
+
+    /**
+     * Removes a stack from the grid
+     *
+     * @param stack The stack to remove
+     */
+    public synchronized void remove(T stack) {
+        GridPosition<K> position = this.positions.remove(stack);
+        if (position != null)
+            this.removeFromCell(stack, position);
+    }
+
+    /**
+     * Updates the positions of all the given stacks and removes any stacks from the grid that are not given
+     *
+     * @param stacks The stacks that should be in the grid
+     */
+    public synchronized void refresh(Collection<T> stacks) {
+        Set<T> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(stacks);
+
+        for (T stack : new ArrayList<>(this.positions.keySet()))
+            if (!current.contains(stack))
+                this.remove(stack);
+
+        for (T stack : stacks)
+            this.update(stack);
+    }
+
+    /**
+     * Removes all stacks from the grid
+     */
+    public synchronized void clear() {
+        this.cells.clear();
+        this.positions.clear();
+    }
+
+    /**
+     * Gets the stacks with the given key that are in the cells overlapping a radius around a location
+     *
+     * @param key The key of the stacks to get
+     * @param location The center location
+     * @param radius The radius to look in
+     * @return the stacks in the cells overlapping the radius, some may be further away than the radius
+     */
+    public List<T> getNearby(K key, Location location, double radius) {
+        int minChunkX = (int) Math.floor(location.getX() - radius) >> 4;
+        int maxChunkX = (int) Math.floor(location.getX() + radius) >> 4;
+        int minChunkZ = (int) Math.floor(location.getZ() - radius) >> 4;
+        int maxChunkZ = (int) Math.floor(location.getZ() + radius) >> 4;
+
+        List<T> nearby = new ArrayList<>();
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++)
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++)
+                this.addStacksInCell(nearby, key, StackerUtils.getChunkKey(chunkX, chunkZ));
+        return nearby;
+    }
+
+    /**
+     * Gets the stacks with the given key in a chunk
+     *
+     * @param key The key of the stacks to get
+     * @param chunkKey The packed key of the chunk
+     * @return the stacks in the chunk
+     */
+    public List<T> getInChunk(K key, long chunkKey) {
+        List<T> stacks = new ArrayList<>();
+        this.addStacksInCell(stacks, key, chunkKey);
+        return stacks;
+    }
+
+    /**
+     * Checks if there are any stacks in a chunk
+     *
+     * @param chunkKey The packed key of the chunk
+     * @return true if there are any stacks in the chunk, otherwise false
+     */
+    public boolean hasAnyInChunk(long chunkKey) {
+        return this.cells.containsKey(chunkKey);
+    }
+
+    /**
+     * Gets all stacks in a chunk, no matter their key
+     *
+     * @param chunkKey The packed key of the chunk
+     * @return the stacks in the chunk
+     */
+    public List<T> getAllInChunk(long chunkKey) {
+        Map<K, Set<T>> cell = this.cells.get(chunkKey);
+        if (cell == null)
+            return Collections.emptyList();
+
+        List<T> stacks = new ArrayList<>();
+        for (Set<T> keyedStacks : cell.values())
+            stacks.addAll(keyedStacks);
+        return stacks;
+    }
+
+    private void addStacksInCell(List<T> stacks, K key, long cellKey) {
+        Map<K, Set<T>> cell = this.cells.get(cellKey);
+        if (cell == null)
+            return;
+
+        Set<T> keyedStacks = cell.get(key);
+        if (keyedStacks != null)
+            stacks.addAll(keyedStacks);
+    }
+
+    private void removeFromCell(T stack, GridPosition<K> position) {
+        Map<K, Set<T>> cell = this.cells.get(position.cellKey);
+        if (cell == null)
+            return;
+
+        Set<T> keyedStacks = cell.get(position.key);
+        if (keyedStacks == null)
+            return;
+
+        keyedStacks.remove(stack);
+        if (keyedStacks.isEmpty())
+            cell.remove(position.key);
+        if (cell.isEmpty())
+            this.cells.remove(position.cellKey);
+    }
+
+    private static class GridPosition<K> {
+
+        private final K key;
+        private final long cellKey;
+
+        private GridPosition(K key, long cellKey) {
+            this.key = key;
+            this.cellKey = cellKey;
+        }
+
+    }
+
+}
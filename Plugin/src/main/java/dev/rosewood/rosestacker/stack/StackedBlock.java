@@ -1,6 +1,5 @@
 package dev.rosewood.rosestacker.stack;
 
-import dev.rosewood.rosegarden.utils.StringPlaceholders;
 import dev.rosewood.rosestacker.RoseStacker;
 import dev.rosewood.rosestacker.gui.StackedBlockGui;
 import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
@@ -57,12 +56,14 @@ public class StackedBlock extends Stack<BlockStackSettings> {
 
     public void increaseStackSize(int amount) {
         this.size += amount;
+        this.markDirty();
 
         this.updateDisplay();
     }
 
     public void setStackSize(int size) {
         this.size = size;
+        this.markDirty();
 
         this.updateDisplay();
     }
@@ -97,8 +98,7 @@ public class StackedBlock extends Stack<BlockStackSettings> {
             return;
         }
 
-        String displayString = RoseStacker.getInstance().getManager(LocaleManager.class).getLocaleMessage("block-stack-display", StringPlaceholders.builder("amount", this.getStackSize())
-                .addPlaceholder("name", this.stackSettings.getDisplayName()).build());
+        String displayString = RoseStacker.getInstance().getManager(LocaleManager.class).getStackDisplayMessage("block-stack-display", this.getStackSize(), this.stackSettings.getDisplayName());
 
         hologramManager.createOrUpdateHologram(location, displayString);
     }
@@ -1,6 +1,5 @@
 package dev.rosewood.rosestacker.stack;
 
-import dev.rosewood.rosegarden.utils.StringPlaceholders;
 import dev.rosewood.rosestacker.RoseStacker;
 import dev.rosewood.rosestacker.event.AsyncEntityDeathEvent;
 import dev.rosewood.rosestacker.hook.NPCsHook;
@@ -10,13 +9,14 @@ import dev.rosewood.rosestacker.manager.StackManager;
 import dev.rosewood.rosestacker.manager.StackSettingManager;
 import dev.rosewood.rosestacker.nms.NMSAdapter;
 import dev.rosewood.rosestacker.nms.NMSHandler;
+import dev.rosewood.rosestacker.nms.NametagUpdate;
 import dev.rosewood.rosestacker.stack.settings.EntityStackSettings;
 import dev.rosewood.rosestacker.utils.StackerUtils;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.entity.EnderDragon;
@@ -32,19 +32,24 @@ import org.bukkit.util.Vector;
 public class StackedEntity extends Stack<EntityStackSettings> implements Comparable<StackedEntity> {
 
     private LivingEntity entity;
-    private List<byte[]> serializedStackedEntities;
+    private StackedEntityDataStorage stackedEntityDataStorage;
     private int npcCheckCounter;
 
+    private long compatibilityKey;
+
+    private byte[] unstackCheckNBT;
+    private StackedEntity unstackCheckStack;
+
     private String displayName;
     private boolean displayNameVisible;
 
     private EntityStackSettings stackSettings;
 
-    public StackedEntity(int id, LivingEntity entity, List<byte[]> serializedStackedEntities) {
+    public StackedEntity(int id, LivingEntity entity, StackedEntityDataStorage stackedEntityDataStorage) {
         super(id);
 
         this.entity = entity;
-        this.serializedStackedEntities = serializedStackedEntities;
+        this.stackedEntityDataStorage = stackedEntityDataStorage;
         this.npcCheckCounter = NPCsHook.anyEnabled() ? 5 : 0;
 
         this.displayName = null;
@@ -58,12 +63,16 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
         }
     }
 
+    public StackedEntity(int id, LivingEntity entity, List<byte[]> serializedStackedEntities) {
+        this(id, entity, serializedStackedEntities == null ? new StackedEntityDataStorage() : new StackedEntityDataStorage(serializedStackedEntities));
+    }
+
     public StackedEntity(LivingEntity entity, List<byte[]> serializedStackedEntities) {
         this(-1, entity, serializedStackedEntities);
     }
 
     public StackedEntity(LivingEntity entity) {
-        this(entity, Collections.synchronizedList(new LinkedList<>()));
+        this(-1, entity, new StackedEntityDataStorage());
     }
 
     // We are going to check if this entity is an NPC multiple times, since MythicMobs annoyingly doesn't
@@ -99,10 +108,11 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
         Runnable task = () -> {
             byte[] nbtData = NMSAdapter.getHandler().getEntityAsNBT(entity, Setting.ENTITY_SAVE_ATTRIBUTES.getBoolean());
             if (Setting.ENTITY_STACK_TO_BOTTOM.getBoolean()) {
-                this.serializedStackedEntities.add(nbtData);
+                this.stackedEntityDataStorage.addLast(nbtData);
             } else {
-                this.serializedStackedEntities.add(0, nbtData);
+                this.stackedEntityDataStorage.addFirst(nbtData);
             }
+            this.markDirty();
 
             if (updateDisplay)
                 this.updateDisplay();
@@ -120,10 +130,21 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
 
     public void increaseStackSize(List<byte[]> entityNBTStrings) {
         if (Setting.ENTITY_STACK_TO_BOTTOM.getBoolean()) {
-            this.serializedStackedEntities.addAll(entityNBTStrings);
+            this.stackedEntityDataStorage.addAllLast(entityNBTStrings);
         } else {
-            this.serializedStackedEntities.addAll(0, entityNBTStrings);
+            this.stackedEntityDataStorage.addAllFirst(entityNBTStrings);
         }
+        this.markDirty();
+        this.updateDisplay();
+    }
+
+    public void increaseStackSize(StackedEntityDataStorage stackedEntityDataStorage) {
+        if (Setting.ENTITY_STACK_TO_BOTTOM.getBoolean()) {
+            this.stackedEntityDataStorage.addAllLast(stackedEntityDataStorage);
+        } else {
+            this.stackedEntityDataStorage.addAllFirst(stackedEntityDataStorage);
+        }
+        this.markDirty();
         this.updateDisplay();
     }
 
@@ -133,25 +154,47 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
      * @return The new StackedEntity of size 1 that was just created
      */
     public StackedEntity decreaseStackSize() {
-        if (this.serializedStackedEntities.isEmpty())
+        if (this.stackedEntityDataStorage.isEmpty())
             throw new IllegalStateException();
 
         StackManager stackManager = RoseStacker.getInstance().getManager(StackManager.class);
         LivingEntity oldEntity = this.entity;
 
         stackManager.setEntityStackingTemporarilyDisabled(true);
-        this.entity = NMSAdapter.getHandler().spawnEntityFromNBT(this.serializedStackedEntities.remove(0), oldEntity.getLocation());
+        this.entity = NMSAdapter.getHandler().spawnEntityFromNBT(this.stackedEntityDataStorage.removeFirst(), oldEntity.getLocation());
         stackManager.setEntityStackingTemporarilyDisabled(false);
         this.stackSettings.applyUnstackProperties(this.entity, oldEntity);
         stackManager.updateStackedEntityKey(oldEntity, this.entity);
+        this.markDirty();
         this.entity.setVelocity(this.entity.getVelocity().add(Vector.getRandom().multiply(0.01))); // Nudge the entity to unstack it from the old entity
         this.updateDisplay();
 
-        return new StackedEntity(-1, oldEntity, Collections.synchronizedList(new LinkedList<>()));
+        return new StackedEntity(oldEntity);
+    }
+
+    /**
+     * Recalculates the key used to quickly rule out stacks that this stack can't stack with
+     */
+    public void updateCompatibilityKey() {
+        this.compatibilityKey = this.stackSettings == null ? EntityStackSettings.INCOMPATIBLE_KEY : this.stackSettings.getCompatibilityKey(this);
+    }
+
+    /**
+     * @return the compatibility key from the last time {@link #updateCompatibilityKey()} was called
+     */
+    public long getCompatibilityKey() {
+        return this.compatibilityKey;
     }
 
     public List<byte[]> getStackedEntityNBT() {
-        return Collections.unmodifiableList(this.serializedStackedEntities);
+        return this.stackedEntityDataStorage.getAll();
+    }
+
+    /**
+     * @return the storage holding the nbt data of the internally-stacked entities
+     */
+    public StackedEntityDataStorage getStackedEntityDataStorage() {
+        return this.stackedEntityDataStorage;
     }
 
     /**
@@ -162,7 +205,8 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
      * @param serializedNbt The nbt to overwrite with
      */
     public void setStackedEntityNBT(List<byte[]> serializedNbt) {
-        this.serializedStackedEntities = serializedNbt;
+        this.stackedEntityDataStorage = new StackedEntityDataStorage(serializedNbt);
+        this.markDirty();
     }
 
     /**
@@ -183,21 +227,38 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
             int fireTicks = thisEntity.getFireTicks(); // Propagate fire ticks so meats cook as you would expect
             int totalExp = droppedExp;
             NMSHandler nmsHandler = NMSAdapter.getHandler();
-            for (byte[] entityNBT : this.serializedStackedEntities) {
-                LivingEntity entity = nmsHandler.getNBTAsEntity(thisEntity.getType(), thisEntity.getLocation(), entityNBT);
-                if (entity == null)
-                    continue;
-
-                entity.setFireTicks(fireTicks);
-                Collection<ItemStack> entityLoot = StackerUtils.getEntityLoot(entity, thisEntity.getKiller(), thisEntity.getLocation());
-                if (callEvents) {
-                    EntityDeathEvent deathEvent = new AsyncEntityDeathEvent(entity, new ArrayList<>(entityLoot), droppedExp);
-                    Bukkit.getPluginManager().callEvent(deathEvent);
-                    totalExp += deathEvent.getDroppedExp();
-                    loot.addAll(deathEvent.getDrops());
-                } else {
-                    loot.addAll(entityLoot);
-                    totalExp += droppedExp;
+            if (callEvents) {
+                // Every entity needs its own death event, so the loot has to be rolled for each one
+                for (StackedEntityDataStorage.Run run : this.stackedEntityDataStorage.getRuns()) {
+                    // Every entity in a run shares the same data, so only one entity needs to be created for it
+                    LivingEntity entity = nmsHandler.getNBTAsEntity(thisEntity.getType(), thisEntity.getLocation(), run.getData());
+                    if (entity == null)
+                        continue;
+
+                    entity.setFireTicks(fireTicks);
+                    for (int i = 0; i < run.getCount(); i++) {
+                        Collection<ItemStack> entityLoot = StackerUtils.getEntityLoot(entity, thisEntity.getKiller(), thisEntity.getLocation());
+                        EntityDeathEvent deathEvent = new AsyncEntityDeathEvent(entity, new ArrayList<>(entityLoot), droppedExp);
+                        Bukkit.getPluginManager().callEvent(deathEvent);
+                        totalExp += deathEvent.getDroppedExp();
+                        loot.addAll(deathEvent.getDrops());
+                    }
+                }
+            } else {
+                // Group the entities by their data, identical entities have identical loot tables
+                Map<byte[], Integer> templateAmounts = new IdentityHashMap<>();
+                for (StackedEntityDataStorage.Run run : this.stackedEntityDataStorage.getRuns())
+                    templateAmounts.merge(run.getData(), run.getCount(), Integer::sum);
+
+                int maxRolls = Setting.ENTITY_LOOT_APPROXIMATION_AMOUNT.getInt();
+                for (Map.Entry<byte[], Integer> entry : templateAmounts.entrySet()) {
+                    LivingEntity entity = nmsHandler.getNBTAsEntity(thisEntity.getType(), thisEntity.getLocation(), entry.getKey());
+                    if (entity == null)
+                        continue;
+
+                    entity.setFireTicks(fireTicks);
+                    loot.addAll(StackerUtils.getEntityLoot(entity, thisEntity.getKiller(), thisEntity.getLocation(), entry.getValue(), maxRolls));
+                    totalExp += droppedExp * entry.getValue();
                 }
             }
 
@@ -214,7 +275,8 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
      * @return true if this entity should stay stacked, otherwise false
      */
     public boolean shouldStayStacked() {
-        if (this.entity == null || this.serializedStackedEntities.isEmpty())
+        byte[] nextEntityNBT = this.stackedEntityDataStorage.peekFirst();
+        if (this.entity == null || nextEntityNBT == null)
             return true;
 
         // Ender dragons call an EnderDragonChangePhaseEvent upon entity construction
@@ -222,14 +284,22 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
         if (this.entity instanceof EnderDragon)
             return true;
 
-        LivingEntity entity = NMSAdapter.getHandler().getNBTAsEntity(this.entity.getType(), this.entity.getLocation(), this.serializedStackedEntities.get(0));
-        StackedEntity stackedEntity = new StackedEntity(entity, Collections.emptyList());
+        // Decoding the next entity is expensive, reuse it until a different entity is at the front of the stack
+        // Identical nbt data is shared between entities, so comparing the arrays by identity is enough
+        StackedEntity stackedEntity = this.unstackCheckStack;
+        if (stackedEntity == null || this.unstackCheckNBT != nextEntityNBT) {
+            LivingEntity entity = NMSAdapter.getHandler().getNBTAsEntity(this.entity.getType(), this.entity.getLocation(), nextEntityNBT);
+            stackedEntity = new StackedEntity(entity);
+            this.unstackCheckNBT = nextEntityNBT;
+            this.unstackCheckStack = stackedEntity;
+        }
+
         return this.stackSettings.testCanStackWith(this, stackedEntity, true);
     }
 
     @Override
     public int getStackSize() {
-        return this.serializedStackedEntities.size() + 1;
+        return this.stackedEntityDataStorage.size() + 1;
     }
 
     @Override
@@ -255,11 +325,9 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
         if (this.getStackSize() > 1 || Setting.ENTITY_DISPLAY_TAGS_SINGLE.getBoolean()) {
             String displayString;
             if (customName != null && Setting.ENTITY_DISPLAY_TAGS_CUSTOM_NAME.getBoolean()) {
-                displayString = RoseStacker.getInstance().getManager(LocaleManager.class).getLocaleMessage("entity-stack-display-custom-name", StringPlaceholders.builder("amount", this.getStackSize())
-                        .addPlaceholder("name", customName).build());
+                displayString = RoseStacker.getInstance().getManager(LocaleManager.class).getStackDisplayMessage("entity-stack-display-custom-name", this.getStackSize(), customName);
             } else {
-                displayString = RoseStacker.getInstance().getManager(LocaleManager.class).getLocaleMessage("entity-stack-display", StringPlaceholders.builder("amount", this.getStackSize())
-                        .addPlaceholder("name", this.stackSettings.getDisplayName()).build());
+                displayString = RoseStacker.getInstance().getManager(LocaleManager.class).getStackDisplayMessage("entity-stack-display", this.getStackSize(), this.stackSettings.getDisplayName());
             }
 
             this.displayNameVisible = !Setting.ENTITY_DISPLAY_TAGS_HOVER.getBoolean();
@@ -281,9 +349,20 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
     public void updateDisplay() {
         this.displayName = null;
         String displayName = this.getDisplayName();
-        NMSHandler nmsHandler = NMSAdapter.getHandler();
+        StackingThread stackingThread = RoseStacker.getInstance().getManager(StackManager.class).getStackingThread(this.entity.getWorld());
+        if (stackingThread == null) {
+            NMSHandler nmsHandler = NMSAdapter.getHandler();
+            for (Player player : this.getPlayersInVisibleRange())
+                nmsHandler.updateEntityNameTagForPlayer(player, this.entity, displayName, this.displayNameVisible);
+            return;
+        }
+
+        // Send the new nametag with everything else that changed this tick
         for (Player player : this.getPlayersInVisibleRange())
-            nmsHandler.updateEntityNameTagForPlayer(player, this.entity, displayName, this.displayNameVisible);
+            stackingThread.queueNametagUpdate(player, new NametagUpdate(this.entity, displayName, this.displayNameVisible));
+
+        // The dynamic nametags need to be sent again since this ignored them
+        stackingThread.invalidateNametag(this.entity);
     }
 
     @Override
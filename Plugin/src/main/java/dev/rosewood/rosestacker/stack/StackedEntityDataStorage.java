@@ -0,0 +1,392 @@
+package dev.rosewood.rosestacker.stack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the serialized nbt data of the entities inside of an entity stack.
+ * Identical nbt data is only stored once as a template, and consecutive entities sharing a template are
+ * stored as a single run with a count, so memory usage scales with the variety of a stack rather than its size.
+ * <p>
+ * Runs are kept in a ring buffer so adding and removing at either end is O(1) without allocating per entity.
+ * Writers are serialized with a lock, while size checks and snapshots can be read from any thread without it.
+ * Snapshots are immutable and cached until the next write.
+ */
+public class StackedEntityDataStorage {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final Map<TemplateKey, Template> templates;
+    private Template[] runTemplates;
+    private int[] runCounts;
+    private int head;
+    private int runCount;
+
+    private volatile int size;
+    private volatile byte[] first;
+    private volatile Snapshot snapshot;
+
+    public StackedEntityDataStorage() {
+        this.templates = new HashMap<>();
+        this.runTemplates = new Template[INITIAL_CAPACITY];
+        this.runCounts = new int[INITIAL_CAPACITY];
+        this.head = 0;
+        this.runCount = 0;
+        this.size = 0;
+        this.snapshot = Snapshot.EMPTY;
+    }
+
+    public StackedEntityDataStorage(List<byte[]> nbtData) {
+        this();
+        this.addAllLast(nbtData);
+    }
+
+    /**
+     * Adds entity nbt data to the front of the stack
+     *
+     * @param nbtData The nbt data to add
+     */
+    public synchronized void addFirst(byte[] nbtData) {
+        this.addRunFirst(this.intern(nbtData), 1);
+        this.onWrite();
+    }
+
+    /**
+     * Adds entity nbt data to the back of the stack
+     *
+     * @param nbtData The nbt data to add
+     */
+    public synchronized void addLast(byte[] nbtData) {
+        this.addRunLast(this.intern(nbtData), 1);
+        this.onWrite();
+    }
+
+    /**
+     * Adds a run of identical entity nbt data to the back of the stack
+     *
+     * @param nbtData The nbt data to add
+     * @param count The number of times to add it
+     */
+    public synchronized void addLast(byte[] nbtData, int count) {
+        if (count <= 0)
+            return;
+
+        this.addRunLast(this.intern(nbtData), count);
+        this.onWrite();
+    }
+
+    /**
+     * Adds multiple entity nbt data to the front of the stack, keeping their order
+     *
+     * @param nbtData The nbt data to add
+     */
+    public synchronized void addAllFirst(List<byte[]> nbtData) {
+        for (int i = nbtData.size() - 1; i >= 0; i--)
+            this.addRunFirst(this.intern(nbtData.get(i)), 1);
+        this.onWrite();
+    }
+
+    /**
+     * Adds multiple entity nbt data to the back of the stack, keeping their order
+     *
+     * @param nbtData The nbt data to add
+     */
+    public synchronized void addAllLast(List<byte[]> nbtData) {
+        for (byte[] data : nbtData)
+            this.addRunLast(this.intern(data), 1);
+        this.onWrite();
+    }
+
+    /**
+     * Adds all entity nbt data from another storage to the front of this one, keeping their order
+     *
+     * @param other The storage to copy from
+     */
+    public void addAllFirst(StackedEntityDataStorage other) {
+        List<Run> otherRuns = other.getRuns();
+        synchronized (this) {
+            for (int i = otherRuns.size() - 1; i >= 0; i--) {
+                Run run = otherRuns.get(i);
+                this.addRunFirst(this.intern(run.getData()), run.getCount());
+            }
+            this.onWrite();
+        }
+    }
+
+    /**
+     * Adds all entity nbt data from another storage to the back of this one, keeping their order
+     *
+     * @param other The storage to copy from
+     */
+    public void addAllLast(StackedEntityDataStorage other) {
+        List<Run> otherRuns = other.getRuns();
+        synchronized (this) {
+            for (Run run : otherRuns)
+                this.addRunLast(this.intern(run.getData()), run.getCount());
+            this.onWrite();
+        }
+    }
+
+    /**
+     * Removes and returns the entity nbt data at the front of the stack
+     *
+     * @return The nbt data that was removed
+     * @throws IllegalStateException if the storage is empty
+     */
+    public synchronized byte[] removeFirst() {
+        if (this.runCount == 0)
+            throw new IllegalStateException("No entity data to remove");
+
+        Template template = this.runTemplates[this.head];
+        if (--this.runCounts[this.head] == 0) {
+            this.runTemplates[this.head] = null;
+            this.head = (this.head + 1) % this.runTemplates.length;
+            this.runCount--;
+        }
+
+        this.size--;
+        this.release(template, 1);
+        this.onWrite();
+        return template.data;
+    }
+
+    /**
+     * @return the entity nbt data at the front of the stack, or null if the storage is empty
+     */
+    public byte[] peekFirst() {
+        return this.first;
+    }
+
+    /**
+     * @return the number of entities stored
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true if there are no entities stored, otherwise false
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @return the number of distinct nbt templates stored
+     */
+    public synchronized int getTemplateCount() {
+        return this.templates.size();
+    }
+
+    /**
+     * Gets an immutable snapshot of the runs in this storage, in order from the front of the stack to the back.
+     * The nbt data arrays are shared and must not be modified.
+     *
+     * @return the runs in this storage
+     */
+    public List<Run> getRuns() {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot != null)
+            return snapshot.runs;
+
+        synchronized (this) {
+            if (this.snapshot == null) {
+                List<Run> runs = new ArrayList<>(this.runCount);
+                for (int i = 0; i < this.runCount; i++) {
+                    int index = (this.head + i) % this.runTemplates.length;
+                    runs.add(new Run(this.runTemplates[index].data, this.runCounts[index]));
+                }
+                this.snapshot = new Snapshot(Collections.unmodifiableList(runs), this.size);
+            }
+            return this.snapshot.runs;
+        }
+    }
+
+    /**
+     * Gets an immutable snapshot of every entity's nbt data in this storage, in order from the front of the stack to the back.
+     * Entities sharing a template share the same array, which must not be modified.
+     *
+     * @return a list of every entity's nbt data
+     */
+    public List<byte[]> getAll() {
+        List<Run> runs = this.getRuns();
+        Snapshot snapshot = this.snapshot;
+        if (snapshot != null && snapshot.runs == runs && snapshot.all != null)
+            return snapshot.all;
+
+        int totalCount = 0;
+        for (Run run : runs)
+            totalCount += run.count;
+
+        List<byte[]> nbtData = new ArrayList<>(totalCount);
+        for (Run run : runs)
+            nbtData.addAll(Collections.nCopies(run.count, run.data));
+        List<byte[]> all = Collections.unmodifiableList(nbtData);
+
+        // Only cache the expanded list if nothing was written while it was being built
+        if (snapshot != null && snapshot.runs == runs)
+            snapshot.all = all;
+        return all;
+    }
+
+    private void addRunFirst(Template template, int count) {
+        if (this.runCount > 0 && this.runTemplates[this.head] == template) {
+            this.runCounts[this.head] += count;
+        } else {
+            this.ensureCapacity();
+            this.head = (this.head - 1 + this.runTemplates.length) % this.runTemplates.length;
+            this.runTemplates[this.head] = template;
+            this.runCounts[this.head] = count;
+            this.runCount++;
+        }
+        template.references += count;
+        this.size += count;
+    }
+
+    private void addRunLast(Template template, int count) {
+        int last = (this.head + this.runCount - 1) % this.runTemplates.length;
+        if (this.runCount > 0 && this.runTemplates[last] == template) {
+            this.runCounts[last] += count;
+        } else {
+            this.ensureCapacity();
+            int tail = (this.head + this.runCount) % this.runTemplates.length;
+            this.runTemplates[tail] = template;
+            this.runCounts[tail] = count;
+            this.runCount++;
+        }
+        template.references += count;
+        this.size += count;
+    }
+
+    private void ensureCapacity() {
+        if (this.runCount < this.runTemplates.length)
+            return;
+
+        int capacity = this.runTemplates.length * 2;
+        Template[] runTemplates = new Template[capacity];
+        int[] runCounts = new int[capacity];
+        for (int i = 0; i < this.runCount; i++) {
+            int index = (this.head + i) % this.runTemplates.length;
+            runTemplates[i] = this.runTemplates[index];
+            runCounts[i] = this.runCounts[index];
+        }
+
+        this.runTemplates = runTemplates;
+        this.runCounts = runCounts;
+        this.head = 0;
+    }
+
+    /**
+     * Updates the values that are read without the lock, must be called at the end of every write
+     */
+    private void onWrite() {
+        this.first = this.runCount == 0 ? null : this.runTemplates[this.head].data;
+        this.snapshot = this.runCount == 0 ? Snapshot.EMPTY : null;
+    }
+
+    /**
+     * Gets the shared template for the given nbt data, registering it if it is new.
+     * Templates are reference counted by the number of entities using them,
+     * the count is increased by the callers through {@link #addRunFirst} and {@link #addRunLast}.
+     *
+     * @param data The nbt data
+     * @return the shared template
+     */
+    private Template intern(byte[] data) {
+        return this.templates.computeIfAbsent(new TemplateKey(data), Template::new);
+    }
+
+    private void release(Template template, int references) {
+        if ((template.references -= references) <= 0)
+            this.templates.remove(template.key);
+    }
+
+    /**
+     * Consecutive entities in the stack that share the same nbt data
+     */
+    public static class Run {
+
+        private final byte[] data;
+        private final int count;
+
+        private Run(byte[] data, int count) {
+            this.data = data;
+            this.count = count;
+        }
+
+        /**
+         * @return the nbt data shared by the entities in this run
+         */
+        public byte[] getData() {
+            return this.data;
+        }
+
+        /**
+         * @return the number of entities in this run
+         */
+        public int getCount() {
+            return this.count;
+        }
+
+    }
+
+    private static class Snapshot {
+
+        private static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), 0);
+
+        private final List<Run> runs;
+        private volatile List<byte[]> all;
+
+        private Snapshot(List<Run> runs, int size) {
+            this.runs = runs;
+            this.all = size == 0 ? Collections.emptyList() : null;
+        }
+
+    }
+
+    private static class Template {
+
+        private final TemplateKey key;
+        private final byte[] data;
+        private int references;
+
+        private Template(TemplateKey key) {
+            this.key = key;
+            this.data = key.data;
+            this.references = 0;
+        }
+
+    }
+
+    private static class TemplateKey {
+
+        private final byte[] data;
+        private final int hash;
+
+        private TemplateKey(byte[] data) {
+            this.data = data;
+            this.hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof TemplateKey))
+                return false;
+            TemplateKey other = (TemplateKey) o;
+            return this.hash == other.hash && Arrays.equals(this.data, other.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+    }
+
+}
@@ -55,11 +55,13 @@ public class StackedItem extends Stack<ItemStackSettings> implements Comparable<
 
     public void increaseStackSize(int amount) {
         this.size += amount;
+        this.markDirty();
         this.updateDisplay();
     }
 
     public void setStackSize(int size) {
         this.size = size;
+        this.markDirty();
         this.updateDisplay();
     }
 
@@ -102,8 +104,7 @@ public class StackedItem extends Stack<ItemStackSettings> implements Comparable<
 
         String displayString;
         if (this.getStackSize() > 1) {
-            displayString = RoseStacker.getInstance().getManager(LocaleManager.class).getLocaleMessage("item-stack-display", StringPlaceholders.builder("amount", this.getStackSize())
-                    .addPlaceholder("name", displayName).build());
+            displayString = RoseStacker.getInstance().getManager(LocaleManager.class).getStackDisplayMessage("item-stack-display", this.getStackSize(), displayName);
         } else {
             displayString = RoseStacker.getInstance().getManager(LocaleManager.class).getLocaleMessage("item-stack-display-single", StringPlaceholders.single("name", displayName));
         }
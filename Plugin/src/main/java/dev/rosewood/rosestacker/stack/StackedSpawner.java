@@ -1,11 +1,11 @@
 package dev.rosewood.rosestacker.stack;
 
-import dev.rosewood.rosegarden.utils.StringPlaceholders;
 import dev.rosewood.rosestacker.RoseStacker;
 import dev.rosewood.rosestacker.gui.StackedSpawnerGui;
 import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
 import dev.rosewood.rosestacker.manager.HologramManager;
 import dev.rosewood.rosestacker.manager.LocaleManager;
+import dev.rosewood.rosestacker.manager.SpawnerSpawnManager;
 import dev.rosewood.rosestacker.manager.StackSettingManager;
 import dev.rosewood.rosestacker.stack.settings.SpawnerStackSettings;
 import dev.rosewood.rosestacker.stack.settings.spawner.ConditionTag;
@@ -14,6 +14,7 @@ import java.util.List;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.block.BlockState;
 import org.bukkit.block.CreatureSpawner;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
@@ -82,12 +83,14 @@ public class StackedSpawner extends Stack<SpawnerStackSettings> {
 
     public void increaseStackSize(int amount) {
         this.size += amount;
+        this.markDirty();
         this.updateSpawnerProperties();
         this.updateDisplay();
     }
 
     public void setStackSize(int size) {
         this.size = size;
+        this.markDirty();
         this.updateSpawnerProperties();
         this.updateDisplay();
     }
@@ -127,8 +130,7 @@ public class StackedSpawner extends Stack<SpawnerStackSettings> {
             return;
         }
 
-        String displayString = RoseStacker.getInstance().getManager(LocaleManager.class).getLocaleMessage("spawner-stack-display", StringPlaceholders.builder("amount", this.getStackSize())
-                .addPlaceholder("name", this.stackSettings.getDisplayName()).build());
+        String displayString = RoseStacker.getInstance().getManager(LocaleManager.class).getStackDisplayMessage("spawner-stack-display", this.getStackSize(), this.stackSettings.getDisplayName());
 
         hologramManager.createOrUpdateHologram(location, displayString);
     }
@@ -156,6 +158,9 @@ public class StackedSpawner extends Stack<SpawnerStackSettings> {
         this.spawner.setSpawnRange(this.stackSettings.getSpawnRange());
         this.spawner.setDelay(delay);
         this.spawner.update(false, false);
+
+        // The delay may have been reset, make sure it gets checked again
+        RoseStacker.getInstance().getManager(SpawnerSpawnManager.class).scheduleSpawner(this);
     }
 
     public void setPowered(boolean powered) {
@@ -174,4 +179,16 @@ public class StackedSpawner extends Stack<SpawnerStackSettings> {
         return this.lastDelay;
     }
 
+    /**
+     * Gets the current delay of the spawner from the block, the last delay is only updated when the spawner is checked
+     *
+     * @return the current delay of the spawner, or the last delay if the block is no longer a spawner
+     */
+    public int getDelay() {
+        BlockState blockState = this.spawner.getBlock().getState();
+        if (blockState instanceof CreatureSpawner)
+            return ((CreatureSpawner) blockState).getDelay();
+        return this.lastDelay;
+    }
+
 }
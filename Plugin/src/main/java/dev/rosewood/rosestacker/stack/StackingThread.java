@@ -13,13 +13,20 @@ import dev.rosewood.rosestacker.manager.DataManager;
 import dev.rosewood.rosestacker.manager.StackManager;
 import dev.rosewood.rosestacker.nms.NMSAdapter;
 import dev.rosewood.rosestacker.nms.NMSHandler;
+import dev.rosewood.rosestacker.nms.NametagUpdate;
 import dev.rosewood.rosestacker.stack.settings.EntityStackSettings;
 import dev.rosewood.rosestacker.stack.settings.ItemStackSettings;
+import dev.rosewood.rosestacker.utils.BlockOcclusionCache;
+import dev.rosewood.rosestacker.utils.LongHashSet;
 import dev.rosewood.rosestacker.utils.StackerUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -27,6 +34,9 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
@@ -49,6 +59,7 @@ import org.bukkit.scheduler.BukkitTask;
 public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
     private final static int CLEANUP_TIMER_TARGET = 10;
+    private final static int PENDING_LOAD_ORDER_REFRESH_TICKS = 20;
 
     private final RosePlugin rosePlugin;
     private final StackManager stackManager;
@@ -58,15 +69,32 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
     private final BukkitTask stackTask;
     private final BukkitTask nametagTask;
     private final BukkitTask pendingChunkTask;
-    private final Set<Chunk> pendingLoadChunks;
-    private final Set<Chunk> pendingUnloadChunks;
+    private final BukkitTask nametagFlushTask;
+    private final LongHashSet pendingLoadChunkKeys;
+    private final LongHashSet pendingUnloadChunkKeys;
+    private final LongHashSet loadedChunkKeys;
+    private final Map<Long, Integer> loadingChunkKeys;
 
     private final Map<UUID, StackedEntity> stackedEntities;
     private final Map<UUID, StackedItem> stackedItems;
     private final Map<Block, StackedBlock> stackedBlocks;
     private final Map<Block, StackedSpawner> stackedSpawners;
 
+    private final StackGrid<EntityType, StackedEntity> entityGrid;
+    private final StackGrid<Material, StackedItem> itemGrid;
+    private final StackGrid<Material, StackedBlock> blockGrid;
+    private final StackGrid<EntityType, StackedSpawner> spawnerGrid;
+    private final ChunkStackCache chunkStackCache;
+    private final NametagTracker nametagTracker;
+    private final Map<Player, Map<Integer, NametagUpdate>> pendingNametagUpdates;
+    private final ThreadLocal<BlockOcclusionCache> stackingOcclusionCaches;
+    private final BlockOcclusionCache nametagOcclusionCache;
+
     private int cleanupTimer;
+    private long[] pendingLoadOrder;
+    private int pendingLoadOrderIndex;
+    private int pendingLoadOrderAge;
+    private volatile int stackingPass;
 
     public StackingThread(RosePlugin rosePlugin, StackManager stackManager, World targetWorld) {
         this.rosePlugin = rosePlugin;
@@ -76,19 +104,38 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
         this.stackTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.rosePlugin, this, 5L, Setting.STACK_FREQUENCY.getLong());
         this.nametagTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.rosePlugin, this::processNametags, 5L, Setting.NAMETAG_UPDATE_FREQUENCY.getLong());
-        this.pendingChunkTask = Bukkit.getScheduler().runTaskTimer(this.rosePlugin, this::processPendingChunks, 0L, 3L);
-        this.pendingLoadChunks = new HashSet<>();
-        this.pendingUnloadChunks = new HashSet<>();
+        this.pendingChunkTask = Bukkit.getScheduler().runTaskTimer(this.rosePlugin, this::processPendingChunks, 0L, 1L);
+        this.nametagFlushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.rosePlugin, this::flushNametagUpdates, 1L, 1L);
+        this.pendingLoadChunkKeys = new LongHashSet();
+        this.pendingUnloadChunkKeys = new LongHashSet();
+        this.loadedChunkKeys = new LongHashSet();
+        this.loadingChunkKeys = new HashMap<>();
 
         this.stackedEntities = new ConcurrentHashMap<>();
         this.stackedItems = new ConcurrentHashMap<>();
         this.stackedBlocks = new ConcurrentHashMap<>();
         this.stackedSpawners = new ConcurrentHashMap<>();
 
+        this.entityGrid = new StackGrid<>(x -> x.getEntity().getType());
+        this.itemGrid = new StackGrid<>(x -> x.getItem().getItemStack().getType());
+        this.blockGrid = new StackGrid<>(x -> x.getBlock().getType());
+        this.spawnerGrid = new StackGrid<>(x -> x.getSpawner().getSpawnedType());
+        this.chunkStackCache = new ChunkStackCache(
+                Setting.DATA_CHUNK_CACHE_SIZE.getInt(),
+                Setting.DATA_CHUNK_CACHE_MAX_AGE.getLong() * 1000,
+                Setting.DATA_CHUNK_CACHE_MAX_MEMORY.getLong() * 1024 * 1024
+        );
+
+        this.nametagTracker = new NametagTracker();
+        this.pendingNametagUpdates = new ConcurrentHashMap<>();
+        this.stackingOcclusionCaches = ThreadLocal.withInitial(BlockOcclusionCache::new);
+        this.nametagOcclusionCache = new BlockOcclusionCache();
+
         this.cleanupTimer = 0;
 
         // Load all existing stacks in the target world
-        this.pendingLoadChunks.addAll(Arrays.asList(this.targetWorld.getLoadedChunks()));
+        for (Chunk chunk : this.targetWorld.getLoadedChunks())
+            this.pendingLoadChunkKeys.add(StackerUtils.getChunkKey(chunk.getX(), chunk.getZ()));
     }
 
     @Override
@@ -99,8 +146,12 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
         if (!entityStackingEnabled && !itemStackingEnabled)
             return;
 
+        // Blocks looked up for line of sight checks are only remembered for a single pass
+        this.stackingPass++;
+
         // Auto stack items
         if (itemStackingEnabled) {
+            List<StackedItem> validItems = new ArrayList<>();
             for (StackedItem stackedItem : new HashSet<>(this.stackedItems.values())) {
                 Item item = stackedItem.getItem();
                 if (item == null || !item.isValid()) {
@@ -108,12 +159,16 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
                     continue;
                 }
 
-                this.tryStackItem(stackedItem);
+                validItems.add(stackedItem);
             }
+
+            this.itemGrid.refresh(validItems);
+            this.tryStackAll(validItems, Setting.ITEM_MERGE_RADIUS.getDouble(), this::tryStackItem);
         }
 
         // Auto stack entities
         if (entityStackingEnabled) {
+            List<StackedEntity> validEntities = new ArrayList<>();
             for (StackedEntity stackedEntity : new HashSet<>(this.stackedEntities.values())) {
                 LivingEntity livingEntity = stackedEntity.getEntity();
                 if (livingEntity == null || !livingEntity.isValid()) {
@@ -121,9 +176,18 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
                     continue;
                 }
 
-                this.tryStackEntity(stackedEntity);
+                validEntities.add(stackedEntity);
             }
 
+            this.entityGrid.refresh(validEntities);
+            validEntities.forEach(StackedEntity::updateCompatibilityKey);
+
+            double maxMergeRadius = 0;
+            for (StackedEntity stackedEntity : validEntities)
+                if (stackedEntity.getStackSettings() != null)
+                    maxMergeRadius = Math.max(maxMergeRadius, stackedEntity.getStackSettings().getMergeRadius());
+            this.tryStackAll(validEntities, maxMergeRadius, this::tryStackEntity);
+
             // Auto unstack entities
             for (StackedEntity stackedEntity : new HashSet<>(this.stackedEntities.values()))
                 if (!stackedEntity.shouldStayStacked())
@@ -134,8 +198,9 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
         this.cleanupTimer++;
         if (this.cleanupTimer >= CLEANUP_TIMER_TARGET) {
             for (Entity entity : this.targetWorld.getEntities()) {
-                // Don't create stacks from chunks we are about to load
-                if (this.pendingLoadChunks.contains(entity.getLocation().getChunk()))
+                // Don't create stacks from chunks we are about to load or are still loading
+                long chunkKey = StackerUtils.getChunkKey(entity.getLocation());
+                if (this.pendingLoadChunkKeys.contains(chunkKey) || this.isChunkLoading(chunkKey))
                     continue;
 
                 if (entityStackingEnabled && entity instanceof LivingEntity) {
@@ -152,6 +217,43 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
         }
     }
 
+    /**
+     * Tries to stack all of the given stacks, in parallel if a stacking pool is available.
+     * The stacks are split into square regions that are more than twice the merge radius wide, and the regions are
+     * processed in four checkerboard phases. Two regions processed at the same time are then always far enough apart
+     * that they can never reach the same stacks, and stacks on region borders are always resolved in the same order.
+     *
+     * @param stacks The stacks to try to stack
+     * @param mergeRadius The largest merge radius of the stacks
+     * @param tryStack The function to try to stack a single stack
+     * @param <T> The stack type
+     */
+    private <T extends Stack<?>> void tryStackAll(List<T> stacks, double mergeRadius, Consumer<T> tryStack) {
+        ForkJoinPool stackingPool = this.stackManager.getStackingPool();
+        if (stackingPool == null || stacks.size() < 2) {
+            stacks.forEach(tryStack);
+            return;
+        }
+
+        // Leave an extra chunk of space for stacks that move while the regions are being processed
+        int regionChunks = (int) Math.ceil(mergeRadius * 2 / 16) + 1;
+        List<Map<Long, List<T>>> phases = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            phases.add(new HashMap<>());
+
+        for (T stack : stacks) {
+            Location location = stack.getLocation();
+            int regionX = Math.floorDiv(location.getBlockX() >> 4, regionChunks);
+            int regionZ = Math.floorDiv(location.getBlockZ() >> 4, regionChunks);
+            int phase = (regionX & 1) | ((regionZ & 1) << 1);
+            phases.get(phase).computeIfAbsent(StackerUtils.getChunkKey(regionX, regionZ), x -> new ArrayList<>()).add(stack);
+        }
+
+        for (Map<Long, List<T>> regions : phases)
+            if (!regions.isEmpty())
+                stackingPool.submit(() -> regions.values().parallelStream().forEach(region -> region.forEach(tryStack))).join();
+    }
+
     private void processNametags() {
         // Handle dynamic stack tags
         boolean dynamicEntityTags = Setting.ENTITY_DISPLAY_TAGS.getBoolean() && Setting.ENTITY_DYNAMIC_TAG_VIEW_RANGE_ENABLED.getBoolean();
@@ -173,69 +275,173 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
         boolean itemDynamicWallDetection = Setting.ITEM_DYNAMIC_TAG_VIEW_RANGE_WALL_DETECTION_ENABLED.getBoolean();
         boolean blockDynamicWallDetection = Setting.BLOCK_DYNAMIC_TAG_VIEW_RANGE_WALL_DETECTION_ENABLED.getBoolean();
 
-        NMSHandler nmsHandler = NMSAdapter.getHandler();
         Set<EntityType> validEntities = StackerUtils.getStackableEntityTypes();
-        for (Player player : this.targetWorld.getPlayers()) {
+        this.nametagOcclusionCache.clear();
+        int chunkRadius = (int) Math.ceil(Math.sqrt(StackerUtils.ASSUMED_ENTITY_VISIBILITY_RANGE) / 16);
+        List<Player> players = this.targetWorld.getPlayers();
+
+        // Only look at the stacks in the chunks around each player, and only send the nametags that changed for them
+        this.nametagTracker.nextPass();
+        for (Player player : players) {
             if (player.getWorld() != this.targetWorld)
                 continue;
 
+            Location playerLocation = player.getLocation();
             ItemStack itemStack = player.getInventory().getItemInMainHand();
             boolean displayStackingToolParticles = StackerUtils.isStackingTool(itemStack);
 
-            for (Entity entity : this.targetWorld.getEntities()) {
-                if (entity.getType() == EntityType.PLAYER)
-                    continue;
+            int playerChunkX = playerLocation.getBlockX() >> 4;
+            int playerChunkZ = playerLocation.getBlockZ() >> 4;
+            for (int chunkX = playerChunkX - chunkRadius; chunkX <= playerChunkX + chunkRadius; chunkX++) {
+                for (int chunkZ = playerChunkZ - chunkRadius; chunkZ <= playerChunkZ + chunkRadius; chunkZ++) {
+                    long chunkKey = StackerUtils.getChunkKey(chunkX, chunkZ);
+
+                    if (dynamicEntityTags) {
+                        for (StackedEntity stackedEntity : this.entityGrid.getAllInChunk(chunkKey)) {
+                            LivingEntity entity = stackedEntity.getEntity();
+                            if (entity == null || !validEntities.contains(entity.getType()))
+                                continue;
+
+                            // Skipped entities are forgotten by the tracker, the client forgets them too once they leave tracking range
+                            double distanceSqrd = this.getDistanceSquared(playerLocation, entity);
+                            if (distanceSqrd > StackerUtils.getEntityTrackingRangeSquared(entity))
+                                continue;
+
+                            boolean visible = distanceSqrd < entityDynamicViewRangeSqrd;
+                            if (visible && entityDynamicWallDetection)
+                                visible = StackerUtils.hasLineOfSight(player, entity, true, this.nametagOcclusionCache);
+
+                            String displayName = stackedEntity.getDisplayName();
+                            boolean displayNameVisible = stackedEntity.isDisplayNameVisible() && visible;
+                            if (this.nametagTracker.update(player, entity, displayName, displayNameVisible))
+                                this.queueNametagUpdate(player, new NametagUpdate(entity, displayName, displayNameVisible));
+
+                            // Spawn particles for holding the stacking tool
+                            if (visible && displayStackingToolParticles) {
+                                Location location = entity.getLocation().add(0, entity.getEyeHeight(true) + 0.75, 0);
+                                DustOptions dustOptions;
+                                if (StackerUtils.isUnstackable(entity)) {
+                                    dustOptions = StackerUtils.UNSTACKABLE_DUST_OPTIONS;
+                                } else {
+                                    dustOptions = StackerUtils.STACKABLE_DUST_OPTIONS;
+                                }
+                                player.spawnParticle(Particle.REDSTONE, location, 1, 0.0, 0.0, 0.0, 0.0, dustOptions);
+                            }
+                        }
+                    }
 
-                if ((entity.getType() == EntityType.DROPPED_ITEM || entity.getType() == EntityType.ARMOR_STAND)
-                        && (entity.getCustomName() == null || !entity.isCustomNameVisible()))
-                    continue;
+                    if (dynamicItemTags) {
+                        for (StackedItem stackedItem : this.itemGrid.getAllInChunk(chunkKey)) {
+                            Item item = stackedItem.getItem();
+                            if (item != null)
+                                this.updateNametagVisibility(player, playerLocation, item, itemDynamicViewRangeSqrd, itemDynamicWallDetection);
+                        }
+                    }
 
-                double distanceSqrd;
-                try { // The locations can end up comparing cross-world if the player/entity switches worlds mid-loop due to being async
-                    distanceSqrd = player.getLocation().distanceSquared(entity.getLocation());
-                } catch (Exception e) {
-                    continue;
+                    // Block and spawner tags are armor stands owned by the hologram plugin, so look for them in chunks that have any of those stacks
+                    if (dynamicBlockTags && (this.blockGrid.hasAnyInChunk(chunkKey) || this.spawnerGrid.hasAnyInChunk(chunkKey)) && this.targetWorld.isChunkLoaded(chunkX, chunkZ)) {
+                        for (Entity entity : this.targetWorld.getChunkAt(chunkX, chunkZ).getEntities())
+                            if (entity.getType() == EntityType.ARMOR_STAND)
+                                this.updateNametagVisibility(player, playerLocation, entity, blockSpawnerDynamicViewRangeSqrd, blockDynamicWallDetection);
+                    }
                 }
+            }
+        }
+        this.nametagTracker.cleanup(players);
+    }
 
-                if (distanceSqrd > StackerUtils.ASSUMED_ENTITY_VISIBILITY_RANGE)
-                    continue;
+    /**
+     * Shows or hides the custom name of an item or armor stand for a player depending on their distance and line of sight
+     *
+     * @param player The player viewing the entity
+     * @param playerLocation The location of the player
+     * @param entity The entity with the custom name
+     * @param viewRangeSqrd The squared distance the name is visible from
+     * @param wallDetection true if the name should be hidden when the player can't see the entity, otherwise false
+     */
+    private void updateNametagVisibility(Player player, Location playerLocation, Entity entity, double viewRangeSqrd, boolean wallDetection) {
+        String customName = entity.getCustomName();
+        if (customName == null || !entity.isCustomNameVisible())
+            return;
 
-                boolean visible;
-                if (dynamicEntityTags && (validEntities.contains(entity.getType()))) {
-                    visible = distanceSqrd < entityDynamicViewRangeSqrd;
-                    if (entityDynamicWallDetection)
-                        visible &= StackerUtils.hasLineOfSight(player, entity, 0.75, true);
-                } else if (dynamicItemTags && entity.getType() == EntityType.DROPPED_ITEM) {
-                    visible = distanceSqrd < itemDynamicViewRangeSqrd;
-                    if (itemDynamicWallDetection)
-                        visible &= StackerUtils.hasLineOfSight(player, entity, 0.75, true);
-                } else if (dynamicBlockTags && entity.getType() == EntityType.ARMOR_STAND) {
-                    visible = distanceSqrd < blockSpawnerDynamicViewRangeSqrd;
-                    if (blockDynamicWallDetection)
-                        visible &= StackerUtils.hasLineOfSight(player, entity, 0.75, true);
-                } else continue;
-
-                if (entity.getType() != EntityType.ARMOR_STAND && entity instanceof LivingEntity) {
-                    LivingEntity livingEntity = (LivingEntity) entity;
-                    StackedEntity stackedEntity = this.getStackedEntity(livingEntity);
-                    if (stackedEntity != null)
-                        nmsHandler.updateEntityNameTagForPlayer(player, entity, stackedEntity.getDisplayName(), stackedEntity.isDisplayNameVisible() && visible);
-
-                    // Spawn particles for holding the stacking tool
-                    if (visible && displayStackingToolParticles && entity.getType() != EntityType.ARMOR_STAND && entity.getType() != EntityType.DROPPED_ITEM) {
-                        Location location = entity.getLocation().add(0, livingEntity.getEyeHeight(true) + 0.75, 0);
-                        DustOptions dustOptions;
-                        if (StackerUtils.isUnstackable(livingEntity)) {
-                            dustOptions = StackerUtils.UNSTACKABLE_DUST_OPTIONS;
-                        } else {
-                            dustOptions = StackerUtils.STACKABLE_DUST_OPTIONS;
-                        }
-                        player.spawnParticle(Particle.REDSTONE, location, 1, 0.0, 0.0, 0.0, 0.0, dustOptions);
-                    }
-                } else {
-                    nmsHandler.updateEntityNameTagVisibilityForPlayer(player, entity, visible);
-                }
+        double distanceSqrd = this.getDistanceSquared(playerLocation, entity);
+        if (distanceSqrd > StackerUtils.getEntityTrackingRangeSquared(entity))
+            return;
+
+        boolean visible = distanceSqrd < viewRangeSqrd;
+        if (visible && wallDetection)
+            visible = StackerUtils.hasLineOfSight(player, entity, true, this.nametagOcclusionCache);
+
+        // The custom name is tracked too, the server shows it again for everyone when it changes
+        if (this.nametagTracker.update(player, entity, customName, visible))
+            this.queueNametagUpdate(player, new NametagUpdate(entity, visible));
+    }
+
+    private double getDistanceSquared(Location playerLocation, Entity entity) {
+        try { // The locations can end up comparing cross-world if the player/entity switches worlds mid-loop due to being async
+            return playerLocation.distanceSquared(entity.getLocation());
+        } catch (Exception e) {
+            return Double.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Makes sure the nametag of an entity is sent again to every player during the next nametag update,
+     * should be called after its nametag was sent some other way
+     *
+     * @param entity The entity
+     */
+    public void invalidateNametag(Entity entity) {
+        this.nametagTracker.invalidate(entity);
+    }
+
+    /**
+     * Makes sure every nametag is sent again to a player during the next nametag update,
+     * should be called when the player's client may have forgotten the entities around it
+     *
+     * @param player The player
+     */
+    public void invalidateNametags(Player player) {
+        this.nametagTracker.invalidate(player);
+    }
+
+    /**
+     * Queues a nametag update to be sent to a player on the next tick along with all their other updates.
+     * Only the latest update for each entity is sent.
+     *
+     * @param player The player to send the update to
+     * @param nametagUpdate The nametag update
+     */
+    public void queueNametagUpdate(Player player, NametagUpdate nametagUpdate) {
+        int entityId = nametagUpdate.getEntity().getEntityId();
+        this.pendingNametagUpdates.compute(player, (key, nametagUpdates) -> {
+            if (nametagUpdates == null)
+                nametagUpdates = new LinkedHashMap<>();
+
+            // Don't lose a queued name change if only the visibility changed after it
+            NametagUpdate queued = nametagUpdates.remove(entityId);
+            if (queued != null && !queued.isVisibilityOnly() && nametagUpdate.isVisibilityOnly()) {
+                nametagUpdates.put(entityId, new NametagUpdate(nametagUpdate.getEntity(), queued.getCustomName(), nametagUpdate.isCustomNameVisible()));
+            } else {
+                nametagUpdates.put(entityId, nametagUpdate);
             }
+
+            return nametagUpdates;
+        });
+    }
+
+    /**
+     * Sends all queued nametag updates, batched per player
+     */
+    private void flushNametagUpdates() {
+        if (this.pendingNametagUpdates.isEmpty())
+            return;
+
+        NMSHandler nmsHandler = NMSAdapter.getHandler();
+        for (Player player : this.pendingNametagUpdates.keySet()) {
+            Map<Integer, NametagUpdate> nametagUpdates = this.pendingNametagUpdates.remove(player);
+            if (nametagUpdates != null && player.isOnline())
+                nmsHandler.updateEntityNameTagsForPlayer(player, nametagUpdates.values());
         }
     }
 
@@ -253,26 +459,42 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
         if (this.pendingChunkTask != null)
             this.pendingChunkTask.cancel();
 
-        this.pendingLoadChunks.clear();
-        this.pendingUnloadChunks.clear();
+        if (this.nametagFlushTask != null)
+            this.nametagFlushTask.cancel();
+
+        this.pendingNametagUpdates.clear();
+
+        this.pendingLoadChunkKeys.clear();
+        this.pendingUnloadChunkKeys.clear();
+        this.loadedChunkKeys.clear();
+        this.pendingLoadOrder = null;
+        synchronized (this.loadingChunkKeys) {
+            this.loadingChunkKeys.clear();
+        }
 
         // Save anything that's loaded
         if (this.stackManager.isEntityStackingEnabled())
-            dataManager.createOrUpdateStackedEntities(this.stackedEntities.values());
+            dataManager.queueStackUpdates(this.stackedEntities.values());
 
         if (this.stackManager.isItemStackingEnabled())
-            dataManager.createOrUpdateStackedItems(this.stackedItems.values());
+            dataManager.queueStackUpdates(this.stackedItems.values());
 
         if (this.stackManager.isBlockStackingEnabled())
-            dataManager.createOrUpdateStackedBlocksOrSpawners(this.stackedBlocks.values());
+            dataManager.queueStackUpdates(this.stackedBlocks.values());
 
         if (this.stackManager.isSpawnerStackingEnabled())
-            dataManager.createOrUpdateStackedBlocksOrSpawners(this.stackedSpawners.values());
+            dataManager.queueStackUpdates(this.stackedSpawners.values());
 
         this.stackedEntities.clear();
         this.stackedItems.clear();
         this.stackedBlocks.clear();
         this.stackedSpawners.clear();
+        this.entityGrid.clear();
+        this.itemGrid.clear();
+        this.blockGrid.clear();
+        this.spawnerGrid.clear();
+        this.chunkStackCache.clear();
+        this.nametagTracker.clear();
     }
 
     @Override
@@ -337,6 +559,8 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
     @Override
     public void removeEntityStack(StackedEntity stackedEntity) {
+        this.entityGrid.remove(stackedEntity);
+
         LivingEntity entity = stackedEntity.getEntity();
         if (entity != null) {
             UUID key = stackedEntity.getEntity().getUniqueId();
@@ -358,6 +582,8 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
     @Override
     public void removeItemStack(StackedItem stackedItem) {
+        this.itemGrid.remove(stackedItem);
+
         Item item = stackedItem.getItem();
         if (item != null) {
             UUID key = stackedItem.getItem().getUniqueId();
@@ -382,6 +608,7 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
     public void removeBlockStack(StackedBlock stackedBlock) {
         Block key = stackedBlock.getBlock();
         stackedBlock.kickOutGuiViewers();
+        this.blockGrid.remove(stackedBlock);
         if (this.stackedBlocks.containsKey(key)) {
             this.stackedBlocks.remove(key);
             this.stackManager.markStackDeleted(stackedBlock);
@@ -392,6 +619,7 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
     public void removeSpawnerStack(StackedSpawner stackedSpawner) {
         Block key = stackedSpawner.getSpawner().getBlock();
         stackedSpawner.kickOutViewers();
+        this.spawnerGrid.remove(stackedSpawner);
         if (this.stackedSpawners.containsKey(key)) {
             this.stackedSpawners.remove(key);
             this.stackManager.markStackDeleted(stackedSpawner);
@@ -410,6 +638,7 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
             return 0;
 
         toRemove.forEach(this.stackManager::markStackDeleted);
+        toRemove.forEach(this.entityGrid::remove);
         toRemove.stream().map(StackedEntity::getEntity).forEach(LivingEntity::remove);
         this.stackedEntities.values().removeIf(toRemove::contains);
 
@@ -426,6 +655,7 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
             return 0;
 
         toRemove.forEach(this.stackManager::markStackDeleted);
+        toRemove.forEach(this.itemGrid::remove);
         toRemove.stream().map(StackedItem::getItem).forEach(Item::remove);
         this.stackedItems.values().removeIf(toRemove::contains);
 
@@ -450,6 +680,8 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
         StackedEntity newlySplit = stackedEntity.decreaseStackSize();
         this.stackedEntities.put(newlySplit.getEntity().getUniqueId(), newlySplit);
+        this.entityGrid.update(newlySplit);
+        newlySplit.updateCompatibilityKey();
         return newlySplit;
     }
 
@@ -472,6 +704,7 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
         StackedItem newStackedItem = new StackedItem(newSize, newItem);
         this.stackedItems.put(newItem.getUniqueId(), newStackedItem);
+        this.itemGrid.update(newStackedItem);
         stackedItem.increaseStackSize(-newSize);
         return newStackedItem;
     }
@@ -486,6 +719,8 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
         StackedEntity newStackedEntity = new StackedEntity(livingEntity);
         this.stackedEntities.put(livingEntity.getUniqueId(), newStackedEntity);
+        this.entityGrid.update(newStackedEntity);
+        newStackedEntity.updateCompatibilityKey();
 
         if (tryStack)
             this.tryStackEntity(newStackedEntity);
@@ -500,6 +735,7 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
         StackedItem newStackedItem = new StackedItem(item.getItemStack().getAmount(), item);
         this.stackedItems.put(item.getUniqueId(), newStackedItem);
+        this.itemGrid.update(newStackedItem);
 
         if (tryStack)
             this.tryStackItem(newStackedItem);
@@ -514,6 +750,7 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
         StackedBlock newStackedBlock = new StackedBlock(amount, block);
         this.stackedBlocks.put(block, newStackedBlock);
+        this.blockGrid.update(newStackedBlock);
         return newStackedBlock;
     }
 
@@ -528,6 +765,7 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
         StackedSpawner newStackedSpawner = new StackedSpawner(amount, creatureSpawner);
         this.stackedSpawners.put(block, newStackedSpawner);
+        this.spawnerGrid.update(newStackedSpawner);
         return newStackedSpawner;
     }
 
@@ -537,6 +775,7 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
             return;
 
         this.stackedEntities.put(stackedEntity.getEntity().getUniqueId(), stackedEntity);
+        this.entityGrid.update(stackedEntity);
         this.tryStackEntity(stackedEntity);
     }
 
@@ -546,6 +785,7 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
             return;
 
         this.stackedItems.put(stackedItem.getItem().getUniqueId(), stackedItem);
+        this.itemGrid.update(stackedItem);
         this.tryStackItem(stackedItem);
     }
 
@@ -610,21 +850,45 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
     @Override
     public void loadChunk(Chunk chunk) {
-        this.pendingLoadChunks.add(chunk);
+        this.pendingLoadChunkKeys.add(StackerUtils.getChunkKey(chunk.getX(), chunk.getZ()));
     }
 
     @Override
     public void unloadChunk(Chunk chunk) {
-        this.pendingUnloadChunks.add(chunk);
+        this.pendingUnloadChunkKeys.add(StackerUtils.getChunkKey(chunk.getX(), chunk.getZ()));
+    }
+
+    private boolean containsChunk(LongHashSet chunkKeys, Stack<?> stack) {
+        return chunkKeys.contains(StackerUtils.getChunkKey(stack.getLocation()));
     }
 
-    private boolean containsChunk(Set<Chunk> chunks, Stack<?> stack) {
-        int stackChunkX = stack.getLocation().getBlockX() >> 4;
-        int stackChunkZ = stack.getLocation().getBlockZ() >> 4;
-        for (Chunk chunk : chunks)
-            if (chunk.getX() == stackChunkX && chunk.getZ() == stackChunkZ)
-                return true;
-        return false;
+    /**
+     * Gets the stacks that are currently in any of the given chunks by only looking at the grid cells around them
+     *
+     * @param grid The grid to look in
+     * @param chunkKeys The packed keys of the chunks
+     * @param searchRadius The number of neighbouring cells to also look in, for stacks that may have moved since their grid position was updated
+     * @param <T> The type of stack
+     * @return the stacks in the chunks
+     */
+    private <T extends Stack<?>> List<T> getStacksInChunks(StackGrid<?, T> grid, LongHashSet chunkKeys, int searchRadius) {
+        long[] keys = chunkKeys.toArray();
+        LongHashSet cellKeys = new LongHashSet(keys.length * (2 * searchRadius + 1) * (2 * searchRadius + 1));
+        for (long chunkKey : keys) {
+            int chunkX = StackerUtils.getChunkX(chunkKey);
+            int chunkZ = StackerUtils.getChunkZ(chunkKey);
+            for (int x = chunkX - searchRadius; x <= chunkX + searchRadius; x++)
+                for (int z = chunkZ - searchRadius; z <= chunkZ + searchRadius; z++)
+                    cellKeys.add(StackerUtils.getChunkKey(x, z));
+        }
+
+        List<T> stacks = new ArrayList<>();
+        cellKeys.forEach(cellKey -> {
+            for (T stack : grid.getAllInChunk(cellKey))
+                if (searchRadius == 0 || this.containsChunk(chunkKeys, stack))
+                    stacks.add(stack);
+        });
+        return stacks;
     }
 
     /**
@@ -643,24 +907,43 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
             return null;
         }
 
+        // Entities with a different compatibility key are never able to stack with this one
+        stackedEntity.updateCompatibilityKey();
+        long compatibilityKey = stackedEntity.getCompatibilityKey();
+        if (compatibilityKey == EntityStackSettings.INCOMPATIBLE_KEY)
+            return null;
+
         double maxEntityMergeDistanceSqrd = stackSettings.getMergeRadius() * stackSettings.getMergeRadius();
+        boolean mergeEntireChunk = Setting.ENTITY_MERGE_ENTIRE_CHUNK.getBoolean();
+
+        // Only look at stacks of the same type in the cells around this stack
+        Location location = stackedEntity.getLocation();
+        long chunkKey = StackerUtils.getChunkKey(location);
+        EntityType entityType = stackedEntity.getEntity().getType();
+        List<StackedEntity> candidates;
+        if (!mergeEntireChunk) {
+            candidates = this.entityGrid.getNearby(entityType, location, stackSettings.getMergeRadius());
+        } else {
+            candidates = this.entityGrid.getInChunk(entityType, chunkKey);
+        }
 
-        for (StackedEntity other : this.stackedEntities.values()) {
+        for (StackedEntity other : candidates) {
             if (stackedEntity == other
                     || other.getEntity() == null
                     || !other.getEntity().isValid()
                     || this.stackManager.isMarkedAsDeleted(stackedEntity)
                     || this.stackManager.isMarkedAsDeleted(other)
-                    || stackedEntity.getLocation().getWorld() != other.getLocation().getWorld()
+                    || location.getWorld() != other.getLocation().getWorld()
                     || stackedEntity.getEntity() == other.getEntity()
-                    || stackedEntity.getEntity().getType() != other.getEntity().getType())
+                    || entityType != other.getEntity().getType()
+                    || compatibilityKey != other.getCompatibilityKey())
                 continue;
 
-            if (!Setting.ENTITY_MERGE_ENTIRE_CHUNK.getBoolean()) {
-                if (stackedEntity.getLocation().distanceSquared(other.getLocation()) > maxEntityMergeDistanceSqrd)
+            if (!mergeEntireChunk) {
+                if (location.distanceSquared(other.getLocation()) > maxEntityMergeDistanceSqrd)
                     continue;
             } else {
-                if (stackedEntity.getLocation().getChunk() != other.getLocation().getChunk())
+                if (chunkKey != StackerUtils.getChunkKey(other.getLocation()))
                     continue;
             }
 
@@ -668,8 +951,12 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
             if (!stackSettings.testCanStackWith(stackedEntity, other, false))
                 continue;
 
-            if (Setting.ENTITY_REQUIRE_LINE_OF_SIGHT.getBoolean() && !StackerUtils.hasLineOfSight(stackedEntity.getEntity(), other.getEntity(), 0.75, false))
-                continue;
+            if (Setting.ENTITY_REQUIRE_LINE_OF_SIGHT.getBoolean()) {
+                BlockOcclusionCache occlusionCache = this.stackingOcclusionCaches.get();
+                occlusionCache.startPass(this.stackingPass);
+                if (!StackerUtils.hasLineOfSight(stackedEntity.getEntity(), other.getEntity(), false, occlusionCache))
+                    continue;
+            }
 
             Set<StackedEntity> targetEntities = new HashSet<>();
             targetEntities.add(stackedEntity);
@@ -677,20 +964,23 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
             int minStackSize = stackSettings.getMinStackSize();
             if (minStackSize > 2) {
-                if (!Setting.ENTITY_MERGE_ENTIRE_CHUNK.getBoolean()) {
-                    for (StackedEntity nearbyStackedEntity : this.stackedEntities.values()) {
-                        if (nearbyStackedEntity.getEntity().getType() == stackedEntity.getEntity().getType()
-                                && stackedEntity.getLocation().distanceSquared(nearbyStackedEntity.getLocation()) <= maxEntityMergeDistanceSqrd
-                                && stackSettings.testCanStackWith(stackedEntity, nearbyStackedEntity, false))
-                            targetEntities.add(nearbyStackedEntity);
-                    }
-                } else {
-                    for (StackedEntity nearbyStackedEntity : this.stackedEntities.values()) {
-                        if (nearbyStackedEntity.getEntity().getType() == stackedEntity.getEntity().getType()
-                                && nearbyStackedEntity.getLocation().getChunk() == stackedEntity.getLocation().getChunk()
-                                && stackSettings.testCanStackWith(stackedEntity, nearbyStackedEntity, false))
-                            targetEntities.add(nearbyStackedEntity);
+                for (StackedEntity nearbyStackedEntity : candidates) {
+                    if (nearbyStackedEntity.getEntity() == null
+                            || !nearbyStackedEntity.getEntity().isValid()
+                            || this.stackManager.isMarkedAsDeleted(nearbyStackedEntity)
+                            || compatibilityKey != nearbyStackedEntity.getCompatibilityKey())
+                        continue;
+
+                    if (!mergeEntireChunk) {
+                        if (location.distanceSquared(nearbyStackedEntity.getLocation()) > maxEntityMergeDistanceSqrd)
+                            continue;
+                    } else {
+                        if (chunkKey != StackerUtils.getChunkKey(nearbyStackedEntity.getLocation()))
+                            continue;
                     }
+
+                    if (stackSettings.testCanStackWith(stackedEntity, nearbyStackedEntity, false))
+                        targetEntities.add(nearbyStackedEntity);
                 }
 
                 if (targetEntities.stream().mapToInt(StackedEntity::getStackSize).sum() < minStackSize)
@@ -713,7 +1003,7 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
                 stackSettings.applyStackProperties(toStack.getEntity(), increased.getEntity());
 
                 increased.increaseStackSize(toStack.getEntity());
-                increased.increaseStackSize(toStack.getStackedEntityNBT());
+                increased.increaseStackSize(toStack.getStackedEntityDataStorage());
             }
 
             if (Bukkit.isPrimaryThread()) {
@@ -745,16 +1035,20 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
         if (this.stackManager.isMarkedAsDeleted(stackedItem) || stackedItem.getItem().getPickupDelay() > 40)
             return null;
 
-        double maxItemStackDistanceSqrd = Setting.ITEM_MERGE_RADIUS.getDouble() * Setting.ITEM_MERGE_RADIUS.getDouble();
+        double itemMergeRadius = Setting.ITEM_MERGE_RADIUS.getDouble();
+        double maxItemStackDistanceSqrd = itemMergeRadius * itemMergeRadius;
 
-        for (StackedItem other : this.stackedItems.values()) {
+        // Only look at items of the same type in the cells around this stack
+        Location location = stackedItem.getLocation();
+        ItemStack itemStack = stackedItem.getItem().getItemStack();
+        for (StackedItem other : this.itemGrid.getNearby(itemStack.getType(), location, itemMergeRadius)) {
             if (stackedItem == other
                     || this.stackManager.isMarkedAsDeleted(other)
-                    || stackedItem.getLocation().getWorld() != other.getLocation().getWorld()
-                    || !stackedItem.getItem().getItemStack().isSimilar(other.getItem().getItemStack())
+                    || location.getWorld() != other.getLocation().getWorld()
+                    || !itemStack.isSimilar(other.getItem().getItemStack())
                     || other.getItem().getPickupDelay() > 40
                     || stackedItem.getStackSize() + other.getStackSize() > stackSettings.getMaxStackSize()
-                    || stackedItem.getLocation().distanceSquared(other.getLocation()) > maxItemStackDistanceSqrd)
+                    || location.distanceSquared(other.getLocation()) > maxItemStackDistanceSqrd)
                 continue;
 
             // Check if we should merge the stacks
@@ -789,86 +1083,379 @@ public class StackingThread implements StackingLogic, Runnable, AutoCloseable {
 
     public void transferExistingEntityStack(UUID entityUUID, StackedEntity stackedEntity, StackingThread toThread) {
         this.stackedEntities.remove(entityUUID);
+        this.entityGrid.remove(stackedEntity);
         toThread.loadExistingEntityStack(entityUUID, stackedEntity);
     }
 
     public void transferExistingItemStack(UUID itemUUID, StackedItem stackedItem, StackingThread toThread) {
         this.stackedItems.remove(itemUUID);
+        this.itemGrid.remove(stackedItem);
         toThread.loadExistingItemStack(itemUUID, stackedItem);
     }
 
     private void loadExistingEntityStack(UUID entityUUID, StackedEntity stackedEntity) {
         stackedEntity.updateEntity();
         this.stackedEntities.put(entityUUID, stackedEntity);
+        this.entityGrid.update(stackedEntity);
+        stackedEntity.updateCompatibilityKey();
     }
 
     private void loadExistingItemStack(UUID itemUUID, StackedItem stackedItem) {
         stackedItem.updateItem();
         this.stackedItems.put(itemUUID, stackedItem);
+        this.itemGrid.update(stackedItem);
     }
 
     private void processPendingChunks() {
-        this.pendingLoadChunks.removeIf(this.pendingUnloadChunks::contains);
-        this.pendingUnloadChunks.removeIf(this.pendingLoadChunks::contains);
+        this.pendingLoadChunkKeys.removeIf(this.pendingUnloadChunkKeys::contains);
+        this.pendingUnloadChunkKeys.removeIf(this.pendingLoadChunkKeys::contains);
+
+        if (!this.pendingLoadChunkKeys.isEmpty()) {
+            Set<Chunk> chunks = this.takeNearestPendingLoadChunks(Math.max(1, Setting.DATA_CHUNK_LOAD_LIMIT.getInt()));
+            if (!chunks.isEmpty()) {
+                chunks.forEach(x -> this.loadedChunkKeys.add(StackerUtils.getChunkKey(x.getX(), x.getZ())));
+                Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> {
+                    this.conversionManager.convertChunks(chunks);
+                    this.loadChunks(chunks);
+                });
+            }
+        }
 
-        if (!this.pendingLoadChunks.isEmpty()) {
-            Set<Chunk> chunks = new HashSet<>(this.pendingLoadChunks);
-            this.pendingLoadChunks.clear();
-            Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> {
-                this.conversionManager.convertChunks(chunks);
-                this.loadChunks(chunks);
-            });
+        if (!this.pendingUnloadChunkKeys.isEmpty()) {
+            LongHashSet chunkKeys = new LongHashSet(this.pendingUnloadChunkKeys.size());
+            chunkKeys.addAll(this.pendingUnloadChunkKeys);
+            this.pendingUnloadChunkKeys.clear();
+            Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> this.unloadChunks(chunkKeys));
         }
+    }
 
-        if (!this.pendingUnloadChunks.isEmpty()) {
-            Set<Chunk> chunks = new HashSet<>(this.pendingUnloadChunks);
-            this.pendingUnloadChunks.clear();
-            Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> this.unloadChunks(chunks));
+    /**
+     * Removes and returns the pending chunks to load that are closest to a player in the target world.
+     * Chunks that are no longer loaded are skipped.
+     *
+     * @param amount The maximum number of chunks to take
+     * @return the closest pending chunks to load
+     */
+    private Set<Chunk> takeNearestPendingLoadChunks(int amount) {
+        long[] chunkKeys;
+        if (this.pendingLoadChunkKeys.size() <= amount) {
+            chunkKeys = this.pendingLoadChunkKeys.toArray();
+        } else {
+            // Sorting every pending chunk by its distance to the players is too slow to do every tick, so reuse the order for a while
+            this.pendingLoadOrderAge++;
+            if (this.pendingLoadOrder == null || this.pendingLoadOrderIndex >= this.pendingLoadOrder.length || this.pendingLoadOrderAge >= PENDING_LOAD_ORDER_REFRESH_TICKS)
+                this.sortPendingLoadChunks();
+
+            long[] takenChunkKeys = new long[amount];
+            int taken = 0;
+            while (taken < amount && this.pendingLoadOrderIndex < this.pendingLoadOrder.length) {
+                long chunkKey = this.pendingLoadOrder[this.pendingLoadOrderIndex++];
+                if (this.pendingLoadChunkKeys.contains(chunkKey))
+                    takenChunkKeys[taken++] = chunkKey;
+            }
+
+            chunkKeys = Arrays.copyOf(takenChunkKeys, taken);
+        }
+
+        Set<Chunk> chunks = new HashSet<>();
+        for (long chunkKey : chunkKeys) {
+            int chunkX = StackerUtils.getChunkX(chunkKey);
+            int chunkZ = StackerUtils.getChunkZ(chunkKey);
+            if (this.targetWorld.isChunkLoaded(chunkX, chunkZ)) {
+                chunks.add(this.targetWorld.getChunkAt(chunkX, chunkZ));
+                this.markChunkLoading(chunkKey);
+            }
+            this.pendingLoadChunkKeys.remove(chunkKey);
+        }
+        return chunks;
+    }
+
+    /**
+     * Sorts the pending chunks to load by their distance to the closest player in the target world.
+     * Chunks that are queued afterwards are picked up the next time the order is sorted.
+     */
+    private void sortPendingLoadChunks() {
+        long[] pendingChunkKeys = this.pendingLoadChunkKeys.toArray();
+
+        // Players in the same chunk are the same distance away as far as chunk loading is concerned
+        LongHashSet playerChunkKeys = new LongHashSet();
+        for (Player player : this.targetWorld.getPlayers())
+            playerChunkKeys.add(StackerUtils.getChunkKey(player.getLocation()));
+        long[] playerChunks = playerChunkKeys.toArray();
+
+        long[] distances = new long[pendingChunkKeys.length];
+        for (int i = 0; i < pendingChunkKeys.length; i++) {
+            int chunkX = StackerUtils.getChunkX(pendingChunkKeys[i]);
+            int chunkZ = StackerUtils.getChunkZ(pendingChunkKeys[i]);
+            long distance = Long.MAX_VALUE;
+            for (long playerChunk : playerChunks) {
+                long dx = StackerUtils.getChunkX(playerChunk) - chunkX;
+                long dz = StackerUtils.getChunkZ(playerChunk) - chunkZ;
+                distance = Math.min(distance, dx * dx + dz * dz);
+            }
+            distances[i] = distance;
+        }
+
+        Integer[] order = new Integer[pendingChunkKeys.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong((Integer x) -> distances[x]));
+
+        this.pendingLoadOrder = new long[order.length];
+        for (int i = 0; i < order.length; i++)
+            this.pendingLoadOrder[i] = pendingChunkKeys[order[i]];
+        this.pendingLoadOrderIndex = 0;
+        this.pendingLoadOrderAge = 0;
+    }
+
+    /**
+     * Marks a chunk as loading until its stacks have been read and all of them are back in this StackingThread.
+     * The same chunk may be loading more than once if it was unloaded and loaded again in the meantime.
+     *
+     * @param chunkKey The key of the chunk
+     */
+    private void markChunkLoading(long chunkKey) {
+        synchronized (this.loadingChunkKeys) {
+            this.loadingChunkKeys.merge(chunkKey, 1, Integer::sum);
         }
     }
 
+    /**
+     * Marks chunks as no longer loading for one of the times they were marked
+     *
+     * @param chunks The chunks that finished loading
+     */
+    private void markChunksLoaded(Set<Chunk> chunks) {
+        synchronized (this.loadingChunkKeys) {
+            for (Chunk chunk : chunks)
+                this.loadingChunkKeys.computeIfPresent(StackerUtils.getChunkKey(chunk.getX(), chunk.getZ()), (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Checks if a chunk's stacks are still being loaded.
+     * Stacks in a loading chunk may not be in this StackingThread yet, so new stacks must not be created for its entities.
+     *
+     * @param chunkKey The key of the chunk
+     * @return true if the chunk is still loading, otherwise false
+     */
+    private boolean isChunkLoading(long chunkKey) {
+        synchronized (this.loadingChunkKeys) {
+            return this.loadingChunkKeys.containsKey(chunkKey);
+        }
+    }
+
+    /**
+     * @return the number of chunks that are waiting to have their stacks loaded
+     */
+    public int getPendingChunkCount() {
+        return this.pendingLoadChunkKeys.size();
+    }
+
     private void loadChunks(Set<Chunk> chunks) {
         DataManager dataManager = this.rosePlugin.getManager(DataManager.class);
 
-        if (this.stackManager.isEntityStackingEnabled())
-            dataManager.getStackedEntities(chunks, (stack) -> stack.forEach(x -> this.stackedEntities.put(x.getEntity().getUniqueId(), x)));
+        // The chunks stay marked as loading until every part below has put its stacks back, the extra count is released at the end
+        AtomicInteger remainingParts = new AtomicInteger(1);
+        Runnable partLoaded = () -> {
+            if (remainingParts.decrementAndGet() == 0)
+                this.markChunksLoaded(chunks);
+        };
+
+        // Restore chunks that were unloaded recently from the cache, only the rest need to be read from the database
+        List<ChunkStackCache.ChunkStacks> cachedChunks = new ArrayList<>();
+        Set<Chunk> uncachedChunks = new HashSet<>();
+        for (Chunk chunk : chunks) {
+            ChunkStackCache.ChunkStacks chunkStacks = this.chunkStackCache.take(StackerUtils.getChunkKey(chunk.getX(), chunk.getZ()));
+            if (chunkStacks != null) {
+                cachedChunks.add(chunkStacks);
+            } else {
+                uncachedChunks.add(chunk);
+            }
+        }
 
-        if (this.stackManager.isItemStackingEnabled())
-            dataManager.getStackedItems(chunks, (stack) -> stack.forEach(x -> this.stackedItems.put(x.getItem().getUniqueId(), x)));
+        try {
+            if (!cachedChunks.isEmpty()) {
+                remainingParts.incrementAndGet();
+                Bukkit.getScheduler().runTask(this.rosePlugin, () -> {
+                    this.restoreChunks(cachedChunks);
+                    partLoaded.run();
+                });
+            }
 
-        if (this.stackManager.isBlockStackingEnabled())
-            dataManager.getStackedBlocks(chunks, (stack) -> stack.forEach(x -> this.stackedBlocks.put(x.getBlock(), x)));
+            if (uncachedChunks.isEmpty())
+                return;
 
-        if (this.stackManager.isSpawnerStackingEnabled())
-            dataManager.getStackedSpawners(chunks, (stack) -> stack.forEach(x -> this.stackedSpawners.put(x.getSpawner().getBlock(), x)));
+            if (this.stackManager.isEntityStackingEnabled()) {
+                remainingParts.incrementAndGet();
+                dataManager.getStackedEntities(uncachedChunks, (stack) -> stack.forEach(x -> {
+                    this.stackedEntities.put(x.getEntity().getUniqueId(), x);
+                    this.entityGrid.update(x);
+                }), partLoaded);
+            }
+
+            if (this.stackManager.isItemStackingEnabled()) {
+                remainingParts.incrementAndGet();
+                dataManager.getStackedItems(uncachedChunks, (stack) -> stack.forEach(x -> {
+                    this.stackedItems.put(x.getItem().getUniqueId(), x);
+                    this.itemGrid.update(x);
+                }), partLoaded);
+            }
+
+            if (this.stackManager.isBlockStackingEnabled()) {
+                remainingParts.incrementAndGet();
+                dataManager.getStackedBlocks(uncachedChunks, (stack) -> stack.forEach(x -> {
+                    this.stackedBlocks.put(x.getBlock(), x);
+                    this.blockGrid.update(x);
+                }), partLoaded);
+            }
+
+            if (this.stackManager.isSpawnerStackingEnabled()) {
+                remainingParts.incrementAndGet();
+                dataManager.getStackedSpawners(uncachedChunks, (stack) -> stack.forEach(x -> {
+                    this.stackedSpawners.put(x.getSpawner().getBlock(), x);
+                    this.spawnerGrid.update(x);
+                }), partLoaded);
+            }
+        } finally {
+            partLoaded.run();
+        }
     }
 
-    private void unloadChunks(Set<Chunk> chunks) {
+    /**
+     * Puts the stacks of chunks restored from the cache back into this StackingThread.
+     * Entities are looked up again by their UUID since the entity objects are replaced when a chunk loads.
+     * Must be called on the main thread.
+     *
+     * @param cachedChunks The cached stacks of the chunks to restore
+     */
+    private void restoreChunks(List<ChunkStackCache.ChunkStacks> cachedChunks) {
         DataManager dataManager = this.rosePlugin.getManager(DataManager.class);
+        Set<Stack<?>> cleanup = new HashSet<>();
+
+        for (ChunkStackCache.ChunkStacks chunkStacks : cachedChunks) {
+            for (StackedEntity stackedEntity : chunkStacks.getStackedEntities()) {
+                UUID entityUUID = stackedEntity.getEntity().getUniqueId();
+                if (Bukkit.getEntity(entityUUID) == null) {
+                    cleanup.add(stackedEntity);
+                    continue;
+                }
+
+                stackedEntity.updateEntity();
+                this.stackedEntities.put(entityUUID, stackedEntity);
+                this.entityGrid.update(stackedEntity);
+            }
+
+            for (StackedItem stackedItem : chunkStacks.getStackedItems()) {
+                UUID itemUUID = stackedItem.getItem().getUniqueId();
+                if (Bukkit.getEntity(itemUUID) == null) {
+                    cleanup.add(stackedItem);
+                    continue;
+                }
+
+                stackedItem.updateItem();
+                this.stackedItems.put(itemUUID, stackedItem);
+                this.itemGrid.update(stackedItem);
+            }
+
+            for (StackedBlock stackedBlock : chunkStacks.getStackedBlocks()) {
+                if (stackedBlock.getBlock().getType() == Material.AIR) {
+                    cleanup.add(stackedBlock);
+                    continue;
+                }
+
+                stackedBlock.updateDisplay();
+                this.stackedBlocks.put(stackedBlock.getBlock(), stackedBlock);
+                this.blockGrid.update(stackedBlock);
+            }
 
+            for (StackedSpawner stackedSpawner : chunkStacks.getStackedSpawners()) {
+                Block block = stackedSpawner.getSpawner().getBlock();
+                if (block.getType() != Material.SPAWNER) {
+                    cleanup.add(stackedSpawner);
+                    continue;
+                }
+
+                stackedSpawner.updateSpawnerProperties();
+                stackedSpawner.updateDisplay();
+                this.stackedSpawners.put(block, stackedSpawner);
+                this.spawnerGrid.update(stackedSpawner);
+            }
+        }
+
+        if (!cleanup.isEmpty())
+            dataManager.queueStackDeletions(cleanup);
+    }
+
+    private void unloadChunks(LongHashSet chunkKeys) {
+        DataManager dataManager = this.rosePlugin.getManager(DataManager.class);
+
+        List<StackedEntity> unloadedEntities = new ArrayList<>();
+        List<StackedItem> unloadedItems = new ArrayList<>();
+        List<StackedBlock> unloadedBlocks = new ArrayList<>();
+        List<StackedSpawner> unloadedSpawners = new ArrayList<>();
+
+        // Entities and items may have wandered into a neighbouring chunk since the grid was last refreshed
         if (this.stackManager.isEntityStackingEnabled()) {
-            Map<UUID, StackedEntity> stackedEntities = this.stackedEntities.entrySet().stream().filter(x -> this.containsChunk(chunks, x.getValue())).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-            dataManager.createOrUpdateStackedEntities(stackedEntities.values());
-            stackedEntities.keySet().forEach(this.stackedEntities::remove);
+            for (StackedEntity stackedEntity : this.getStacksInChunks(this.entityGrid, chunkKeys, 1)) {
+                this.stackedEntities.remove(stackedEntity.getEntity().getUniqueId(), stackedEntity);
+                this.entityGrid.remove(stackedEntity);
+                unloadedEntities.add(stackedEntity);
+            }
+            dataManager.queueStackUpdates(unloadedEntities);
         }
 
         if (this.stackManager.isItemStackingEnabled()) {
-            Map<UUID, StackedItem> stackedItems = this.stackedItems.entrySet().stream().filter(x -> this.containsChunk(chunks, x.getValue())).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-            dataManager.createOrUpdateStackedItems(stackedItems.values());
-            stackedItems.keySet().forEach(this.stackedItems::remove);
+            for (StackedItem stackedItem : this.getStacksInChunks(this.itemGrid, chunkKeys, 1)) {
+                this.stackedItems.remove(stackedItem.getItem().getUniqueId(), stackedItem);
+                this.itemGrid.remove(stackedItem);
+                unloadedItems.add(stackedItem);
+            }
+            dataManager.queueStackUpdates(unloadedItems);
         }
 
         if (this.stackManager.isBlockStackingEnabled()) {
-            Map<Block, StackedBlock> stackedBlocks = this.stackedBlocks.entrySet().stream().filter(x -> this.containsChunk(chunks, x.getValue())).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-            dataManager.createOrUpdateStackedBlocksOrSpawners(stackedBlocks.values());
-            stackedBlocks.keySet().forEach(this.stackedBlocks::remove);
+            for (StackedBlock stackedBlock : this.getStacksInChunks(this.blockGrid, chunkKeys, 0)) {
+                this.stackedBlocks.remove(stackedBlock.getBlock(), stackedBlock);
+                this.blockGrid.remove(stackedBlock);
+                unloadedBlocks.add(stackedBlock);
+            }
+            dataManager.queueStackUpdates(unloadedBlocks);
         }
 
         if (this.stackManager.isSpawnerStackingEnabled()) {
-            Map<Block, StackedSpawner> stackedSpawners = this.stackedSpawners.entrySet().stream().filter(x -> this.containsChunk(chunks, x.getValue())).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-            dataManager.createOrUpdateStackedBlocksOrSpawners(stackedSpawners.values());
-            stackedSpawners.keySet().forEach(this.stackedSpawners::remove);
+            for (StackedSpawner stackedSpawner : this.getStacksInChunks(this.spawnerGrid, chunkKeys, 0)) {
+                this.stackedSpawners.remove(stackedSpawner.getSpawner().getBlock(), stackedSpawner);
+                this.spawnerGrid.remove(stackedSpawner);
+                unloadedSpawners.add(stackedSpawner);
+            }
+            dataManager.queueStackUpdates(unloadedSpawners);
         }
+
+        // Keep the unloaded stacks around in case the chunks are loaded again soon
+        Map<Long, List<StackedEntity>> entitiesByChunk = unloadedEntities.stream().collect(Collectors.groupingBy(x -> StackerUtils.getChunkKey(x.getLocation())));
+        Map<Long, List<StackedItem>> itemsByChunk = unloadedItems.stream().collect(Collectors.groupingBy(x -> StackerUtils.getChunkKey(x.getLocation())));
+        Map<Long, List<StackedBlock>> blocksByChunk = unloadedBlocks.stream().collect(Collectors.groupingBy(x -> StackerUtils.getChunkKey(x.getLocation())));
+        Map<Long, List<StackedSpawner>> spawnersByChunk = unloadedSpawners.stream().collect(Collectors.groupingBy(x -> StackerUtils.getChunkKey(x.getLocation())));
+        for (long chunkKey : chunkKeys.toArray()) {
+            // Chunks that unloaded before their stacks were loaded don't have anything worth caching
+            if (!this.loadedChunkKeys.remove(chunkKey))
+                continue;
+
+            this.chunkStackCache.put(chunkKey, new ChunkStackCache.ChunkStacks(
+                    entitiesByChunk.getOrDefault(chunkKey, Collections.emptyList()),
+                    itemsByChunk.getOrDefault(chunkKey, Collections.emptyList()),
+                    blocksByChunk.getOrDefault(chunkKey, Collections.emptyList()),
+                    spawnersByChunk.getOrDefault(chunkKey, Collections.emptyList())
+            ));
+        }
+    }
+
+    /**
+     * Removes the stacks of all recently unloaded chunks from the cache, they will be read from the database when loaded again
+     */
+    public void clearChunkCache() {
+        this.chunkStackCache.clear();
     }
 
     /**
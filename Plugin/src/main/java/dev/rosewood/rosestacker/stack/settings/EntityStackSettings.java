@@ -9,6 +9,7 @@ import dev.rosewood.rosestacker.stack.EntityStackComparisonResult;
 import dev.rosewood.rosestacker.stack.StackedEntity;
 import dev.rosewood.rosestacker.utils.StackerUtils;
 import java.util.List;
+import org.bukkit.DyeColor;
 import org.bukkit.Material;
 import org.bukkit.entity.AbstractHorse;
 import org.bukkit.entity.AnimalTamer;
@@ -28,6 +29,11 @@ import org.bukkit.material.Colorable;
 
 public abstract class EntityStackSettings extends StackSettings {
 
+    /**
+     * The compatibility key of an entity that is not able to stack with any other entity
+     */
+    public static final long INCOMPATIBLE_KEY = Long.MIN_VALUE;
+
     // Settings that apply to every entity
     private final boolean enabled;
     private final String displayName;
@@ -290,6 +296,85 @@ public abstract class EntityStackSettings extends StackSettings {
         return this.canStackWithInternal(stack1, stack2);
     }
 
+    /**
+     * Gets a key summarizing the properties of an entity that {@link #canStackWith} checks when stacking.
+     * Entities with different keys are never able to stack with each other, but entities with the same key
+     * still need to be fully compared. Only the checks made when not comparing for unstacking are considered.
+     *
+     * @param stackedEntity The stack to get the key of
+     * @return the compatibility key, or {@link #INCOMPATIBLE_KEY} if the entity can't stack with any other entity
+     */
+    public long getCompatibilityKey(StackedEntity stackedEntity) {
+        LivingEntity entity = stackedEntity.getEntity();
+        if (entity == null || !this.enabled)
+            return INCOMPATIBLE_KEY;
+
+        // Checks that prevent the entity from stacking with anything
+        if (stackedEntity.getStackSize() >= this.getMaxStackSize())
+            return INCOMPATIBLE_KEY;
+
+        if (StackerUtils.isUnstackable(entity))
+            return INCOMPATIBLE_KEY;
+
+        if (Setting.ENTITY_DONT_STACK_CUSTOM_NAMED.getBoolean() && entity.getCustomName() != null)
+            return INCOMPATIBLE_KEY;
+
+        if (!(entity instanceof WaterMob) && !(entity instanceof Flying) && Setting.ENTITY_ONLY_STACK_ON_GROUND.getBoolean() && !entity.isOnGround())
+            return INCOMPATIBLE_KEY;
+
+        if (Setting.ENTITY_ONLY_STACK_FROM_SPAWNERS.getBoolean() && !RoseStacker.getInstance().getManager(SpawnerSpawnManager.class).isSpawnedFromSpawner(entity))
+            return INCOMPATIBLE_KEY;
+
+        if (!entity.getPassengers().isEmpty() || entity.isInsideVehicle())
+            return INCOMPATIBLE_KEY;
+
+        if (Setting.ENTITY_DONT_STACK_IF_LEASHED.getBoolean() && entity.isLeashed())
+            return INCOMPATIBLE_KEY;
+
+        if (Setting.ENTITY_DONT_STACK_IF_INVULNERABLE.getBoolean() && entity.isInvulnerable())
+            return INCOMPATIBLE_KEY;
+
+        if (this.isEntitySittable() && this.dontStackIfSitting && ((Sittable) entity).isSitting())
+            return INCOMPATIBLE_KEY;
+
+        if (this.isEntityTameable() && this.dontStackIfTamed && ((Tameable) entity).isTamed())
+            return INCOMPATIBLE_KEY;
+
+        if (this.isEntityAnimals()) {
+            Animals animals = (Animals) entity;
+            if (this.dontStackIfBaby && !animals.isAdult())
+                return INCOMPATIBLE_KEY;
+
+            if (this.dontStackIfBreeding && (animals.isLoveMode() || (!animals.canBreed() && animals.isAdult())))
+                return INCOMPATIBLE_KEY;
+        }
+
+        if (this.isEntityAbstractHorse() && this.dontStackIfSaddled && ((AbstractHorse) entity).getInventory().getSaddle() != null)
+            return INCOMPATIBLE_KEY;
+
+        if (this.isEntityChestedHorse() && this.dontStackIfChested && ((ChestedHorse) entity).isCarryingChest())
+            return INCOMPATIBLE_KEY;
+
+        if (NMSUtil.getVersionNumber() >= 14 && this.isEntityRaider() && this.dontStackIfPatrolLeader && ((Raider) entity).isPatrolLeader())
+            return INCOMPATIBLE_KEY;
+
+        if (this.isEntityMerchant() && this.dontStackIfTrading && ((Merchant) entity).isTrading())
+            return INCOMPATIBLE_KEY;
+
+        // Properties that have to be equal between the entities
+        long key = entity.getType().ordinal();
+
+        if (this.isEntityColorable() && this.dontStackIfDifferentColor) {
+            DyeColor color = ((Colorable) entity).getColor();
+            key = key * 31 + (color == null ? 0 : color.ordinal() + 1);
+        }
+
+        if (this.isEntityAnimals() && this.dontStackIfDifferentAge)
+            key = key * 31 + (((Animals) entity).isAdult() ? 1 : 2);
+
+        return key == INCOMPATIBLE_KEY ? key + 1 : key;
+    }
+
     @Override
     public String getConfigurationSectionKey() {
         return this.getEntityType().name();
@@ -0,0 +1,137 @@
+package dev.rosewood.rosestacker.utils;
+
+import java.util.Arrays;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+/**
+ * Remembers which blocks of a single world are solid or occluding, so repeated line of sight checks through the same
+ * area only need to look each block up once.
+ * Meant to be short-lived, such as for a single pass of stacking or nametag updates, since it doesn't notice block changes.
+ * <p>
+ * Not thread-safe, each thread should use its own cache.
+ */
+public class BlockOcclusionCache {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_SIZE = 1 << 16;
+
+    /**
+     * The states of a block, a slot with the UNKNOWN state is empty
+     */
+    private static final byte UNKNOWN = 0;
+    private static final byte EMPTY = 1;
+    private static final byte SOLID = 2;
+    private static final byte OCCLUDING = 3;
+
+    private long[] keys;
+    private byte[] states;
+    private int size;
+    private int pass;
+
+    public BlockOcclusionCache() {
+        this.keys = new long[INITIAL_CAPACITY];
+        this.states = new byte[INITIAL_CAPACITY];
+        this.size = 0;
+        this.pass = 0;
+    }
+
+    /**
+     * Clears the cache if it was last used during a different pass
+     *
+     * @param pass The current pass
+     */
+    public void startPass(int pass) {
+        if (this.pass != pass) {
+            this.clear();
+            this.pass = pass;
+        }
+    }
+
+    /**
+     * Checks if a block blocks line of sight
+     *
+     * @param world The world the block is in
+     * @param x The block x
+     * @param y The block y
+     * @param z The block z
+     * @param requireOccluding Should occluding blocks be required to count as a solid block?
+     * @return true if the block blocks line of sight, otherwise false
+     */
+    public boolean isObstructed(World world, int x, int y, int z, boolean requireOccluding) {
+        byte state = this.getState(world, x, y, z);
+        return state == OCCLUDING || (state == SOLID && !requireOccluding);
+    }
+
+    /**
+     * Removes all cached blocks
+     */
+    public void clear() {
+        Arrays.fill(this.states, UNKNOWN);
+        this.size = 0;
+    }
+
+    private byte getState(World world, int x, int y, int z) {
+        if (y < 0 || y >= world.getMaxHeight())
+            return EMPTY;
+
+        long key = ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+        int mask = this.keys.length - 1;
+        int index = hash(key) & mask;
+        while (this.states[index] != UNKNOWN) {
+            if (this.keys[index] == key)
+                return this.states[index];
+            index = (index + 1) & mask;
+        }
+
+        // Don't load chunks just to check if they block line of sight
+        byte state;
+        if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+            state = EMPTY;
+        } else {
+            Material type = world.getBlockAt(x, y, z).getType();
+            if (!type.isSolid()) {
+                state = EMPTY;
+            } else {
+                state = type.isOccluding() ? OCCLUDING : SOLID;
+            }
+        }
+
+        if (this.size >= MAX_SIZE) {
+            this.clear();
+        } else if (this.size + 1 > this.keys.length / 2) {
+            this.resize(this.keys.length * 2);
+        }
+
+        this.put(key, state);
+        return state;
+    }
+
+    private void put(long key, byte state) {
+        int mask = this.keys.length - 1;
+        int index = hash(key) & mask;
+        while (this.states[index] != UNKNOWN)
+            index = (index + 1) & mask;
+
+        this.keys[index] = key;
+        this.states[index] = state;
+        this.size++;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = this.keys;
+        byte[] oldStates = this.states;
+        this.keys = new long[capacity];
+        this.states = new byte[capacity];
+        this.size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldStates[i] != UNKNOWN)
+                this.put(oldKeys[i], oldStates[i]);
+    }
+
+    private static int hash(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+}
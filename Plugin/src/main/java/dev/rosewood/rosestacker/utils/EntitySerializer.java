@@ -1,17 +1,53 @@
 package dev.rosewood.rosestacker.utils;
 
+import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
 import dev.rosewood.rosestacker.stack.StackedEntity;
+import dev.rosewood.rosestacker.stack.StackedEntityDataStorage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 import org.bukkit.entity.LivingEntity;
 
 public final class EntitySerializer {
 
+    /**
+     * The first byte of the compact format, the legacy format always starts with the ObjectOutputStream magic 0xACED
+     */
+    private static final byte FORMAT_MAGIC = 0x52;
+
+    /**
+     * The version of the compact format that stores a plain list of entity nbt data
+     */
+    private static final byte FORMAT_VERSION_LIST = 1;
+
+    /**
+     * The version of the compact format that stores each distinct entity nbt data once, followed by runs referencing them
+     */
+    private static final byte FORMAT_VERSION_TEMPLATES = 2;
+
+    /**
+     * The current version of the compact format
+     */
+    private static final byte FORMAT_VERSION = FORMAT_VERSION_TEMPLATES;
+
+    /**
+     * Flag set when everything after the header is deflate compressed
+     */
+    private static final byte FLAG_COMPRESSED = 0x01;
+
     /**
      * Serializes a stacked entity into a byte array
      *
@@ -19,26 +55,66 @@ public final class EntitySerializer {
      * @return byte array of the stacked entity dat
      */
     public static byte[] toBlob(StackedEntity stackedEntity) {
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-             ObjectOutputStream dataOutput = new ObjectOutputStream(outputStream)) {
-
-            // Write the size of the nbt data
-            List<byte[]> nbtData = stackedEntity.getStackedEntityNBT();
-            dataOutput.writeInt(nbtData.size());
-
-            // Save every element in the list
-            for (byte[] data : nbtData) {
-                dataOutput.writeInt(data.length);
-                for (byte b : data)
-                    dataOutput.writeByte(b);
-            }
+        return toBlob(stackedEntity.getStackedEntityDataStorage());
+    }
+
+    /**
+     * Serializes a list of entity nbt data into a byte array using the compact format
+     *
+     * @param nbtData the nbt data of the stacked entities
+     * @return byte array of the nbt data
+     */
+    public static byte[] toBlob(List<byte[]> nbtData) {
+        return toBlob(new StackedEntityDataStorage(nbtData));
+    }
+
+    /**
+     * Serializes the entity nbt data storage of a stack into a byte array using the compact format
+     *
+     * @param stackedEntityDataStorage the nbt data storage of the stacked entities
+     * @return byte array of the nbt data
+     */
+    public static byte[] toBlob(StackedEntityDataStorage stackedEntityDataStorage) {
+        List<StackedEntityDataStorage.Run> runs = stackedEntityDataStorage.getRuns();
+        boolean compress = Setting.DATA_COMPRESS_ENTITY_STACKS.getBoolean();
+
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            // Write the header uncompressed so we can tell how to read the rest
+            outputStream.write(FORMAT_MAGIC);
+            outputStream.write(FORMAT_VERSION);
+            outputStream.write(compress ? FLAG_COMPRESSED : 0);
 
-            // Write the original mob name
-            // UNUSED: Kept for legacy purposes
-            dataOutput.writeUTF("");
+            Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+            OutputStream payloadStream = compress ? new DeflaterOutputStream(outputStream, deflater) : outputStream;
+            try (DataOutputStream dataOutput = new DataOutputStream(payloadStream)) {
+                // Assign an index to each distinct template, the storage shares arrays between identical templates
+                Map<byte[], Integer> templateIndexes = new IdentityHashMap<>();
+                List<byte[]> templates = new ArrayList<>();
+                for (StackedEntityDataStorage.Run run : runs) {
+                    if (!templateIndexes.containsKey(run.getData())) {
+                        templateIndexes.put(run.getData(), templates.size());
+                        templates.add(run.getData());
+                    }
+                }
+
+                // Save every template
+                dataOutput.writeInt(templates.size());
+                for (byte[] data : templates) {
+                    dataOutput.writeInt(data.length);
+                    dataOutput.write(data);
+                }
+
+                // Save the runs of templates in order
+                dataOutput.writeInt(runs.size());
+                for (StackedEntityDataStorage.Run run : runs) {
+                    dataOutput.writeInt(templateIndexes.get(run.getData()));
+                    dataOutput.writeInt(run.getCount());
+                }
+            } finally {
+                if (deflater != null)
+                    deflater.end();
+            }
 
-            // Serialize that array
-            dataOutput.close();
             return outputStream.toByteArray();
         } catch (Exception e) {
             e.printStackTrace();
@@ -56,26 +132,8 @@ public final class EntitySerializer {
      * @return the stacked entity
      */
     public static StackedEntity fromBlob(int id, LivingEntity livingEntity, byte[] data) {
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
-             ObjectInputStream dataInput = new ObjectInputStream(inputStream)) {
-
-            // Read list length
-            int length = dataInput.readInt();
-            List<byte[]> stackNbtData = Collections.synchronizedList(new LinkedList<>());
-
-            // Read the serialized nbt list
-            for (int i = 0; i < length; i++) {
-                byte[] nbtData = new byte[dataInput.readInt()];
-                for (int n = 0; n < nbtData.length; n++)
-                    nbtData[n] = dataInput.readByte();
-                stackNbtData.add(nbtData);
-            }
-
-            // Read original mob name, if any
-            // UNUSED: Kept for legacy purposes
-            String originalCustomName = dataInput.readUTF();
-
-            return new StackedEntity(id, livingEntity, stackNbtData);
+        try {
+            return new StackedEntity(id, livingEntity, readStorage(data));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -83,4 +141,108 @@ public final class EntitySerializer {
         return null;
     }
 
+    /**
+     * Reads the entity nbt data from a byte array in either the compact or legacy format
+     *
+     * @param data byte array to read
+     * @return the nbt data of the stacked entities
+     * @throws IOException if the data is malformed
+     */
+    public static List<byte[]> readNBTList(byte[] data) throws IOException {
+        return readStorage(data).getAll();
+    }
+
+    /**
+     * Reads the entity nbt data storage from a byte array in either the compact or legacy format
+     *
+     * @param data byte array to read
+     * @return the nbt data storage of the stacked entities
+     * @throws IOException if the data is malformed
+     */
+    public static StackedEntityDataStorage readStorage(byte[] data) throws IOException {
+        if (isLegacyFormat(data)) {
+            try (ObjectInputStream dataInput = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                StackedEntityDataStorage stackedEntityDataStorage = new StackedEntityDataStorage(readNBTList(dataInput));
+
+                // Read original mob name, if any
+                // UNUSED: Kept for legacy purposes
+                dataInput.readUTF();
+
+                return stackedEntityDataStorage;
+            }
+        }
+
+        if (data.length < 3 || data[0] != FORMAT_MAGIC)
+            throw new IOException("Unknown entity stack data format");
+
+        if (data[1] > FORMAT_VERSION)
+            throw new IOException("Unsupported entity stack data version " + data[1]);
+
+        InputStream payloadStream = new ByteArrayInputStream(data, 3, data.length - 3);
+        if ((data[2] & FLAG_COMPRESSED) != 0)
+            payloadStream = new InflaterInputStream(payloadStream);
+
+        try (DataInputStream dataInput = new DataInputStream(payloadStream)) {
+            if (data[1] == FORMAT_VERSION_LIST)
+                return new StackedEntityDataStorage(readNBTList(dataInput));
+            return readTemplates(dataInput);
+        }
+    }
+
+    /**
+     * Checks if a byte array was written with the legacy ObjectOutputStream format
+     *
+     * @param data byte array to check
+     * @return true if the data is in the legacy format, otherwise false
+     */
+    public static boolean isLegacyFormat(byte[] data) {
+        return data.length >= 2 && data[0] == (byte) 0xAC && data[1] == (byte) 0xED;
+    }
+
+    private static List<byte[]> readNBTList(DataInput dataInput) throws IOException {
+        // Read list length
+        int length = dataInput.readInt();
+        if (length < 0)
+            throw new IOException("Invalid entity stack data length " + length);
+
+        List<byte[]> stackNbtData = new ArrayList<>(length);
+
+        // Read the serialized nbt list
+        for (int i = 0; i < length; i++)
+            stackNbtData.add(readNBT(dataInput));
+
+        return stackNbtData;
+    }
+
+    private static StackedEntityDataStorage readTemplates(DataInput dataInput) throws IOException {
+        List<byte[]> templates = readNBTList(dataInput);
+        StackedEntityDataStorage stackedEntityDataStorage = new StackedEntityDataStorage();
+
+        // Read the runs of templates
+        int runCount = dataInput.readInt();
+        if (runCount < 0)
+            throw new IOException("Invalid entity stack run count " + runCount);
+
+        for (int i = 0; i < runCount; i++) {
+            int templateIndex = dataInput.readInt();
+            int count = dataInput.readInt();
+            if (templateIndex < 0 || templateIndex >= templates.size() || count < 0)
+                throw new IOException("Invalid entity stack run " + templateIndex + "x" + count);
+
+            stackedEntityDataStorage.addLast(templates.get(templateIndex), count);
+        }
+
+        return stackedEntityDataStorage;
+    }
+
+    private static byte[] readNBT(DataInput dataInput) throws IOException {
+        int dataLength = dataInput.readInt();
+        if (dataLength < 0)
+            throw new IOException("Invalid entity nbt data length " + dataLength);
+
+        byte[] nbtData = new byte[dataLength];
+        dataInput.readFully(nbtData);
+        return nbtData;
+    }
+
 }
@@ -0,0 +1,226 @@
+package dev.rosewood.rosestacker.utils;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * A thread-safe set of primitive longs, such as packed chunk keys, that avoids boxing every value.
+ * Values are stored in a single open addressing table using linear probing.
+ */
+public class LongHashSet {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5F;
+
+    /**
+     * Marks an empty slot in the table, the value itself is tracked separately since it can be added too
+     */
+    private static final long EMPTY = 0;
+
+    private long[] table;
+    private boolean containsEmpty;
+    private int size;
+
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize The number of values expected to be added
+     */
+    public LongHashSet(int expectedSize) {
+        this.table = new long[tableSizeFor(expectedSize)];
+        this.containsEmpty = false;
+        this.size = 0;
+    }
+
+    /**
+     * Adds a value to the set
+     *
+     * @param value The value to add
+     * @return true if the value was added, false if it was already in the set
+     */
+    public synchronized boolean add(long value) {
+        if (value == EMPTY) {
+            if (this.containsEmpty)
+                return false;
+            this.containsEmpty = true;
+            this.size++;
+            return true;
+        }
+
+        int index = this.indexOf(value);
+        if (this.table[index] == value)
+            return false;
+
+        this.table[index] = value;
+        if (++this.size > this.table.length * LOAD_FACTOR)
+            this.resize(this.table.length * 2);
+        return true;
+    }
+
+    /**
+     * Adds all values from another set to this set
+     *
+     * @param other The set to add the values of
+     */
+    public void addAll(LongHashSet other) {
+        for (long value : other.toArray())
+            this.add(value);
+    }
+
+    /**
+     * Removes a value from the set
+     *
+     * @param value The value to remove
+     * @return true if the value was removed, false if it wasn't in the set
+     */
+    public synchronized boolean remove(long value) {
+        if (value == EMPTY) {
+            if (!this.containsEmpty)
+                return false;
+            this.containsEmpty = false;
+            this.size--;
+            return true;
+        }
+
+        int index = this.indexOf(value);
+        if (this.table[index] != value)
+            return false;
+
+        this.removeAt(index);
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Removes all values from the set that match a predicate
+     *
+     * @param predicate The predicate to test values with
+     * @return true if any values were removed, otherwise false
+     */
+    public boolean removeIf(LongPredicate predicate) {
+        boolean removed = false;
+        for (long value : this.toArray())
+            if (predicate.test(value))
+                removed |= this.remove(value);
+        return removed;
+    }
+
+    /**
+     * Checks if a value is in the set
+     *
+     * @param value The value to check
+     * @return true if the value is in the set, otherwise false
+     */
+    public synchronized boolean contains(long value) {
+        if (value == EMPTY)
+            return this.containsEmpty;
+        return this.table[this.indexOf(value)] == value;
+    }
+
+    /**
+     * @return the number of values in the set
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true if the set contains no values, otherwise false
+     */
+    public synchronized boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Removes all values from the set
+     */
+    public synchronized void clear() {
+        Arrays.fill(this.table, EMPTY);
+        this.containsEmpty = false;
+        this.size = 0;
+    }
+
+    /**
+     * @return a copy of the values in the set, in no particular order
+     */
+    public synchronized long[] toArray() {
+        long[] values = new long[this.size];
+        int index = 0;
+        if (this.containsEmpty)
+            values[index++] = EMPTY;
+        for (long value : this.table)
+            if (value != EMPTY)
+                values[index++] = value;
+        return values;
+    }
+
+    /**
+     * Calls a consumer with a copy of every value in the set, so the set may be modified from the consumer
+     *
+     * @param consumer The consumer to call
+     */
+    public void forEach(LongConsumer consumer) {
+        for (long value : this.toArray())
+            consumer.accept(value);
+    }
+
+    /**
+     * Gets the slot that a value is in, or the empty slot it would be put in if it's not in the set
+     *
+     * @param value The value to find, must not be {@link #EMPTY}
+     * @return the index of the slot
+     */
+    private int indexOf(long value) {
+        int mask = this.table.length - 1;
+        int index = hash(value) & mask;
+        while (this.table[index] != EMPTY && this.table[index] != value)
+            index = (index + 1) & mask;
+        return index;
+    }
+
+    /**
+     * Empties a slot and shifts back any following values that would no longer be reachable
+     *
+     * @param index The index of the slot to empty
+     */
+    private void removeAt(int index) {
+        int mask = this.table.length - 1;
+        int next = (index + 1) & mask;
+        while (this.table[next] != EMPTY) {
+            int ideal = hash(this.table[next]) & mask;
+
+            // Only move the value if the empty slot is between where it wants to be and where it is
+            if (((next - ideal) & mask) >= ((next - index) & mask)) {
+                this.table[index] = this.table[next];
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.table[index] = EMPTY;
+    }
+
+    private void resize(int capacity) {
+        long[] oldTable = this.table;
+        this.table = new long[capacity];
+        for (long value : oldTable)
+            if (value != EMPTY)
+                this.table[this.indexOf(value)] = value;
+    }
+
+    private static int hash(long value) {
+        // Mix the bits so chunk keys next to each other don't end up in neighbouring slots
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize)
+            capacity <<= 1;
+        return capacity;
+    }
+
+}
@@ -20,10 +20,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.commons.lang.WordUtils;
@@ -38,14 +40,23 @@ import org.bukkit.NamespacedKey;
 import org.bukkit.Particle.DustOptions;
 import org.bukkit.Tag;
 import org.bukkit.World;
-import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Ambient;
+import org.bukkit.entity.Creature;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.ExperienceOrb;
+import org.bukkit.entity.Ghast;
 import org.bukkit.entity.Item;
+import org.bukkit.entity.ItemFrame;
 import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Monster;
+import org.bukkit.entity.Painting;
+import org.bukkit.entity.Phantom;
 import org.bukkit.entity.Player;
+import org.bukkit.entity.Slime;
+import org.bukkit.entity.WaterMob;
 import org.bukkit.inventory.EquipmentSlot;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemFlag;
@@ -56,6 +67,7 @@ import org.bukkit.loot.LootContext;
 import org.bukkit.loot.Lootable;
 import org.bukkit.metadata.FixedMetadataValue;
 import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.util.NumberConversions;
 import org.bukkit.util.Vector;
 
 public final class StackerUtils {
@@ -75,6 +87,10 @@ public final class StackerUtils {
     private static List<EntityType> cachedAlphabeticalEntityTypes;
     private static Set<EntityType> cachedStackableEntityTypes;
 
+    private static final String[] ENTITY_TRACKING_RANGE_TYPES = { "players", "animals", "monsters", "misc", "other" };
+    private static final int[] DEFAULT_ENTITY_TRACKING_RANGES = { 48, 48, 48, 32, 64 };
+    private static final Map<String, int[]> cachedEntityTrackingRanges = new ConcurrentHashMap<>();
+
     /**
      * Formats a string from THIS_FORMAT to This Format
      *
@@ -95,6 +111,47 @@ public final class StackerUtils {
         return String.format("%s-%.2f-%.2f-%.2f", location.getWorld().getName(), location.getX(), location.getY(), location.getZ());
     }
 
+    /**
+     * Packs chunk coordinates into a single long key
+     *
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @return the packed chunk key
+     */
+    public static long getChunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the packed key of the chunk a location is in
+     *
+     * @param location The location
+     * @return the packed chunk key
+     */
+    public static long getChunkKey(Location location) {
+        return getChunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+    }
+
+    /**
+     * Unpacks the chunk x coordinate from a packed chunk key
+     *
+     * @param chunkKey The packed chunk key
+     * @return the chunk x coordinate
+     */
+    public static int getChunkX(long chunkKey) {
+        return (int) (chunkKey >> 32);
+    }
+
+    /**
+     * Unpacks the chunk z coordinate from a packed chunk key
+     *
+     * @param chunkKey The packed chunk key
+     * @return the chunk z coordinate
+     */
+    public static int getChunkZ(long chunkKey) {
+        return (int) chunkKey;
+    }
+
     /**
      * Get loot for a given entity
      *
@@ -120,6 +177,56 @@ public final class StackerUtils {
         return Collections.emptySet();
     }
 
+    /**
+     * Gets the loot for multiple identical entities by rolling the entity's loot table.
+     * If there are more entities than maxRolls, the loot table is only rolled maxRolls times and the totals are scaled up.
+     *
+     * @param entity The entity to roll the loot table of
+     * @param killer The Player that killed the entities, nullable
+     * @param lootedLocation The location the entities were killed at
+     * @param amount The number of entities to get the loot of
+     * @param maxRolls The maximum number of times to roll the loot table, or -1 to roll it once for every entity
+     * @return the loot, split into stacks of at most their max stack size
+     */
+    public static Collection<ItemStack> getEntityLoot(LivingEntity entity, Player killer, Location lootedLocation, int amount, int maxRolls) {
+        int rolls = maxRolls < 0 ? amount : Math.min(amount, maxRolls);
+        if (rolls <= 0)
+            return Collections.emptyList();
+
+        // Total up the amounts of each item, keyed by the item with an amount of 1
+        Map<ItemStack, Long> totals = new LinkedHashMap<>();
+        for (int i = 0; i < rolls; i++) {
+            for (ItemStack itemStack : getEntityLoot(entity, killer, lootedLocation)) {
+                if (itemStack == null || itemStack.getType() == Material.AIR || itemStack.getAmount() <= 0)
+                    continue;
+
+                ItemStack key = itemStack.clone();
+                key.setAmount(1);
+                totals.merge(key, (long) itemStack.getAmount(), Long::sum);
+            }
+        }
+
+        double scale = (double) amount / rolls;
+        List<ItemStack> loot = new ArrayList<>();
+        for (Map.Entry<ItemStack, Long> entry : totals.entrySet()) {
+            double scaledTotal = entry.getValue() * scale;
+            long total = (long) scaledTotal;
+            if (RANDOM.nextDouble() < scaledTotal - total)
+                total++;
+
+            ItemStack key = entry.getKey();
+            int maxStackSize = Math.max(key.getMaxStackSize(), 1);
+            while (total > 0) {
+                ItemStack itemStack = key.clone();
+                itemStack.setAmount((int) Math.min(total, maxStackSize));
+                loot.add(itemStack);
+                total -= itemStack.getAmount();
+            }
+        }
+
+        return loot;
+    }
+
     public static ItemStack getBlockAsStackedItemStack(Material material, int amount) {
         ItemStack itemStack = new ItemStack(material);
         ItemMeta itemMeta = itemStack.getItemMeta();
@@ -237,36 +344,125 @@ public final class StackerUtils {
      *
      * @param entity1 The first entity
      * @param entity2 The second entity
-     * @param accuracy How often should we check for obstructions? Smaller numbers = more checks (Recommended 0.75)
+     * @param accuracy Unused, every block the line passes through is checked
      * @param requireOccluding Should occluding blocks be required to count as a solid block?
      * @return true if the entities can see each other, otherwise false
+     * @deprecated use {@link #hasLineOfSight(Entity, Entity, boolean, BlockOcclusionCache)} instead
      */
+    @Deprecated
     public static boolean hasLineOfSight(Entity entity1, Entity entity2, double accuracy, boolean requireOccluding) {
-        Location location1 = entity1.getLocation().clone();
-        Location location2 = entity2.getLocation().clone();
+        return hasLineOfSight(entity1, entity2, requireOccluding, new BlockOcclusionCache());
+    }
 
+    /**
+     * A line of sight algorithm to check if two entities can see each other without obstruction.
+     * Walks through every block the line between their eyes passes through, in order.
+     *
+     * @param entity1 The first entity
+     * @param entity2 The second entity
+     * @param requireOccluding Should occluding blocks be required to count as a solid block?
+     * @param occlusionCache The cache to look blocks up with
+     * @return true if the entities can see each other, otherwise false
+     */
+    public static boolean hasLineOfSight(Entity entity1, Entity entity2, boolean requireOccluding, BlockOcclusionCache occlusionCache) {
+        Location location1 = entity1.getLocation();
+        Location location2 = entity2.getLocation();
+        World world = location1.getWorld();
+        if (world == null || world != location2.getWorld())
+            return false;
+
+        double startX = location1.getX();
+        double startY = location1.getY();
+        double startZ = location1.getZ();
         if (entity1 instanceof LivingEntity)
-            location1.add(0, ((LivingEntity) entity1).getEyeHeight(), 0);
+            startY += ((LivingEntity) entity1).getEyeHeight();
+
+        double endX = location2.getX();
+        double endY = location2.getY();
+        double endZ = location2.getZ();
         if (entity2 instanceof LivingEntity)
-            location2.add(0, ((LivingEntity) entity2).getEyeHeight(), 0);
-
-        Vector vector1 = location1.toVector();
-        Vector vector2 = location2.toVector();
-        Vector direction = vector2.clone().subtract(vector1).normalize();
-        double distance = vector1.distance(vector2);
-        double numSteps = distance / accuracy;
-        double stepSize = distance / numSteps;
-        for (double i = 0; i < distance; i += stepSize) {
-            Location location = location1.clone().add(direction.clone().multiply(i));
-            Block block = location.getBlock();
-            Material type = block.getType();
-            if (type.isSolid() && (!requireOccluding || type.isOccluding()))
+            endY += ((LivingEntity) entity2).getEyeHeight();
+
+        double deltaX = endX - startX;
+        double deltaY = endY - startY;
+        double deltaZ = endZ - startZ;
+
+        int x = NumberConversions.floor(startX);
+        int y = NumberConversions.floor(startY);
+        int z = NumberConversions.floor(startZ);
+        int steps = Math.abs(NumberConversions.floor(endX) - x) + Math.abs(NumberConversions.floor(endY) - y) + Math.abs(NumberConversions.floor(endZ) - z);
+
+        // How far along the line, from 0 to 1, each axis crosses into its next block, and how far it is between crossings
+        int stepX = deltaX > 0 ? 1 : -1;
+        int stepY = deltaY > 0 ? 1 : -1;
+        int stepZ = deltaZ > 0 ? 1 : -1;
+        double tDeltaX = deltaX == 0 ? Double.MAX_VALUE : Math.abs(1 / deltaX);
+        double tDeltaY = deltaY == 0 ? Double.MAX_VALUE : Math.abs(1 / deltaY);
+        double tDeltaZ = deltaZ == 0 ? Double.MAX_VALUE : Math.abs(1 / deltaZ);
+        double tMaxX = deltaX == 0 ? Double.MAX_VALUE : (deltaX > 0 ? x + 1 - startX : startX - x) * tDeltaX;
+        double tMaxY = deltaY == 0 ? Double.MAX_VALUE : (deltaY > 0 ? y + 1 - startY : startY - y) * tDeltaY;
+        double tMaxZ = deltaZ == 0 ? Double.MAX_VALUE : (deltaZ > 0 ? z + 1 - startZ : startZ - z) * tDeltaZ;
+
+        for (int i = 0; i <= steps; i++) {
+            if (occlusionCache.isObstructed(world, x, y, z, requireOccluding))
                 return false;
+
+            if (tMaxX < tMaxY && tMaxX < tMaxZ) {
+                x += stepX;
+                tMaxX += tDeltaX;
+            } else if (tMaxY < tMaxZ) {
+                y += stepY;
+                tMaxY += tDeltaY;
+            } else {
+                z += stepZ;
+                tMaxZ += tDeltaZ;
+            }
         }
 
         return true;
     }
 
+    /**
+     * Gets the squared distance from a player within which the server keeps sending an entity to that player.
+     * The client forgets everything it was sent about an entity once it leaves this range, including its nametag.
+     * The ranges are read from the entity-tracking-range settings in spigot.yml and capped by the view distance.
+     *
+     * @param entity The entity
+     * @return the squared tracking range of the entity
+     */
+    public static double getEntityTrackingRangeSquared(Entity entity) {
+        int[] ranges = cachedEntityTrackingRanges.computeIfAbsent(entity.getWorld().getName(), StackerUtils::loadEntityTrackingRanges);
+
+        // Same categories that Spigot uses to pick the tracking range
+        int range;
+        if (entity instanceof Player) {
+            range = ranges[0];
+        } else if (entity instanceof Monster || entity instanceof Slime || entity instanceof Ghast || entity instanceof Phantom) {
+            range = ranges[2];
+        } else if (entity instanceof Creature || entity instanceof Ambient || entity instanceof WaterMob) {
+            range = ranges[1];
+        } else if (entity instanceof Item || entity instanceof ExperienceOrb || entity instanceof ItemFrame || entity instanceof Painting) {
+            range = ranges[3];
+        } else {
+            range = ranges[4];
+        }
+
+        return (double) range * range;
+    }
+
+    private static int[] loadEntityTrackingRanges(String worldName) {
+        ConfigurationSection spigotConfig = Bukkit.spigot().getConfig();
+        int viewRange = Bukkit.getViewDistance() * 16;
+        int[] ranges = new int[ENTITY_TRACKING_RANGE_TYPES.length];
+        for (int i = 0; i < ranges.length; i++) {
+            String type = ENTITY_TRACKING_RANGE_TYPES[i];
+            int range = spigotConfig.getInt("world-settings.default.entity-tracking-range." + type, DEFAULT_ENTITY_TRACKING_RANGES[i]);
+            range = spigotConfig.getInt("world-settings." + worldName + ".entity-tracking-range." + type, range);
+            ranges[i] = Math.min(range, viewRange);
+        }
+        return ranges;
+    }
+
     /**
      * Checks if a Player is looking at a dropped item
      *
@@ -480,7 +676,7 @@ public final class StackerUtils {
     }
 
     public static void reconstructStackedEntities(StackedEntity stackedEntity, List<? extends LivingEntity> livingEntities) {
-        List<byte[]> nbtList = Collections.synchronizedList(new LinkedList<>());
+        List<byte[]> nbtList = new ArrayList<>(livingEntities.size());
 
         NMSHandler nmsHandler = NMSAdapter.getHandler();
         for (LivingEntity livingEntity : livingEntities)
@@ -493,6 +689,7 @@ public final class StackerUtils {
         cachedAlphabeticalEntityTypes = null;
         cachedStackableEntityTypes = null;
         cachedStackingTool = null;
+        cachedEntityTrackingRanges.clear();
     }
 
     private enum ItemLoreValue {